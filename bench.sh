@@ -0,0 +1,12 @@
+#!/bin/bash
+
+set -e
+
+# build the framework jar, and install it for the benchmarks module
+cd com.idtus.contest.winter2017.framework
+mvn install
+
+# build the benchmarks and run the end-to-end benchmark over the sample jars
+cd ../com.idtus.contest.winter2017.benchmarks
+mvn package
+java -cp target/benchmarks.jar contest.winter2017.EndToEndBenchmark "$@"
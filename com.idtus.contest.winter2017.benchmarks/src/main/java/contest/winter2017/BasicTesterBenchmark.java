@@ -0,0 +1,78 @@
+package contest.winter2017;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import securitytests.RegexGenerator;
+
+/**
+ * Checking the outputs of all basic tests of a sample jar against their expected regexes.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class BasicTesterBenchmark {
+	@Param({ "TesterTypeCheck", "RegexPatternMatch", "CommandLineEncryption", "LeetConverter" })
+	public String jar;
+
+	/**
+	 * whether the outputs are generated to match the expected regexes or to just miss them, failed
+	 * tests also build an error message; regexes like .* match either way
+	 */
+	@Param({ "true", "false" })
+	public boolean passing;
+
+	private List<Test> tests;
+	private List<Output> outputs;
+
+	@Setup
+	public void setUp() throws IOException, ReflectiveOperationException {
+		tests = SampleJars.load(jar).getTests();
+		outputs = new ArrayList<>();
+		Random random = new Random(0);
+		for (Test test : tests) {
+			outputs.add(new Output(test.getParameters(),
+					generateOutput(test.getStdOutExpectedResultRegex(), random),
+					generateOutput(test.getStdErrExpectedResultRegex(), random)));
+		}
+	}
+
+	private String generateOutput(String regex, Random random) {
+		RegexGenerator generator = RegexGenerator.compile(regex);
+		if (generator == null) {
+			return "";
+		}
+		if (passing) {
+			return generator.generateMatch(random);
+		}
+		String nearMiss = generator.generateNearMiss(random);
+		return nearMiss != null ? nearMiss : generator.getMinimal() + "\u0000";
+	}
+
+
+	@Benchmark
+	public void getBasicTestResult(Blackhole blackhole) {
+		for (int i = 0; i < tests.size(); i++) {
+			blackhole.consume(BasicTester.getBasicTestResult(tests.get(i), outputs.get(i)).passed);
+		}
+	}
+}
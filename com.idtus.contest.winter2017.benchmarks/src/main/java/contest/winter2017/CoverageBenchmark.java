@@ -0,0 +1,66 @@
+package contest.winter2017;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.jacoco.core.data.ExecutionDataWriter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import contest.winter2017.Tester.TesterOptions;
+
+/**
+ * Computing the summary code coverage of a sample jar, which loads the JaCoCo output and analyzes
+ * every class of the jar. The JaCoCo output has no execution data, so every class is analyzed as
+ * uncovered; parsing the classes dominates the cost either way.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class CoverageBenchmark {
+	@Param({ "TesterTypeCheck", "RegexPatternMatch", "CommandLineEncryption", "LeetConverter" })
+	public String jar;
+
+	private File execFile;
+	private JacocoCoverageAnalyzer analyzer;
+
+	@Setup
+	public void setUp() throws IOException {
+		execFile = File.createTempFile("benchmark", ".exec");
+		try (FileOutputStream out = new FileOutputStream(execFile)) {
+			// writes the file header
+			new ExecutionDataWriter(out).flush();
+		}
+
+		TesterOptions options = new TesterOptions();
+		options.jarToTestPath = SampleJars.getJar(jar).getPath();
+		options.jacocoOutputFilePath = execFile.getPath();
+		analyzer = new JacocoCoverageAnalyzer(options);
+	}
+
+	@TearDown
+	public void tearDown() {
+		execFile.delete();
+	}
+
+
+	@Benchmark
+	public double generateSummaryCodeCoverageResults() {
+		return analyzer.generateSummaryCodeCoverageResults();
+	}
+}
@@ -0,0 +1,354 @@
+package contest.winter2017;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.cli.CommandLine;
+import org.apache.commons.cli.DefaultParser;
+import org.apache.commons.cli.HelpFormatter;
+import org.apache.commons.cli.Option;
+import org.apache.commons.cli.Options;
+import org.apache.commons.cli.ParseException;
+import org.apache.commons.io.FileUtils;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+
+/**
+ * Runs the framework jar against the sample jars once for every combination of execution mode and
+ * thread count, with a fixed seed and time goal, and reports the throughput of each run as JSON.
+ *
+ * The harness writes its final metrics with -statsFile, which give the executions per second, the
+ * time until the code coverage first reached each target and the time until the first unique
+ * error. The peak RSS and CPU time of the harness JVM itself are sampled from /proc while it runs.
+ *
+ * The results are compared against a baseline file from an earlier run, and the benchmark fails
+ * if the executions per second dropped, or the peak RSS grew, by more than the tolerance. If the
+ * baseline file doesn't exist yet, the results are written to it instead.
+ */
+public class EndToEndBenchmark {
+
+	private static final String FRAMEWORK_JAR = "frameworkJar";
+	private static final String JARS = "jars";
+	private static final String MODES = "modes";
+	private static final String THREADS = "threads";
+	private static final String TIME_GOAL = "timeGoal";
+	private static final String SEED = "seed";
+	private static final String COVERAGE_TARGETS = "coverageTargets";
+	private static final String OUTPUT = "output";
+	private static final String BASELINE = "baseline";
+	private static final String TOLERANCE = "tolerance";
+	private static final String HELP = "help";
+
+	private static final String DEFAULT_FRAMEWORK_JAR =
+			"../com.idtus.contest.winter2017.framework/target/com.idtus.contest.winter2017.framework.jar";
+	private static final String DEFAULT_JARS = "TesterTypeCheck,RegexPatternMatch,CommandLineEncryption,LeetConverter";
+
+	/**
+	 * the mode without any flags, followed by the flags of the other execution modes
+	 */
+	private static final String DEFAULT_MODE = "default";
+	private static final String DEFAULT_MODES = "default,cmpLog,fastCoverage,directed,perfFuzz,earlyKill";
+	private static final String PERFORMANCE_FUZZING_MODE = "perfFuzz";
+
+	private static final String DEFAULT_THREADS = "1,2,4";
+	private static final String DEFAULT_TIME_GOAL = "1";
+	private static final String DEFAULT_SEED = "0";
+	private static final String DEFAULT_COVERAGE_TARGETS = "25,50,75";
+	private static final String DEFAULT_OUTPUT = "target/end-to-end.json";
+	private static final String DEFAULT_BASELINE = "end-to-end-baseline.json";
+	private static final String DEFAULT_TOLERANCE = "0.2";
+
+	private static final long SAMPLE_INTERVAL_MILLIS = 100;
+
+	private static final Options OPTIONS = new Options();
+	static {
+		OPTIONS.addOption(Option.builder(FRAMEWORK_JAR).hasArg(true)
+				.desc("path to the framework jar (default: " + DEFAULT_FRAMEWORK_JAR + ")").build());
+		OPTIONS.addOption(Option.builder(JARS).hasArg(true)
+				.desc("comma separated sample jars, or paths of other jars, to test (default: all sample jars)").build());
+		OPTIONS.addOption(Option.builder(MODES).hasArg(true)
+				.desc("comma separated execution modes (default: " + DEFAULT_MODES + ")").build());
+		OPTIONS.addOption(Option.builder(THREADS).hasArg(true)
+				.desc("comma separated thread counts (default: " + DEFAULT_THREADS + ")").build());
+		OPTIONS.addOption(Option.builder(TIME_GOAL).hasArg(true)
+				.desc("time goal of each run in minutes (default: " + DEFAULT_TIME_GOAL + ")").build());
+		OPTIONS.addOption(Option.builder(SEED).hasArg(true)
+				.desc("seed of the black box tests (default: " + DEFAULT_SEED + ")").build());
+		OPTIONS.addOption(Option.builder(COVERAGE_TARGETS).hasArg(true)
+				.desc("comma separated coverage percentages to time (default: " + DEFAULT_COVERAGE_TARGETS + ")")
+				.build());
+		OPTIONS.addOption(Option.builder(OUTPUT).hasArg(true)
+				.desc("file to write the results to (default: " + DEFAULT_OUTPUT + ")").build());
+		OPTIONS.addOption(Option.builder(BASELINE).hasArg(true)
+				.desc("baseline file to compare against (default: " + DEFAULT_BASELINE + ")").build());
+		OPTIONS.addOption(Option.builder(TOLERANCE).hasArg(true)
+				.desc("fraction by which a result may be worse than the baseline (default: "
+						+ DEFAULT_TOLERANCE + ")").build());
+		OPTIONS.addOption(Option.builder(HELP).desc("display this help message").build());
+	}
+
+	private final File frameworkJar;
+	private final long timeGoal;
+	private final long seed;
+	private final List<Integer> coverageTargets = new ArrayList<>();
+	private final File workDir;
+
+
+	private EndToEndBenchmark(File frameworkJar, long timeGoal, long seed, File workDir) {
+		this.frameworkJar = frameworkJar;
+		this.timeGoal = timeGoal;
+		this.seed = seed;
+		this.workDir = workDir;
+	}
+
+	public static void main(String[] args) throws IOException, InterruptedException {
+		CommandLine cliArgs;
+		try {
+			cliArgs = new DefaultParser().parse(OPTIONS, args);
+		}
+		catch (ParseException e) {
+			System.err.println("Error: " + e.getMessage());
+			printHelp();
+			System.exit(2);
+			return;
+		}
+		if (cliArgs.hasOption(HELP)) {
+			printHelp();
+			return;
+		}
+
+		File frameworkJar = new File(cliArgs.getOptionValue(FRAMEWORK_JAR, DEFAULT_FRAMEWORK_JAR));
+		if (!frameworkJar.isFile()) {
+			System.err.println("Error: can't find the framework jar " + frameworkJar);
+			System.exit(2);
+		}
+		File workDir = Files.createTempDirectory("end-to-end").toFile();
+		EndToEndBenchmark benchmark = new EndToEndBenchmark(frameworkJar,
+				Long.parseLong(cliArgs.getOptionValue(TIME_GOAL, DEFAULT_TIME_GOAL)),
+				Long.parseLong(cliArgs.getOptionValue(SEED, DEFAULT_SEED)), workDir);
+		for (String target : split(cliArgs.getOptionValue(COVERAGE_TARGETS, DEFAULT_COVERAGE_TARGETS))) {
+			benchmark.coverageTargets.add(Integer.parseInt(target));
+		}
+
+		List<String> modes = split(cliArgs.getOptionValue(MODES, DEFAULT_MODES));
+		if (modes.contains(PERFORMANCE_FUZZING_MODE) && !ResourceUsage.isSupported()) {
+			System.err.println("Warning: skipping -" + PERFORMANCE_FUZZING_MODE + ", which isn't supported here");
+			modes.remove(PERFORMANCE_FUZZING_MODE);
+		}
+
+		JsonArray results = new JsonArray();
+		try {
+			for (String jar : split(cliArgs.getOptionValue(JARS, DEFAULT_JARS))) {
+				for (String mode : modes) {
+					for (String threads : split(cliArgs.getOptionValue(THREADS, DEFAULT_THREADS))) {
+						System.out.printf("=== %s, %s, %s threads%n", jar, mode, threads);
+						JsonObject result = benchmark.run(getJar(jar), mode, Integer.parseInt(threads));
+						System.out.printf("%.1f execs/s, peak rss %d KB, cpu %.2f%n",
+								result.get("executionsPerSecond").getAsDouble(), result.get("peakRssKb").getAsLong(),
+								result.get("cpuUtilization").getAsDouble());
+						results.add(result);
+					}
+				}
+			}
+		}
+		finally {
+			FileUtils.deleteQuietly(workDir);
+		}
+
+		Gson gson = new GsonBuilder().setPrettyPrinting().serializeNulls().create();
+		File output = new File(cliArgs.getOptionValue(OUTPUT, DEFAULT_OUTPUT));
+		writeJson(gson, results, output);
+		System.out.println("Results written to " + output);
+
+		File baseline = new File(cliArgs.getOptionValue(BASELINE, DEFAULT_BASELINE));
+		if (!baseline.isFile()) {
+			writeJson(gson, results, baseline);
+			System.out.println("No baseline found, results written to " + baseline);
+			return;
+		}
+		double tolerance = Double.parseDouble(cliArgs.getOptionValue(TOLERANCE, DEFAULT_TOLERANCE));
+		JsonArray baselineResults;
+		try (Reader reader = Files.newBufferedReader(baseline.toPath(), StandardCharsets.UTF_8)) {
+			baselineResults = new JsonParser().parse(reader).getAsJsonArray();
+		}
+		if (compare(results, baselineResults, tolerance) > 0) {
+			System.exit(1);
+		}
+	}
+
+
+	/**
+	 * Runs the framework jar once and collects its metrics.
+	 * @param jar - jar to test
+	 * @param mode - execution mode, either DEFAULT_MODE or the flag that enables it
+	 * @param threads - number of threads to test with
+	 * @return result of the run
+	 * @throws IOException
+	 * @throws InterruptedException
+	 */
+	private JsonObject run(File jar, String mode, int threads) throws IOException, InterruptedException {
+		File statsFile = new File(workDir, "stats.json");
+		File jacocoDir = new File(workDir, "jacoco");
+		File log = new File(workDir, "harness.log");
+		FileUtils.deleteQuietly(statsFile);
+		FileUtils.deleteQuietly(jacocoDir);
+		jacocoDir.mkdirs();
+
+		List<String> command = new ArrayList<>(Arrays.asList("java", "-jar", frameworkJar.getPath(),
+				"-jarToTestPath", jar.getPath(), "-toolChain", "-noJson",
+				"-seed", String.valueOf(seed), "-timeGoal", String.valueOf(timeGoal),
+				"-threads", String.valueOf(threads),
+				"-statsFile", statsFile.getPath(), "-jacocoOutputPath", jacocoDir.getPath()));
+		if (!DEFAULT_MODE.equals(mode)) {
+			command.add("-" + mode);
+		}
+
+		ProcessBuilder pb = new ProcessBuilder(command);
+		pb.redirectErrorStream(true);
+		pb.redirectOutput(log);
+		long start = System.nanoTime();
+		Process process = pb.start();
+		long pid = ResourceUsage.getPid(process);
+		ResourceUsage usage = new ResourceUsage();
+		while (!process.waitFor(SAMPLE_INTERVAL_MILLIS, TimeUnit.MILLISECONDS)) {
+			if (pid != -1) {
+				usage.sample(pid);
+			}
+		}
+		long wallMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+		if (process.exitValue() != 0 || !statsFile.isFile()) {
+			throw new IOException("the harness failed with exit code " + process.exitValue() + ":\n"
+					+ FileUtils.readFileToString(log, StandardCharsets.UTF_8));
+		}
+		JsonObject stats;
+		try (Reader reader = Files.newBufferedReader(statsFile.toPath(), StandardCharsets.UTF_8)) {
+			stats = new JsonParser().parse(reader).getAsJsonObject();
+		}
+
+		JsonObject result = new JsonObject();
+		result.addProperty("jar", jar.getName());
+		result.addProperty("mode", mode);
+		result.addProperty("threads", threads);
+		result.addProperty("seed", seed);
+		result.add("executions", stats.get("executions"));
+		result.add("executionsPerSecond", stats.get("executionsPerSecond"));
+		result.add("firstErrorMillis", stats.get("firstErrorMillis"));
+		JsonObject coverageMillis = new JsonObject();
+		for (int target : coverageTargets) {
+			coverageMillis.add(String.valueOf(target), getTimeToCoverage(stats.getAsJsonArray("coverage"), target));
+		}
+		result.add("coverageMillis", coverageMillis);
+		result.addProperty("wallMillis", wallMillis);
+		result.addProperty("cpuMillis", usage.getCpuMillis());
+		// above 1 when the harness keeps more than one core busy
+		result.addProperty("cpuUtilization", usage.getCpuMillis() < 0 || wallMillis == 0
+				? -1 : (double) usage.getCpuMillis() / wallMillis);
+		result.addProperty("peakRssKb", usage.getPeakRssKb());
+		return result;
+	}
+
+	/**
+	 * Finds the first coverage sample at or above a target.
+	 * @param history - coverage samples of the stats file
+	 * @param target - percentage of the code covered
+	 * @return elapsed milliseconds of the sample, JSON null if the target was never reached
+	 */
+	private static JsonElement getTimeToCoverage(JsonArray history, int target) {
+		for (JsonElement element : history) {
+			JsonObject sample = element.getAsJsonObject();
+			if (sample.get("percentCovered").getAsDouble() >= target) {
+				return sample.get("elapsedMillis");
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Prints every result that regressed from its baseline by more than the tolerance. Only the
+	 * executions per second and the peak RSS are checked; the times to coverage and to the first
+	 * error depend on which inputs the threads happen to run first, and are too noisy to gate on.
+	 * @param results - results of this run
+	 * @param baseline - results of the baseline run
+	 * @param tolerance - fraction by which a result may be worse
+	 * @return number of regressions
+	 */
+	private static int compare(JsonArray results, JsonArray baseline, double tolerance) {
+		Map<String, JsonObject> baselineByKey = new HashMap<>();
+		for (JsonElement element : baseline) {
+			baselineByKey.put(getKey(element.getAsJsonObject()), element.getAsJsonObject());
+		}
+
+		int regressions = 0;
+		for (JsonElement element : results) {
+			JsonObject result = element.getAsJsonObject();
+			JsonObject base = baselineByKey.get(getKey(result));
+			if (base == null) {
+				continue;
+			}
+			double execs = result.get("executionsPerSecond").getAsDouble();
+			double baseExecs = base.get("executionsPerSecond").getAsDouble();
+			if (execs < baseExecs * (1 - tolerance)) {
+				System.out.printf(Locale.ROOT, "REGRESSION %s: %.1f execs/s, baseline %.1f%n",
+						getKey(result), execs, baseExecs);
+				regressions++;
+			}
+			long rss = result.get("peakRssKb").getAsLong();
+			long baseRss = base.get("peakRssKb").getAsLong();
+			if (rss >= 0 && baseRss >= 0 && rss > baseRss * (1 + tolerance)) {
+				System.out.printf(Locale.ROOT, "REGRESSION %s: peak rss %d KB, baseline %d KB%n",
+						getKey(result), rss, baseRss);
+				regressions++;
+			}
+		}
+		System.out.println(regressions == 0 ? "No regressions" : regressions + " regressions");
+		return regressions;
+	}
+
+	/**
+	 * Resolves a jar given on the command line, e.g. one made by SyntheticJarGenerator.
+	 * @param jar - name of a sample jar, or path of a jar file
+	 * @return jar file
+	 * @throws IOException if the sample jar can't be found
+	 */
+	private static File getJar(String jar) throws IOException {
+		return jar.endsWith(".jar") ? new File(jar) : SampleJars.getJar(jar);
+	}
+
+	private static String getKey(JsonObject result) {
+		return result.get("jar").getAsString() + " " + result.get("mode").getAsString() + " "
+				+ result.get("threads").getAsInt() + " threads";
+	}
+
+	private static void writeJson(Gson gson, JsonArray json, File file) throws IOException {
+		File parent = file.getAbsoluteFile().getParentFile();
+		parent.mkdirs();
+		try (Writer writer = Files.newBufferedWriter(file.toPath(), StandardCharsets.UTF_8)) {
+			gson.toJson(json, writer);
+		}
+	}
+
+	private static List<String> split(String list) {
+		return new ArrayList<>(Arrays.asList(list.split(",")));
+	}
+
+	private static void printHelp() {
+		new HelpFormatter().printHelp("EndToEndBenchmark", "", OPTIONS, "", true);
+	}
+}
@@ -0,0 +1,97 @@
+package contest.winter2017;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Parameter lookups and formatting, which run for every argument of every generated security test.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ParameterBenchmark {
+
+	/**
+	 * The dependent parameter map of a sample jar, and the argument lists its basic tests pass
+	 * through on the way to their full length.
+	 */
+	@State(Scope.Thread)
+	public static class Lookup {
+		@Param({ "TesterTypeCheck", "CommandLineEncryption", "LeetConverter" })
+		public String jar;
+
+		private DependentParameterFactory factory;
+		private List<List<String>> prefixes;
+		private int next = 0;
+
+		@Setup
+		public void setUp() throws IOException, ReflectiveOperationException {
+			TestBoundsParser parser = SampleJars.load(jar);
+			factory = (DependentParameterFactory) parser.getParameterFactory();
+			prefixes = SampleJars.getPrefixes(parser.getTests());
+		}
+
+		List<String> nextPrefix() {
+			List<String> prefix = prefixes.get(next);
+			next = (next + 1) % prefixes.size();
+			return prefix;
+		}
+	}
+
+	/**
+	 * The formatted parameters of a sample jar that have placeholders, with a value for each one.
+	 */
+	@State(Scope.Thread)
+	public static class Formatting {
+		@Param({ "TesterTypeCheck", "CommandLineEncryption" })
+		public String jar;
+
+		private List<Parameter> parameters = new ArrayList<>();
+		private List<List<String>> values = new ArrayList<>();
+		private int next = 0;
+
+		@Setup
+		public void setUp() throws IOException, ReflectiveOperationException {
+			DependentParameterFactory factory = (DependentParameterFactory) SampleJars.load(jar).getParameterFactory();
+			for (List<Parameter> list : factory.getParameterMap().values()) {
+				for (Parameter parameter : list) {
+					if (parameter.isFormatted() && !parameter.getTypeList().isEmpty()) {
+						parameters.add(parameter);
+						// the values aren't checked against the types, so one value fits all
+						values.add(Collections.nCopies(parameter.getTypeList().size(), "1234"));
+					}
+				}
+			}
+		}
+	}
+
+
+	@Benchmark
+	public List<Parameter> getNext(Lookup lookup) {
+		return lookup.factory.getNext(lookup.nextPrefix());
+	}
+
+	@Benchmark
+	public String formatParameterFromStrings(Formatting formatting) {
+		int index = formatting.next;
+		formatting.next = (index + 1) % formatting.parameters.size();
+		return formatting.parameters.get(index).formatParameterFromStrings(formatting.values.get(index));
+	}
+}
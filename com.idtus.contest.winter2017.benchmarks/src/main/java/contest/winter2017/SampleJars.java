@@ -0,0 +1,66 @@
+package contest.winter2017;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Locates the sample jars in supporting_files/jars, whose TestBounds maps the benchmarks use as
+ * realistic inputs. The directory can be set with the benchmark.jars system property, and is
+ * otherwise looked for relative to the benchmarks module and to the repository root.
+ */
+final class SampleJars {
+	/**
+	 * system property with the directory of the sample jars
+	 */
+	static final String JARS_PROPERTY = "benchmark.jars";
+
+	private static final String[] DEFAULT_DIRS = { "../supporting_files/jars", "supporting_files/jars" };
+
+	private SampleJars() {
+	}
+
+
+	static File getJar(String name) throws IOException {
+		String dir = System.getProperty(JARS_PROPERTY);
+		if (dir != null) {
+			return checkExists(new File(dir, name + ".jar"));
+		}
+		for (String defaultDir : DEFAULT_DIRS) {
+			File jar = new File(defaultDir, name + ".jar");
+			if (jar.isFile()) {
+				return jar;
+			}
+		}
+		throw new IOException("can't find " + name + ".jar, set -D" + JARS_PROPERTY + " to its directory");
+	}
+
+	static TestBoundsParser load(String name) throws IOException, ReflectiveOperationException {
+		return TestBoundsParser.fromJar(getJar(name));
+	}
+
+	/**
+	 * Builds the argument lists a generator could have produced before asking for the next
+	 * parameter: every prefix of every basic test, including the empty one.
+	 * @param tests - basic tests of a jar
+	 * @return List of prefixes
+	 */
+	static List<List<String>> getPrefixes(List<Test> tests) {
+		List<List<String>> prefixes = new ArrayList<>();
+		for (Test test : tests) {
+			List<String> parameters = test.getParameters();
+			for (int length = 0; length <= parameters.size(); length++) {
+				prefixes.add(new ArrayList<>(parameters.subList(0, length)));
+			}
+		}
+		return prefixes;
+	}
+
+	private static File checkExists(File jar) throws IOException {
+		if (!jar.isFile()) {
+			throw new IOException("can't find " + jar);
+		}
+		return jar;
+	}
+}
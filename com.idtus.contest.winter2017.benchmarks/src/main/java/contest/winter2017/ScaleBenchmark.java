@@ -0,0 +1,96 @@
+package contest.winter2017;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.jacoco.core.data.ExecutionDataWriter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import contest.winter2017.Tester.TesterOptions;
+
+/**
+ * Parsing the TestBounds, looking up parameters and computing the coverage summary of synthetic
+ * jars far larger than the sample jars, to see how each of them scales with the number of classes
+ * and tests. The jar is generated once per trial, which takes a few seconds for the larger sizes.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class ScaleBenchmark {
+	@Param({ "100", "1000" })
+	public int classes;
+
+	@Param({ "1000", "10000" })
+	public int tests;
+
+	private File jar;
+	private File execFile;
+	private DependentParameterFactory factory;
+	private List<List<String>> prefixes;
+	private JacocoCoverageAnalyzer analyzer;
+	private int next = 0;
+
+	@Setup
+	public void setUp() throws IOException, ReflectiveOperationException {
+		SyntheticJarGenerator.Settings settings = new SyntheticJarGenerator.Settings();
+		settings.classes = classes;
+		settings.tests = tests;
+		jar = File.createTempFile("synthetic", ".jar");
+		SyntheticJarGenerator.generate(settings, jar);
+
+		TestBoundsParser parser = TestBoundsParser.fromJar(jar);
+		factory = (DependentParameterFactory) parser.getParameterFactory();
+		prefixes = SampleJars.getPrefixes(parser.getTests());
+
+		execFile = File.createTempFile("benchmark", ".exec");
+		try (FileOutputStream out = new FileOutputStream(execFile)) {
+			// writes the file header
+			new ExecutionDataWriter(out).flush();
+		}
+		TesterOptions options = new TesterOptions();
+		options.jarToTestPath = jar.getPath();
+		options.jacocoOutputFilePath = execFile.getPath();
+		analyzer = new JacocoCoverageAnalyzer(options);
+	}
+
+	@TearDown
+	public void tearDown() {
+		jar.delete();
+		execFile.delete();
+	}
+
+
+	@Benchmark
+	public TestBoundsParser fromJar() throws IOException, ReflectiveOperationException {
+		return TestBoundsParser.fromJar(jar);
+	}
+
+	@Benchmark
+	public List<Parameter> getNext() {
+		List<String> prefix = prefixes.get(next);
+		next = (next + 1) % prefixes.size();
+		return factory.getNext(prefix);
+	}
+
+	@Benchmark
+	public double generateSummaryCodeCoverageResults() {
+		return analyzer.generateSummaryCodeCoverageResults();
+	}
+}
@@ -0,0 +1,109 @@
+package contest.winter2017;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import contest.winter2017.agent.ComparisonLog;
+import securitytests.ArgumentAmountTest;
+import securitytests.CorruptedInputTest;
+import securitytests.InputToStateTest;
+import securitytests.RandomParameterTest;
+import securitytests.RegexSelector;
+import securitytests.SecurityTest;
+
+/**
+ * One call of each security test generator, set up the way SecurityTester sets it up for a round.
+ * The time per operation divided by the tests per call is the cost of generating one input.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class SecurityTestBenchmark {
+	@Param({ "TesterTypeCheck", "RegexPatternMatch", "CommandLineEncryption", "LeetConverter" })
+	public String jar;
+
+	@Param({ "argumentAmount", "inputToState", "corrupted", "random" })
+	public String generator;
+
+	/**
+	 * maximum number of tests per call, argumentAmount always creates the same few
+	 */
+	@Param({ "100" })
+	public int count;
+
+	private final Random random = new Random(0);
+	private ParameterFactory parameterFactory;
+	private Corpus corpus;
+	private RegexSelector regexSelector;
+	private List<Output> observations;
+
+	@Setup
+	public void setUp() throws IOException, ReflectiveOperationException {
+		TestBoundsParser parser = SampleJars.load(jar);
+		parameterFactory = parser.getParameterFactory();
+		corpus = new Corpus(random);
+		for (Test test : parser.getTests()) {
+			corpus.add(test.getParameters());
+		}
+		regexSelector = RegexSelector.fromTestBounds(parameterFactory, parser.getTests(), random);
+
+		// comparisons like the ones the agent logs while a basic test checks its arguments
+		observations = new ArrayList<>();
+		for (Test test : parser.getTests()) {
+			List<Comparison> comparisons = new ArrayList<>();
+			for (String argument : test.getParameters()) {
+				comparisons.add(new Comparison(ComparisonLog.STRING_KIND, argument, argument + "-expected"));
+				comparisons.add(new Comparison(ComparisonLog.PARSE_INT_KIND, argument, ""));
+			}
+			comparisons.add(new Comparison(ComparisonLog.INTEGER_KIND, "1", "1000"));
+			Output output = new Output(test.getParameters(), "", "");
+			output.setComparisons(comparisons);
+			observations.add(output);
+		}
+	}
+
+
+	@Benchmark
+	public List<List<String>> generateTests() {
+		List<List<String>> tests = new ArrayList<>();
+		createGenerator().generateTests(tests, count);
+		return tests;
+	}
+
+	private SecurityTest createGenerator() {
+		switch (generator) {
+		case "argumentAmount":
+			return new ArgumentAmountTest(random);
+		case "inputToState":
+			InputToStateTest inputToStateTest = new InputToStateTest(random);
+			for (Output output : observations) {
+				inputToStateTest.addObservation(output);
+			}
+			return inputToStateTest;
+		case "corrupted":
+			return new CorruptedInputTest(corpus, parameterFactory, random);
+		case "random":
+			return new RandomParameterTest(parameterFactory, regexSelector, random);
+		default:
+			throw new IllegalArgumentException("unknown generator " + generator);
+		}
+	}
+}
@@ -0,0 +1,478 @@
+package contest.winter2017;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.jar.Attributes;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+import java.util.jar.Manifest;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import javax.tools.JavaCompiler;
+import javax.tools.ToolProvider;
+
+import org.apache.commons.cli.CommandLine;
+import org.apache.commons.cli.DefaultParser;
+import org.apache.commons.cli.HelpFormatter;
+import org.apache.commons.cli.Option;
+import org.apache.commons.cli.Options;
+import org.apache.commons.cli.ParseException;
+import org.apache.commons.io.FileUtils;
+
+/**
+ * Generates executable jars under test of any size, with a TestBounds class like those of the
+ * sample jars, to see how the framework scales far beyond them.
+ *
+ * The generated program takes a selector --c&lt;n&gt; that picks one of its classes, followed by
+ * one integer per level of dependent parameters. Each class has a number of branches that test
+ * one of the integers against a modulus, and print a line when taken. Planted exceptions are
+ * thrown from within a branch when one of the integers has a particular value, each from a method
+ * of its own so that the framework counts them as separate errors. The output is padded to a given
+ * number of bytes.
+ *
+ * The predefined tests are stored in a resource that the TestBounds class reads, since thousands
+ * of them wouldn't fit into the code of a single method. They never hit a planted exception, so
+ * all of them pass.
+ */
+public class SyntheticJarGenerator {
+
+	/**
+	 * Settings of the generated jar.
+	 */
+	public static class Settings {
+		/** number of classes that can be selected */
+		public int classes = 100;
+
+		/** number of branches in each class */
+		public int branches = 20;
+
+		/** number of integer parameters after the selector, each dependent on the previous ones */
+		public int depth = 2;
+
+		/** number of predefined tests */
+		public int tests = 1000;
+
+		/** bytes of standard output padding printed by every execution */
+		public int outputBytes = 1024;
+
+		/** number of exceptions planted in branches */
+		public int exceptions = 10;
+
+		/** integer parameters are between 0 and this value minus one */
+		public int valueRange = 1000;
+
+		/** seed of the branches, planted exceptions and tests */
+		public long seed = 0;
+	}
+
+	private static final String PACKAGE = "synthetic";
+	private static final String MAIN_CLASS = "Synthetic";
+	private static final String TESTS_RESOURCE = "tests.txt";
+
+	/**
+	 * branches per generated method, which keeps each method far below the 64 KB limit of the JVM
+	 */
+	private static final int BRANCHES_PER_METHOD = 100;
+	private static final int PADDING_LINE_LENGTH = 63;
+	private static final int MAX_MODULUS = 8;
+	private static final int MAX_TEST_ATTEMPTS = 100;
+
+	private static final String MAIN_SOURCE = String.join("\n",
+			"package synthetic;",
+			"",
+			"public class Synthetic {",
+			"	static final int CLASSES = %d;",
+			"	static final int DEPTH = %d;",
+			"	static final int VALUE_RANGE = %d;",
+			"	private static final String PADDING = \"%s\";",
+			"	private static final int PADDING_LINES = %d;",
+			"",
+			"	public static void main(String[] args) throws ReflectiveOperationException {",
+			"		int[] values = new int[DEPTH];",
+			"		int index;",
+			"		try {",
+			"			if (args.length != DEPTH + 1 || !args[0].startsWith(\"--c\")) {",
+			"				usage();",
+			"				return;",
+			"			}",
+			"			index = Integer.parseInt(args[0].substring(3));",
+			"			for (int i = 0; i < DEPTH; i++) {",
+			"				values[i] = Integer.parseInt(args[i + 1]);",
+			"			}",
+			"		}",
+			"		catch (NumberFormatException e) {",
+			"			usage();",
+			"			return;",
+			"		}",
+			"		if (index < 0 || index >= CLASSES) {",
+			"			usage();",
+			"			return;",
+			"		}",
+			"",
+			"		Unit unit = (Unit) Class.forName(\"synthetic.C\" + index).getDeclaredConstructor().newInstance();",
+			"		StringBuilder out = new StringBuilder();",
+			"		out.append('c').append(index).append(\" done\\n\");",
+			"		unit.run(values, out);",
+			"		for (int i = 0; i < PADDING_LINES; i++) {",
+			"			out.append(PADDING).append('\\n');",
+			"		}",
+			"		System.out.print(out);",
+			"	}",
+			"",
+			"	private static void usage() {",
+			"		StringBuilder usage = new StringBuilder(\"usage: --c<0-\").append(CLASSES - 1).append('>');",
+			"		for (int i = 0; i < DEPTH; i++) {",
+			"			usage.append(\" <int>\");",
+			"		}",
+			"		System.out.println(usage);",
+			"	}",
+			"}",
+			"");
+
+	private static final String UNIT_SOURCE = String.join("\n",
+			"package synthetic;",
+			"",
+			"interface Unit {",
+			"	void run(int[] values, StringBuilder out);",
+			"}",
+			"");
+
+	private static final String TEST_BOUNDS_SOURCE = String.join("\n",
+			"package synthetic;",
+			"",
+			"import java.io.BufferedReader;",
+			"import java.io.IOException;",
+			"import java.io.InputStreamReader;",
+			"import java.nio.charset.StandardCharsets;",
+			"import java.util.ArrayList;",
+			"import java.util.Arrays;",
+			"import java.util.HashMap;",
+			"import java.util.List;",
+			"import java.util.Map;",
+			"",
+			"public class SyntheticTestBounds {",
+			"	public Map<String, Object> testBounds() throws IOException {",
+			"		Map<String, Object> dependentParameters = new HashMap<>();",
+			"		List<String> selectors = new ArrayList<>();",
+			"		for (int i = 0; i < Synthetic.CLASSES; i++) {",
+			"			selectors.add(\"--c\" + i);",
+			"		}",
+			"		Map<String, Object> selector = new HashMap<>();",
+			"		selector.put(\"type\", String.class);",
+			"		selector.put(\"enumerated values\", selectors);",
+			"		dependentParameters.put(\"\", selector);",
+			"		String key = \"--c\\\\d+\";",
+			"		for (int level = 0; level < Synthetic.DEPTH; level++) {",
+			"			Map<String, Object> value = new HashMap<>();",
+			"			value.put(\"type\", Integer.class);",
+			"			value.put(\"min\", 0);",
+			"			value.put(\"max\", Synthetic.VALUE_RANGE - 1);",
+			"			dependentParameters.put(key, value);",
+			"			key += \" -?\\\\d+\";",
+			"		}",
+			"",
+			"		List<Map<String, Object>> tests = new ArrayList<>();",
+			"		try (BufferedReader reader = new BufferedReader(new InputStreamReader(",
+			"				SyntheticTestBounds.class.getResourceAsStream(\"" + TESTS_RESOURCE + "\"), StandardCharsets.UTF_8))) {",
+			"			String line;",
+			"			while ((line = reader.readLine()) != null) {",
+			"				String[] fields = line.split(\"\\t\");",
+			"				Map<String, Object> test = new HashMap<>();",
+			"				test.put(\"parameters\", new ArrayList<Object>(Arrays.asList(fields).subList(1, fields.length)));",
+			"				test.put(\"stdOutExpectedResultRegex\", fields[0]);",
+			"				test.put(\"stdErrExpectedResultRegex\", \"\");",
+			"				tests.add(test);",
+			"			}",
+			"		}",
+			"",
+			"		Map<String, Object> testBounds = new HashMap<>();",
+			"		testBounds.put(\"dependent parameters\", dependentParameters);",
+			"		testBounds.put(\"tests\", tests);",
+			"		return testBounds;",
+			"	}",
+			"}",
+			"");
+
+	/**
+	 * A branch of a generated class, taken when values[value] % modulus == remainder.
+	 */
+	private static class Branch {
+		int value;
+		int modulus;
+		int remainder;
+
+		/** index of the planted exception, -1 if there is none */
+		int planted = -1;
+		/** the exception is thrown when values[plantedValue] == magic */
+		int plantedValue;
+		int magic;
+
+		boolean isTaken(int[] values) {
+			return values[value] % modulus == remainder;
+		}
+
+		boolean throwsException(int[] values) {
+			return planted >= 0 && isTaken(values) && values[plantedValue] == magic;
+		}
+	}
+
+	private static final Options OPTIONS = new Options();
+	static {
+		Settings defaults = new Settings();
+		OPTIONS.addOption(Option.builder("output").hasArg(true)
+				.desc("path of the jar to generate").build());
+		OPTIONS.addOption(Option.builder("classes").hasArg(true)
+				.desc("number of classes (default: " + defaults.classes + ")").build());
+		OPTIONS.addOption(Option.builder("branches").hasArg(true)
+				.desc("number of branches per class (default: " + defaults.branches + ")").build());
+		OPTIONS.addOption(Option.builder("depth").hasArg(true)
+				.desc("number of dependent integer parameters (default: " + defaults.depth + ")").build());
+		OPTIONS.addOption(Option.builder("tests").hasArg(true)
+				.desc("number of predefined tests (default: " + defaults.tests + ")").build());
+		OPTIONS.addOption(Option.builder("outputBytes").hasArg(true)
+				.desc("bytes of output per execution (default: " + defaults.outputBytes + ")").build());
+		OPTIONS.addOption(Option.builder("exceptions").hasArg(true)
+				.desc("number of planted exceptions (default: " + defaults.exceptions + ")").build());
+		OPTIONS.addOption(Option.builder("valueRange").hasArg(true)
+				.desc("number of values of each integer parameter (default: " + defaults.valueRange + ")").build());
+		OPTIONS.addOption(Option.builder("seed").hasArg(true)
+				.desc("seed of the generated code and tests (default: " + defaults.seed + ")").build());
+	}
+
+
+	public static void main(String[] args) throws IOException {
+		CommandLine cliArgs;
+		try {
+			cliArgs = new DefaultParser().parse(OPTIONS, args);
+		}
+		catch (ParseException e) {
+			System.err.println("Error: " + e.getMessage());
+			new HelpFormatter().printHelp("SyntheticJarGenerator", "", OPTIONS, "", true);
+			System.exit(2);
+			return;
+		}
+
+		if (!cliArgs.hasOption("output")) {
+			System.err.println("Error: -output is required");
+			new HelpFormatter().printHelp("SyntheticJarGenerator", "", OPTIONS, "", true);
+			System.exit(2);
+		}
+
+		Settings settings = new Settings();
+		settings.classes = getInt(cliArgs, "classes", settings.classes);
+		settings.branches = getInt(cliArgs, "branches", settings.branches);
+		settings.depth = getInt(cliArgs, "depth", settings.depth);
+		settings.tests = getInt(cliArgs, "tests", settings.tests);
+		settings.outputBytes = getInt(cliArgs, "outputBytes", settings.outputBytes);
+		settings.exceptions = getInt(cliArgs, "exceptions", settings.exceptions);
+		settings.valueRange = getInt(cliArgs, "valueRange", settings.valueRange);
+		if (cliArgs.hasOption("seed")) {
+			settings.seed = Long.parseLong(cliArgs.getOptionValue("seed"));
+		}
+
+		File output = new File(cliArgs.getOptionValue("output"));
+		generate(settings, output);
+		System.out.println("Generated " + output);
+	}
+
+	private static int getInt(CommandLine cliArgs, String option, int defaultValue) {
+		return cliArgs.hasOption(option) ? Integer.parseInt(cliArgs.getOptionValue(option)) : defaultValue;
+	}
+
+
+	/**
+	 * Generates, compiles and packages a jar under test. Needs a JDK, since the sources are
+	 * compiled with the system Java compiler.
+	 * @param settings - settings of the jar
+	 * @param jar - jar file to write
+	 * @throws IOException if the sources can't be written or compiled
+	 * @throws IllegalArgumentException if the settings are out of range
+	 */
+	public static void generate(Settings settings, File jar) throws IOException {
+		if (settings.classes < 1 || settings.branches < 0 || settings.depth < 1 || settings.tests < 0
+				|| settings.outputBytes < 0 || settings.valueRange < MAX_MODULUS) {
+			throw new IllegalArgumentException("settings out of range");
+		}
+		if (settings.exceptions < 0 || settings.exceptions > (long) settings.classes * settings.branches) {
+			throw new IllegalArgumentException("can't plant more exceptions than there are branches");
+		}
+		JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+		if (compiler == null) {
+			throw new IOException("no Java compiler available, run with a JDK");
+		}
+
+		Random random = new Random(settings.seed);
+		List<List<Branch>> classes = generateBranches(settings, random);
+
+		Path dir = Files.createTempDirectory("synthetic");
+		try {
+			Path sourceDir = dir.resolve("src").resolve(PACKAGE);
+			Path classDir = dir.resolve("classes");
+			Files.createDirectories(sourceDir);
+			Files.createDirectories(classDir.resolve(PACKAGE));
+
+			List<String> sourcePaths = new ArrayList<>();
+			sourcePaths.add(write(sourceDir.resolve(MAIN_CLASS + ".java"), getMainSource(settings)));
+			sourcePaths.add(write(sourceDir.resolve("Unit.java"), UNIT_SOURCE));
+			sourcePaths.add(write(sourceDir.resolve(MAIN_CLASS + "TestBounds.java"), TEST_BOUNDS_SOURCE));
+			for (int i = 0; i < classes.size(); i++) {
+				sourcePaths.add(write(sourceDir.resolve("C" + i + ".java"), getClassSource(i, classes.get(i))));
+			}
+			write(classDir.resolve(PACKAGE).resolve(TESTS_RESOURCE), getTests(settings, classes, random));
+
+			List<String> arguments = new ArrayList<>(Arrays.asList("-nowarn", "-d", classDir.toString()));
+			arguments.addAll(sourcePaths);
+			if (compiler.run(null, null, null, arguments.toArray(new String[0])) != 0) {
+				throw new IOException("the generated sources didn't compile");
+			}
+			writeJar(classDir, jar);
+		}
+		finally {
+			FileUtils.deleteQuietly(dir.toFile());
+		}
+	}
+
+
+	private static List<List<Branch>> generateBranches(Settings settings, Random random) {
+		List<List<Branch>> classes = new ArrayList<>();
+		List<Branch> all = new ArrayList<>();
+		for (int i = 0; i < settings.classes; i++) {
+			List<Branch> branches = new ArrayList<>();
+			for (int b = 0; b < settings.branches; b++) {
+				Branch branch = new Branch();
+				branch.value = random.nextInt(settings.depth);
+				branch.modulus = 2 + random.nextInt(MAX_MODULUS - 1);
+				branch.remainder = random.nextInt(branch.modulus);
+				branches.add(branch);
+			}
+			classes.add(branches);
+			all.addAll(branches);
+		}
+
+		Collections.shuffle(all, random);
+		for (int planted = 0; planted < settings.exceptions; planted++) {
+			Branch branch = all.get(planted);
+			branch.planted = planted;
+			branch.plantedValue = random.nextInt(settings.depth);
+			branch.magic = random.nextInt(settings.valueRange);
+			if (branch.plantedValue == branch.value) {
+				// the magic value has to take the branch, or the exception is unreachable
+				branch.magic -= branch.magic % branch.modulus - branch.remainder;
+				if (branch.magic >= settings.valueRange) {
+					branch.magic -= branch.modulus;
+				}
+			}
+		}
+		return classes;
+	}
+
+	private static String getMainSource(Settings settings) {
+		char[] padding = new char[PADDING_LINE_LENGTH];
+		Arrays.fill(padding, 'x');
+		int paddingLines = (settings.outputBytes + PADDING_LINE_LENGTH) / (PADDING_LINE_LENGTH + 1);
+		return String.format(MAIN_SOURCE, settings.classes, settings.depth, settings.valueRange,
+				new String(padding), paddingLines);
+	}
+
+	private static String getClassSource(int index, List<Branch> branches) {
+		StringBuilder sb = new StringBuilder();
+		sb.append("package ").append(PACKAGE).append(";\n\n");
+		sb.append("final class C").append(index).append(" implements Unit {\n");
+		sb.append("\tpublic void run(int[] values, StringBuilder out) {\n");
+		for (int start = 0; start < branches.size(); start += BRANCHES_PER_METHOD) {
+			sb.append("\t\tbranches").append(start / BRANCHES_PER_METHOD).append("(values, out);\n");
+		}
+		sb.append("\t}\n");
+
+		for (int start = 0; start < branches.size(); start += BRANCHES_PER_METHOD) {
+			sb.append("\n\tprivate static void branches").append(start / BRANCHES_PER_METHOD)
+				.append("(int[] values, StringBuilder out) {\n");
+			for (int b = start; b < Math.min(start + BRANCHES_PER_METHOD, branches.size()); b++) {
+				Branch branch = branches.get(b);
+				sb.append(String.format("\t\tif (values[%d] %% %d == %d) {\n", branch.value, branch.modulus,
+						branch.remainder));
+				sb.append(String.format("\t\t\tout.append(\"c%d.b%d\\n\");\n", index, b));
+				if (branch.planted >= 0) {
+					sb.append(String.format("\t\t\tif (values[%d] == %d) {\n", branch.plantedValue, branch.magic));
+					sb.append(String.format("\t\t\t\tplanted%d();\n", branch.planted));
+					sb.append("\t\t\t}\n");
+				}
+				sb.append("\t\t}\n");
+			}
+			sb.append("\t}\n");
+		}
+
+		for (Branch branch : branches) {
+			if (branch.planted >= 0) {
+				sb.append(String.format("\n\tprivate static void planted%d() {\n", branch.planted));
+				sb.append(String.format("\t\tthrow new IllegalStateException(\"planted exception %d\");\n",
+						branch.planted));
+				sb.append("\t}\n");
+			}
+		}
+		sb.append("}\n");
+		return sb.toString();
+	}
+
+	/**
+	 * Generates the predefined tests, one per line: the expected standard output followed by the
+	 * parameters, separated by tabs.
+	 */
+	private static String getTests(Settings settings, List<List<Branch>> classes, Random random) {
+		StringBuilder sb = new StringBuilder();
+		int[] values = new int[settings.depth];
+		for (int t = 0; t < settings.tests; t++) {
+			int index = random.nextInt(settings.classes);
+			for (int attempt = 0; attempt < MAX_TEST_ATTEMPTS; attempt++) {
+				for (int i = 0; i < values.length; i++) {
+					values[i] = random.nextInt(settings.valueRange);
+				}
+				int[] candidate = values;
+				if (classes.get(index).stream().noneMatch(branch -> branch.throwsException(candidate))) {
+					break;
+				}
+			}
+			sb.append('c').append(index).append(" done.*\t--c").append(index);
+			for (int value : values) {
+				sb.append('\t').append(value);
+			}
+			sb.append('\n');
+		}
+		return sb.toString();
+	}
+
+	private static String write(Path path, String content) throws IOException {
+		Files.write(path, content.getBytes(StandardCharsets.UTF_8));
+		return path.toString();
+	}
+
+	private static void writeJar(Path classDir, File jar) throws IOException {
+		Manifest manifest = new Manifest();
+		manifest.getMainAttributes().put(Attributes.Name.MANIFEST_VERSION, "1.0");
+		manifest.getMainAttributes().put(Attributes.Name.MAIN_CLASS, PACKAGE + "." + MAIN_CLASS);
+
+		List<Path> files;
+		try (Stream<Path> walk = Files.walk(classDir)) {
+			files = walk.filter(Files::isRegularFile).sorted().collect(Collectors.toList());
+		}
+		try (OutputStream out = new FileOutputStream(jar);
+				JarOutputStream jarOut = new JarOutputStream(out, manifest)) {
+			for (Path file : files) {
+				jarOut.putNextEntry(new JarEntry(classDir.relativize(file).toString().replace(File.separatorChar, '/')));
+				Files.copy(file, jarOut);
+				jarOut.closeEntry();
+			}
+		}
+	}
+}
@@ -0,0 +1,70 @@
+package contest.winter2017;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Writing the TestBounds map of a sample jar and reading it back, as JSON and as the binary cache.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class TestBoundsBenchmark {
+	@Param({ "TesterTypeCheck", "RegexPatternMatch", "CommandLineEncryption", "LeetConverter" })
+	public String jar;
+
+	private static final String JAR_HASH = "benchmark";
+
+	private TestBoundsParser parser;
+	private File jsonFile;
+	private File cacheFile;
+
+	@Setup
+	public void setUp() throws IOException, ReflectiveOperationException {
+		parser = SampleJars.load(jar);
+		jsonFile = File.createTempFile("benchmark", ".json");
+		cacheFile = File.createTempFile("benchmark", ".bounds");
+		parser.writeJson(jsonFile);
+	}
+
+	@TearDown
+	public void tearDown() {
+		jsonFile.delete();
+		cacheFile.delete();
+	}
+
+
+	@Benchmark
+	public TestBoundsParser readJson() throws IOException {
+		return TestBoundsParser.fromJson(jsonFile);
+	}
+
+	@Benchmark
+	public TestBoundsParser jsonRoundTrip() throws IOException {
+		parser.writeJson(jsonFile);
+		return TestBoundsParser.fromJson(jsonFile);
+	}
+
+	@Benchmark
+	public TestBoundsParser cacheRoundTrip() throws IOException {
+		parser.writeCache(cacheFile, JAR_HASH);
+		return TestBoundsParser.fromCache(cacheFile, JAR_HASH);
+	}
+}
@@ -1,8 +1,14 @@
 package contest.winter2017;
 
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Deque;
 import java.util.List;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 
 
 /**
@@ -13,39 +19,125 @@ import java.util.concurrent.ExecutionException;
  * want your team to focus more on the SecurityTests. 
  */
 public class BasicTester {
+	/**
+	 * tests queued on the runner per worker, ahead of the results being checked
+	 */
+	private static final int QUEUED_PER_WORKER = 2;
+
 	private final ProgramRunner programRunner;
+	private final RunCache runCache;
+	private ResultLog resultLog;
 
 	private int passCount;
 	private int failCount;
+	private int reusedCount;
 	private List<BasicTestResult> results;
 
 	public BasicTester(ProgramRunner programRunner) {
+		this(programRunner, null);
+	}
+
+	/**
+	 * @param programRunner - runner used to execute the tests
+	 * @param runCache - results of a previous run to reuse, or null to execute every test
+	 */
+	public BasicTester(ProgramRunner programRunner, RunCache runCache) {
 		this.programRunner = programRunner;
+		this.runCache = runCache;
+	}
+
+	/**
+	 * Sets the log that a record of every executed test is written to.
+	 * @param resultLog - the log, or null for none
+	 */
+	public void setResultLog(ResultLog resultLog) {
+		this.resultLog = resultLog;
+	}
+
+	public void runTests(List<Test> tests) throws InterruptedException, ExecutionException, IOException {
+		runTests(TestStream.of(tests));
 	}
 
-	public void runTests(List<Test> tests) throws InterruptedException, ExecutionException {
+
+	/**
+	 * Runs tests while they are still being parsed. Each test is queued on the runner as soon as
+	 * it is taken from the stream, and the results are checked in the order of the tests as they
+	 * complete, with at most a few tests per worker queued ahead.
+	 * @param tests - stream of tests
+	 */
+	public void runTests(TestStream tests) throws InterruptedException, ExecutionException, IOException {
 		passCount = 0;
 		failCount = 0;
+		reusedCount = 0;
+		results = new ArrayList<BasicTestResult>();
 
-		// create list of parameters for each test
-		List<List<String>> testParametersList = new ArrayList<List<String>>();
-		for (Test test : tests) {
-			testParametersList.add(test.getParameters());
+		int maxPending = QUEUED_PER_WORKER * programRunner.getNumThreads();
+		Deque<PendingTest> pending = new ArrayDeque<>();
+		Test test;
+		while ((test = tests.take()) != null) {
+			pending.add(start(test, results.size() + pending.size()));
+			while (pending.size() > maxPending || (!pending.isEmpty() && pending.peek().isDone())) {
+				finish(pending.remove());
+			}
 		}
+		while (!pending.isEmpty()) {
+			finish(pending.remove());
+		}
+	}
 
-		// collect results in list
-		List<Output> outputs = programRunner.runTests(testParametersList);
-		assert tests.size() == outputs.size();
 
-		results = new ArrayList<BasicTestResult>();
-		for (int i = 0; i < outputs.size(); i++) {
-			BasicTestResult result = getBasicTestResult(tests.get(i), outputs.get(i));
-			if (result.passed) {
-				passCount++;
-			} else {
-				failCount++;
+	/**
+	 * Reuses the recorded output of a test that can't be affected by changes since the previous
+	 * run, or queues it on the runner, with a separate coverage file if its result is recorded.
+	 */
+	private PendingTest start(Test test, int index) {
+		PendingTest pending = new PendingTest();
+		pending.test = test;
+		if (runCache != null) {
+			pending.output = runCache.reuse(test);
+			if (pending.output != null) {
+				reusedCount++;
+				return pending;
 			}
-			results.add(result);
+			pending.execFile = runCache.getExecFile(test, index);
+		}
+		pending.future = programRunner.submitTest(test.getParameters(), pending.execFile);
+		return pending;
+	}
+
+	private void finish(PendingTest pending) throws InterruptedException, ExecutionException, IOException {
+		Output output = pending.future != null ? pending.future.get() : pending.output;
+		if (pending.execFile != null && output != null) {
+			runCache.record(pending.test, output, pending.execFile);
+		}
+
+		long startTime = System.nanoTime();
+		BasicTestResult result = getBasicTestResult(pending.test, output);
+		if (result.passed) {
+			passCount++;
+		} else {
+			failCount++;
+		}
+		results.add(result);
+		if (resultLog != null) {
+			resultLog.append("basic", output, null);
+		}
+		programRunner.getMetrics().getPhases().record(PhaseTimings.Phase.PROCESSING,
+				TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - startTime));
+	}
+
+
+	/**
+	 * A test taken from the stream whose result hasn't been checked yet.
+	 */
+	private static class PendingTest {
+		private Test test;
+		private Future<Output> future;
+		private Output output;
+		private File execFile;
+
+		private boolean isDone() {
+			return future == null || future.isDone();
 		}
 	}
 
@@ -65,6 +157,9 @@ public class BasicTester {
 		}
 		System.out.printf("basic test results: %d total, %d pass, %d fail%n",
 				results.size(), passCount, failCount);
+		if (runCache != null) {
+			System.out.printf("%d basic tests reused from the run cache%n", reusedCount);
+		}
 		System.out.println(Tester.HORIZONTAL_LINE);
 	}
 
@@ -78,7 +173,13 @@ public class BasicTester {
 	}
 
 
-	private static BasicTestResult getBasicTestResult(Test test, Output output) {
+	/**
+	 * Checks the output of a basic test against the expected output regexes.
+	 * @param test - the basic test
+	 * @param output - output of the test
+	 * @return BasicTestResult, whose passed field tells whether both regexes matched
+	 */
+	static BasicTestResult getBasicTestResult(Test test, Output output) {
 		BasicTestResult result = new BasicTestResult();
 		result.parameters = test.getParameters().toString();
 		result.output = output;
@@ -91,10 +192,10 @@ public class BasicTester {
 		String pErrAlt = pErr.replaceAll("[\\r\\n]", "");
 
 		// determine the result of the test based on expected output/error regex
-		boolean passedOut = pOut.matches(test.getStdOutExpectedResultRegex()) ||
-				pOutAlt.matches(test.getStdErrExpectedResultRegex());
-		boolean passedErr = pErr.matches(test.getStdErrExpectedResultRegex()) ||
-				pErrAlt.matches(test.getStdErrExpectedResultRegex());
+		boolean passedOut = test.getStdOutExpectedResultPattern().matcher(pOut).matches() ||
+				test.getStdErrExpectedResultPattern().matcher(pOutAlt).matches();
+		boolean passedErr = test.getStdErrExpectedResultPattern().matcher(pErr).matches() ||
+				test.getStdErrExpectedResultPattern().matcher(pErrAlt).matches();
 		result.passed = passedOut && passedErr;
 
 		StringBuilder errorString = new StringBuilder();
@@ -120,7 +221,7 @@ public class BasicTester {
 	}
 
 
-	private static class BasicTestResult {
+	static class BasicTestResult {
 		public String parameters;
 		public Output output;
 		public boolean passed;
@@ -0,0 +1,78 @@
+package contest.winter2017;
+
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+
+/**
+ * Runs at most a fixed number of tasks at a time on an executor that is shared with others, and
+ * queues the rest until one of them finishes. The jars of a campaign share one executor this way,
+ * so that a jar that queues a large round of tests doesn't fill the shared queue ahead of the
+ * tests of the other jars.
+ */
+class BoundedExecutor implements Executor {
+	private final Executor shared;
+	private final int limit;
+
+	// guarded by this
+	private final Queue<Runnable> queued = new ArrayDeque<>();
+	private int running = 0;
+
+
+	/**
+	 * @param shared - executor that runs the tasks
+	 * @param limit - number of tasks that may be queued on or running in the shared executor
+	 */
+	public BoundedExecutor(Executor shared, int limit) {
+		this.shared = shared;
+		this.limit = limit;
+	}
+
+
+	@Override
+	public void execute(Runnable task) {
+		synchronized (this) {
+			if (running >= limit) {
+				queued.add(task);
+				return;
+			}
+			running++;
+		}
+		shared.execute(() -> run(task));
+	}
+
+	private void run(Runnable task) {
+		try {
+			task.run();
+		}
+		finally {
+			Runnable next;
+			synchronized (this) {
+				next = queued.poll();
+				if (next == null) {
+					running--;
+				}
+			}
+			// the next task goes to the back of the shared queue, behind the tasks of the others
+			if (next != null) {
+				shared.execute(() -> run(next));
+			}
+		}
+	}
+
+	/**
+	 * Cancels the tasks that haven't been handed to the shared executor yet. Tasks that are already
+	 * running are left to their callers, and the shared executor is left running.
+	 */
+	public void close() {
+		synchronized (this) {
+			for (Runnable task : queued) {
+				if (task instanceof Future) {
+					((Future<?>) task).cancel(false);
+				}
+			}
+			queued.clear();
+		}
+	}
+}
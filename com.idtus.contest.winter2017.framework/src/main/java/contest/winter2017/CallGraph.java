@@ -0,0 +1,273 @@
+package contest.winter2017;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.ClassVisitor;
+import org.objectweb.asm.Handle;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+
+import contest.winter2017.agent.EdgeMap;
+
+/**
+ * Static call graph of the jar under test, built with ASM. Methods are identified by the internal
+ * class name, method name and descriptor, e.g. "pkg/Cls.name(I)V", which matches the names used by
+ * JaCoCo. Virtual calls are resolved to every override in the jar, and references to a class add
+ * an edge to its static initializer.
+ */
+class CallGraph {
+	private static final String CLASS_INIT = "<clinit>()V";
+
+	/** declared methods (name + descriptor) of each class */
+	private final Map<String, Set<String>> declaredMethods = new HashMap<>();
+
+	/** direct subtypes of each class or interface */
+	private final Map<String, Set<String>> subTypes = new HashMap<>();
+
+	/** super class of each class */
+	private final Map<String, String> superClasses = new HashMap<>();
+
+	/** unresolved call sites of each method, as owner and name + descriptor */
+	private final Map<String, List<String[]>> callSites = new HashMap<>();
+
+	private final Map<String, Set<String>> callees = new HashMap<>();
+	private final Map<String, Set<String>> callers = new HashMap<>();
+
+
+	/**
+	 * Builds the call graph of all classes in a jar.
+	 * @param jarFile - the jar to analyze
+	 * @return CallGraph of the jar
+	 * @throws IOException
+	 */
+	public static CallGraph fromJar(File jarFile) throws IOException {
+		CallGraph graph = new CallGraph();
+		try (JarFile jar = new JarFile(jarFile)) {
+			Enumeration<JarEntry> entries = jar.entries();
+			while (entries.hasMoreElements()) {
+				JarEntry entry = entries.nextElement();
+				if (!entry.getName().endsWith(".class")) {
+					continue;
+				}
+				try (InputStream in = jar.getInputStream(entry)) {
+					new ClassReader(in).accept(graph.new GraphClassVisitor(),
+							ClassReader.SKIP_DEBUG | ClassReader.SKIP_FRAMES);
+				}
+				catch (IllegalArgumentException e) {
+					// class file version not supported by ASM, leave it out of the graph
+				}
+			}
+		}
+		graph.resolve();
+		return graph;
+	}
+
+
+	public static String getMethodKey(String className, String nameAndDesc) {
+		return className + "." + nameAndDesc;
+	}
+
+
+	/**
+	 * Computes the slot a method is recorded in by the agent's method entry region.
+	 * @param methodKey - key of the method
+	 * @return slot index, see EdgeMap.methodSlot
+	 */
+	public static int getMethodSlot(String methodKey) {
+		int sep = methodKey.indexOf('.');
+		return EdgeMap.methodSlot(methodKey.substring(0, sep), methodKey.substring(sep + 1));
+	}
+
+
+	/**
+	 * Getter for all methods declared in the jar
+	 * @return Set of method keys
+	 */
+	public Set<String> getMethods() {
+		return callees.keySet();
+	}
+
+
+	/**
+	 * Computes the number of calls needed to get from each method to the nearest target.
+	 * @param targets - keys of the target methods
+	 * @return Map from method key to distance; methods that can't reach a target are absent
+	 */
+	public Map<String, Integer> getDistancesTo(Set<String> targets) {
+		return breadthFirstSearch(targets, callers);
+	}
+
+
+	/**
+	 * Computes the number of calls needed to get from the nearest source to each method.
+	 * @param sources - keys of the source methods
+	 * @return Map from method key to distance; methods that can't be reached are absent
+	 */
+	public Map<String, Integer> getDistancesFrom(Set<String> sources) {
+		return breadthFirstSearch(sources, callees);
+	}
+
+
+	private static Map<String, Integer> breadthFirstSearch(Set<String> start, Map<String, Set<String>> edges) {
+		Map<String, Integer> distances = new HashMap<>();
+		Deque<String> queue = new ArrayDeque<>();
+		for (String method : start) {
+			if (edges.containsKey(method)) {
+				distances.put(method, 0);
+				queue.add(method);
+			}
+		}
+		while (!queue.isEmpty()) {
+			String method = queue.poll();
+			int distance = distances.get(method) + 1;
+			for (String next : edges.getOrDefault(method, Collections.<String>emptySet())) {
+				if (!distances.containsKey(next)) {
+					distances.put(next, distance);
+					queue.add(next);
+				}
+			}
+		}
+		return distances;
+	}
+
+
+	private void resolve() {
+		for (String className : declaredMethods.keySet()) {
+			for (String method : declaredMethods.get(className)) {
+				String key = getMethodKey(className, method);
+				callees.put(key, new HashSet<String>());
+				callers.put(key, new HashSet<String>());
+			}
+		}
+
+		for (Map.Entry<String, List<String[]>> entry : callSites.entrySet()) {
+			String caller = entry.getKey();
+			for (String[] callSite : entry.getValue()) {
+				for (String callee : resolveCall(callSite[0], callSite[1])) {
+					callees.get(caller).add(callee);
+					callers.get(callee).add(caller);
+				}
+			}
+		}
+		callSites.clear();
+	}
+
+
+	/**
+	 * Finds all methods in the jar that a call site may dispatch to.
+	 */
+	private Set<String> resolveCall(String owner, String method) {
+		Set<String> targets = new HashSet<>();
+
+		// the declaration that is inherited by the owner
+		for (String cls = owner; cls != null; cls = superClasses.get(cls)) {
+			if (declaredMethods.getOrDefault(cls, Collections.<String>emptySet()).contains(method)) {
+				targets.add(getMethodKey(cls, method));
+				break;
+			}
+		}
+
+		// static initializers and constructors are never dispatched virtually
+		if (method.startsWith("<")) {
+			return targets;
+		}
+
+		// any override in a subtype
+		Deque<String> queue = new ArrayDeque<>(subTypes.getOrDefault(owner, Collections.<String>emptySet()));
+		Set<String> visited = new HashSet<>();
+		while (!queue.isEmpty()) {
+			String cls = queue.poll();
+			if (!visited.add(cls)) {
+				continue;
+			}
+			if (declaredMethods.getOrDefault(cls, Collections.<String>emptySet()).contains(method)) {
+				targets.add(getMethodKey(cls, method));
+			}
+			queue.addAll(subTypes.getOrDefault(cls, Collections.<String>emptySet()));
+		}
+		return targets;
+	}
+
+
+	private class GraphClassVisitor extends ClassVisitor {
+		private String className;
+
+		public GraphClassVisitor() {
+			super(Opcodes.ASM5);
+		}
+
+		@Override
+		public void visit(int version, int access, String name, String signature,
+				String superName, String[] interfaces) {
+			className = name;
+			declaredMethods.put(name, new HashSet<String>());
+			if (superName != null) {
+				superClasses.put(name, superName);
+				subTypes.computeIfAbsent(superName, k -> new HashSet<>()).add(name);
+			}
+			if (interfaces != null) {
+				for (String iface : interfaces) {
+					subTypes.computeIfAbsent(iface, k -> new HashSet<>()).add(name);
+				}
+			}
+		}
+
+		@Override
+		public MethodVisitor visitMethod(int access, String name, String desc,
+				String signature, String[] exceptions) {
+			declaredMethods.get(className).add(name + desc);
+			final List<String[]> sites = new ArrayList<>();
+			callSites.put(getMethodKey(className, name + desc), sites);
+
+			return new MethodVisitor(Opcodes.ASM5) {
+				@Override
+				public void visitMethodInsn(int opcode, String owner, String name, String desc, boolean itf) {
+					sites.add(new String[] { owner, name + desc });
+					if (opcode == Opcodes.INVOKESTATIC) {
+						sites.add(new String[] { owner, CLASS_INIT });
+					}
+				}
+
+				@Override
+				public void visitFieldInsn(int opcode, String owner, String name, String desc) {
+					if (opcode == Opcodes.GETSTATIC || opcode == Opcodes.PUTSTATIC) {
+						sites.add(new String[] { owner, CLASS_INIT });
+					}
+				}
+
+				@Override
+				public void visitTypeInsn(int opcode, String type) {
+					if (opcode == Opcodes.NEW) {
+						sites.add(new String[] { type, CLASS_INIT });
+					}
+				}
+
+				@Override
+				public void visitInvokeDynamicInsn(String name, String desc, Handle bsm, Object... bsmArgs) {
+					// lambdas and method references call the implementation method
+					for (Object arg : bsmArgs) {
+						if (arg instanceof Handle) {
+							Handle handle = (Handle) arg;
+							sites.add(new String[] { handle.getOwner(), handle.getName() + handle.getDesc() });
+						}
+					}
+				}
+			};
+		}
+	}
+}
@@ -0,0 +1,147 @@
+package contest.winter2017;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.apache.commons.io.FilenameUtils;
+
+import contest.winter2017.Tester.TesterOptions;
+
+/**
+ * Tests several jars in one run. Every jar gets a Tester of its own, with its own coverage
+ * analysis and output files, and all of them are tested at the same time, sharing the slots of
+ * one ExecutionPool for their children and one set of workers to run them.
+ */
+public class Campaign {
+	private final List<TesterOptions> jarOptions;
+	private final int slots;
+	private final ExecutionPool pool;
+	private final String profilePath;
+	private final boolean yamlOnly;
+
+
+	/**
+	 * Creates a campaign.
+	 * @param jarOptions - options of each jar to test
+	 * @param slots - number of children that may run at the same time, across all jars
+	 * @param profilePath - path of the Flight Recorder recording of the whole campaign, null to disable
+	 */
+	public Campaign(List<TesterOptions> jarOptions, int slots, String profilePath) {
+		this.jarOptions = jarOptions;
+		this.slots = slots;
+		this.pool = new ExecutionPool(slots);
+		this.profilePath = profilePath;
+		this.yamlOnly = !jarOptions.isEmpty() && jarOptions.get(0).yamlOnly;
+	}
+
+	/**
+	 * Finds the jars of a campaign.
+	 * @param jars - a directory containing the jars, or paths of jars separated by the path separator
+	 * @return jar files, sorted by name when read from a directory
+	 */
+	public static List<File> findJars(String jars) {
+		File dir = new File(jars);
+		List<File> files = new ArrayList<>();
+		if (dir.isDirectory()) {
+			File[] dirFiles = dir.listFiles((parent, name) -> name.endsWith(".jar"));
+			if (dirFiles != null) {
+				Arrays.sort(dirFiles);
+				files.addAll(Arrays.asList(dirFiles));
+			}
+		}
+		else {
+			for (String path : jars.split(File.pathSeparator)) {
+				if (!path.isEmpty()) {
+					files.add(new File(path));
+				}
+			}
+		}
+		return files;
+	}
+
+
+	/**
+	 * Tests all jars, and prints the results of each jar as a YAML document of its own, in the
+	 * order of the jars.
+	 */
+	public void run() throws IOException, InterruptedException {
+		// the recorders of the testers would overlap, so the campaign makes one of its own
+		if (profilePath != null) {
+			Profiler.startRecording(new File(profilePath));
+		}
+
+		// every jar may have a worker waiting for a slot while the others run children, so that the
+		// pool can pick which jar gets the next free slot
+		ExecutorService workers = Executors.newFixedThreadPool(slots + jarOptions.size(), runnable -> {
+			Thread thread = new Thread(runnable, "campaign-worker");
+			thread.setDaemon(true);
+			return thread;
+		});
+		ExecutorService executor = Executors.newFixedThreadPool(jarOptions.size());
+		List<Tester> testers = new ArrayList<>();
+		List<Future<?>> futures = new ArrayList<>();
+		try {
+			for (TesterOptions options : jarOptions) {
+				options.executionPool = pool;
+				options.executor = workers;
+				Tester tester = new Tester();
+				testers.add(tester);
+				futures.add(executor.submit(() -> test(tester, options)));
+			}
+			executor.shutdown();
+
+			for (int i = 0; i < futures.size(); i++) {
+				String jarName = FilenameUtils.getName(jarOptions.get(i).jarToTestPath);
+				try {
+					futures.get(i).get();
+				}
+				catch (ExecutionException e) {
+					System.out.println("ERROR: An exception occurred while testing " + jarName + ".");
+					e.getCause().printStackTrace();
+					continue;
+				}
+				System.out.println("--- # " + jarName);
+				testers.get(i).printYaml();
+			}
+		}
+		finally {
+			// testers that failed are closed too, so that their result logs are written
+			executor.shutdownNow();
+			for (Tester tester : testers) {
+				tester.close();
+			}
+			workers.shutdownNow();
+		}
+
+		if (!yamlOnly) {
+			for (ExecutionPool.Share share : pool.getShares()) {
+				if (share.isPlateaued()) {
+					System.out.println(share.getName() + " plateaued and gave its slots to the other jars.");
+				}
+			}
+		}
+		if (profilePath != null) {
+			Profiler.stopRecording();
+			if (!yamlOnly) {
+				System.out.println("Flight Recorder profile was written to " + profilePath + ".");
+			}
+		}
+	}
+
+	private static Void test(Tester tester, TesterOptions options) throws IOException, ReflectiveOperationException {
+		tester.init(options);
+		tester.executeBasicTests();
+		tester.executeSecurityTests();
+		if (options.htmlFilePath != null) {
+			tester.generateHtmlOutput(options.htmlFilePath);
+		}
+		return null;
+	}
+}
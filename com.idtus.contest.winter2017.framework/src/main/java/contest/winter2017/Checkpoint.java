@@ -0,0 +1,365 @@
+package contest.winter2017;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.io.FileUtils;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+import com.google.gson.reflect.TypeToken;
+
+/**
+ * Campaign state of the security tests, saved to a directory after every round so that a long
+ * campaign can be resumed after the machine was lost.
+ *
+ * The corpus and the JaCoCo execution data only grow during a campaign, so they are kept in
+ * append-only files, and each checkpoint only appends what was added since the previous one.
+ * The error buckets are small and rewritten whole. The state file is written last, by writing a
+ * temporary file and renaming it over the old one, and records how many bytes of the append-only
+ * files belong to the checkpoint, so a checkpoint that was interrupted halfway is ignored as a
+ * whole. Checkpoints are written on a background thread while the next round runs.
+ */
+public class Checkpoint {
+	private static final String STATE_FILE = "state.json";
+	private static final String CORPUS_FILE = "corpus.jsonl";
+	private static final String ERRORS_FILE = "errors.json";
+	private static final String EXEC_FILE = "jacoco.exec";
+	private static final String TEMP_SUFFIX = ".tmp";
+
+	private static final Gson gson = new Gson();
+
+	/**
+	 * Counters and budget of a campaign.
+	 */
+	public static class State {
+		private final String random;
+		private final int passCount;
+		private final int failCount;
+		private final int rounds;
+		private final int remainingTime;
+		private long corpusBytes;
+		private long execBytes;
+
+		/**
+		 * @param random - random number generator of the campaign, whose current state is saved
+		 * @param passCount - number of security tests that passed
+		 * @param failCount - number of security tests that failed
+		 * @param rounds - number of completed rounds
+		 * @param remainingTime - remaining test time goal in seconds
+		 */
+		public State(Random random, int passCount, int failCount, int rounds, int remainingTime) {
+			this.random = encodeRandom(random);
+			this.passCount = passCount;
+			this.failCount = failCount;
+			this.rounds = rounds;
+			this.remainingTime = remainingTime;
+		}
+
+		/**
+		 * Getter for the random number generator, restored to the state it had when saved
+		 * @return Random
+		 * @throws IOException
+		 */
+		public Random getRandom() throws IOException {
+			return decodeRandom(random);
+		}
+
+		public int getPassCount() {
+			return passCount;
+		}
+
+		public int getFailCount() {
+			return failCount;
+		}
+
+		public int getRounds() {
+			return rounds;
+		}
+
+		public int getRemainingTime() {
+			return remainingTime;
+		}
+	}
+
+	private final File directory;
+	private final File jacocoOutputFile;
+	private final ExecutorService writer = Executors.newSingleThreadExecutor(runnable -> {
+		Thread thread = new Thread(runnable, "checkpoint-writer");
+		thread.setDaemon(true);
+		return thread;
+	});
+
+	// written by the writer thread only, once the campaign has started
+	private long corpusBytes = 0;
+	private long execBytes = 0;
+	private long jacocoBytes = 0;
+	private volatile IOException writeError;
+
+
+	/**
+	 * @param directory - directory the checkpoint is kept in, created if needed
+	 * @param jacocoOutputFile - JaCoCo output file that the security tests append to, null if the
+	 *                           checkpoint is only read
+	 * @throws IOException
+	 */
+	public Checkpoint(File directory, File jacocoOutputFile) throws IOException {
+		this.directory = directory;
+		this.jacocoOutputFile = jacocoOutputFile;
+		Files.createDirectories(directory.toPath());
+	}
+
+
+	/**
+	 * Reads the state of the last complete checkpoint.
+	 * @return State, or null if the directory holds no checkpoint
+	 * @throws IOException
+	 */
+	public State load() throws IOException {
+		File stateFile = new File(directory, STATE_FILE);
+		if (!stateFile.exists()) {
+			return null;
+		}
+		try {
+			return gson.fromJson(FileUtils.readFileToString(stateFile, StandardCharsets.UTF_8), State.class);
+		}
+		catch (JsonParseException e) {
+			throw new IOException("unreadable checkpoint " + stateFile, e);
+		}
+	}
+
+	/**
+	 * Restores the corpus, the error buckets and the coverage of a checkpoint, and discards
+	 * whatever an interrupted later checkpoint appended.
+	 * @param state - state returned by load
+	 * @param corpus - corpus to add the saved inputs to
+	 * @param errors - error buckets to add the saved buckets to
+	 * @throws IOException
+	 */
+	public void restore(State state, Corpus corpus, ErrorBuckets errors) throws IOException {
+		File corpusFile = new File(directory, CORPUS_FILE);
+		truncate(corpusFile, state.corpusBytes);
+		try (BufferedReader reader = new BufferedReader(new InputStreamReader(
+				new FileInputStream(corpusFile), StandardCharsets.UTF_8))) {
+			String line;
+			while ((line = reader.readLine()) != null) {
+				Corpus.Entry entry = gson.fromJson(line, Corpus.Entry.class);
+				corpus.add(entry.getParameters(), entry.getEnteredMethods(), entry.getCost());
+			}
+		}
+
+		errors.restore(readErrors());
+
+		// the saved coverage is appended to the new output file, where JaCoCo merges it on load
+		File execFile = new File(directory, EXEC_FILE);
+		truncate(execFile, state.execBytes);
+		try (OutputStream out = new FileOutputStream(jacocoOutputFile, true)) {
+			Files.copy(execFile.toPath(), out);
+		}
+
+		corpusBytes = state.corpusBytes;
+		execBytes = state.execBytes;
+		jacocoBytes = jacocoOutputFile.length();
+	}
+
+	/**
+	 * Reads the inputs of the last complete checkpoint without changing the directory, e.g. to
+	 * replay them against another build of the jar.
+	 * @return parameters of each input in the corpus, empty if the directory holds no checkpoint
+	 * @throws IOException
+	 */
+	public List<List<String>> readInputs() throws IOException {
+		List<List<String>> inputs = new ArrayList<>();
+		State state = load();
+		File corpusFile = new File(directory, CORPUS_FILE);
+		if (state == null || !corpusFile.exists()) {
+			return inputs;
+		}
+
+		// only the bytes that belong to the checkpoint, an interrupted one may have appended more
+		byte[] data = new byte[(int) Math.min(state.corpusBytes, corpusFile.length())];
+		try (RandomAccessFile in = new RandomAccessFile(corpusFile, "r")) {
+			in.readFully(data);
+		}
+		for (String line : new String(data, StandardCharsets.UTF_8).split("\n")) {
+			if (!line.isEmpty()) {
+				inputs.add(gson.fromJson(line, Corpus.Entry.class).getParameters());
+			}
+		}
+		return inputs;
+	}
+
+	/**
+	 * Reads the error buckets of the last checkpoint.
+	 * @return buckets with their counts, empty if the directory holds none
+	 * @throws IOException
+	 */
+	public List<ErrorBuckets.Bucket> readErrors() throws IOException {
+		File errorsFile = new File(directory, ERRORS_FILE);
+		if (!errorsFile.exists()) {
+			return new ArrayList<>();
+		}
+		return gson.fromJson(FileUtils.readFileToString(errorsFile, StandardCharsets.UTF_8),
+				new TypeToken<List<ErrorBuckets.Bucket>>(){}.getType());
+	}
+
+	/**
+	 * Deletes a previous checkpoint, so that a new campaign starts from scratch.
+	 * @throws IOException
+	 */
+	public void reset() throws IOException {
+		for (String name : Arrays.asList(STATE_FILE, CORPUS_FILE, ERRORS_FILE, EXEC_FILE)) {
+			Files.deleteIfExists(new File(directory, name).toPath());
+		}
+		corpusBytes = 0;
+		execBytes = 0;
+		jacocoBytes = jacocoOutputFile.length();
+	}
+
+
+	/**
+	 * Saves a checkpoint in the background. Must be called between rounds, while no child is
+	 * writing coverage. Checkpoints are written in the order they are saved.
+	 * @param state - counters and budget after the round
+	 * @param newEntries - inputs added to the corpus since the previous checkpoint
+	 * @param errors - error buckets after the round
+	 * @throws IOException if the previous checkpoint could not be written
+	 */
+	public void save(State state, List<Corpus.Entry> newEntries, ErrorBuckets errors) throws IOException {
+		if (writeError != null) {
+			throw writeError;
+		}
+		// snapshot what the next round changes, the rest is only read by the writer
+		long jacocoLength = jacocoOutputFile.length();
+		String errorsJson = gson.toJson(errors.getBuckets());
+
+		writer.execute(() -> {
+			try {
+				write(state, newEntries, errorsJson, jacocoLength);
+			}
+			catch (IOException e) {
+				writeError = e;
+			}
+		});
+	}
+
+	/**
+	 * Waits until all saved checkpoints have been written.
+	 * @throws IOException if a checkpoint could not be written
+	 * @throws InterruptedException
+	 */
+	public void close() throws IOException, InterruptedException {
+		writer.shutdown();
+		writer.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+		if (writeError != null) {
+			throw writeError;
+		}
+	}
+
+	private void write(State state, List<Corpus.Entry> newEntries, String errorsJson, long jacocoLength)
+			throws IOException {
+		// append the new inputs
+		StringBuilder lines = new StringBuilder();
+		for (Corpus.Entry entry : newEntries) {
+			lines.append(gson.toJson(entry)).append('\n');
+		}
+		byte[] corpusData = lines.toString().getBytes(StandardCharsets.UTF_8);
+		File corpusFile = new File(directory, CORPUS_FILE);
+		truncate(corpusFile, corpusBytes);
+		try (FileOutputStream out = new FileOutputStream(corpusFile, true)) {
+			out.write(corpusData);
+			out.getChannel().force(true);
+		}
+		corpusBytes += corpusData.length;
+
+		// append the coverage written by the children since the previous checkpoint
+		File execFile = new File(directory, EXEC_FILE);
+		truncate(execFile, execBytes);
+		if (jacocoLength > jacocoBytes) {
+			try (RandomAccessFile in = new RandomAccessFile(jacocoOutputFile, "r");
+					FileOutputStream out = new FileOutputStream(execFile, true)) {
+				in.seek(jacocoBytes);
+				byte[] buffer = new byte[65536];
+				long remaining = jacocoLength - jacocoBytes;
+				while (remaining > 0) {
+					int read = in.read(buffer, 0, (int) Math.min(buffer.length, remaining));
+					if (read < 0) {
+						break;
+					}
+					out.write(buffer, 0, read);
+					remaining -= read;
+					execBytes += read;
+				}
+				out.getChannel().force(true);
+			}
+			jacocoBytes = jacocoLength;
+		}
+
+		writeAtomically(new File(directory, ERRORS_FILE), errorsJson);
+
+		state.corpusBytes = corpusBytes;
+		state.execBytes = execBytes;
+		writeAtomically(new File(directory, STATE_FILE), gson.toJson(state));
+	}
+
+
+	private static void writeAtomically(File file, String content) throws IOException {
+		File temp = new File(file.getPath() + TEMP_SUFFIX);
+		try (FileOutputStream out = new FileOutputStream(temp)) {
+			out.write(content.getBytes(StandardCharsets.UTF_8));
+			out.getChannel().force(true);
+		}
+		Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	}
+
+	// drops bytes appended by a checkpoint that didn't complete
+	private static void truncate(File file, long length) throws IOException {
+		try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+			if (raf.length() > length) {
+				raf.setLength(length);
+			}
+		}
+	}
+
+	private static String encodeRandom(Random random) {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+			out.writeObject(random);
+		}
+		catch (IOException e) {
+			throw new IllegalStateException(e);
+		}
+		return Base64.getEncoder().encodeToString(bytes.toByteArray());
+	}
+
+	private static Random decodeRandom(String encoded) throws IOException {
+		try (ObjectInputStream in = new ObjectInputStream(
+				new ByteArrayInputStream(Base64.getDecoder().decode(encoded)))) {
+			return (Random) in.readObject();
+		}
+		catch (ClassNotFoundException | ClassCastException e) {
+			throw new IOException("unreadable random state in checkpoint", e);
+		}
+	}
+}
@@ -0,0 +1,88 @@
+package contest.winter2017;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+import contest.winter2017.agent.ComparisonLog;
+
+/**
+ * Class that represents a comparison observed at runtime in the jar under test, as reported by
+ * the comparison operand feedback agent.
+ */
+public class Comparison {
+
+	/**
+	 * kind of comparison, one of the ComparisonLog kind constants
+	 */
+	private final char kind;
+
+	/**
+	 * the value that was compared
+	 */
+	private final String left;
+
+	/**
+	 * the value it was compared against (empty for failed parseInt calls)
+	 */
+	private final String right;
+
+
+	public Comparison(char kind, String left, String right) {
+		this.kind = kind;
+		this.left = left;
+		this.right = right;
+	}
+
+
+	public char getKind() {
+		return kind;
+	}
+
+	public String getLeft() {
+		return left;
+	}
+
+	public String getRight() {
+		return right;
+	}
+
+	public boolean isStringComparison() {
+		return kind == ComparisonLog.STRING_KIND;
+	}
+
+	public boolean isIntegerComparison() {
+		return kind == ComparisonLog.INTEGER_KIND;
+	}
+
+	public boolean isFailedParseInt() {
+		return kind == ComparisonLog.PARSE_INT_KIND;
+	}
+
+
+	/**
+	 * Reads the comparisons written by the agent.
+	 * @param logFile - comparison log written when the child exited
+	 * @return List of comparisons, empty if the log was not written
+	 * @throws IOException
+	 */
+	public static List<Comparison> readLog(File logFile) throws IOException {
+		List<Comparison> comparisons = new ArrayList<>();
+		if (!logFile.exists()) {
+			return comparisons;
+		}
+		for (String line : Files.readAllLines(logFile.toPath(), StandardCharsets.UTF_8)) {
+			int sep = line.indexOf('\t');
+			if (line.isEmpty() || sep < 0) {
+				continue;
+			}
+			comparisons.add(new Comparison(line.charAt(0),
+					ComparisonLog.unescape(line.substring(1, sep)),
+					ComparisonLog.unescape(line.substring(sep + 1))));
+		}
+		return comparisons;
+	}
+}
@@ -0,0 +1,175 @@
+package contest.winter2017;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Collection of interesting test inputs that security tests are derived from. The corpus starts
+ * out with the parameters of the basic tests, and grows with every input that was found to
+ * exercise new behavior in the jar under test.
+ *
+ * In directed mode, each input also remembers the methods it entered, and inputs that came
+ * closest to uncovered methods are picked more often. In performance fuzzing mode, inputs also
+ * carry the CPU time they used, and among inputs equally close to uncovered methods the most
+ * expensive ones are picked more often.
+ */
+public class Corpus {
+	/**
+	 * maximum number of inputs kept; new inputs replace random old ones beyond this
+	 */
+	private static final int MAX_ENTRIES = 10000;
+
+	/**
+	 * number of inputs compared when picking an input
+	 */
+	private static final int TOURNAMENT_SIZE = 3;
+
+	static class Entry {
+		private final List<String> parameters;
+		private final int[] enteredMethods;
+		private final long cost;
+		/**
+		 * calls to the nearest uncovered method, which depends on the coverage at the time, so it
+		 * isn't saved with checkpoints and is computed again when the entry is added back
+		 */
+		private transient int distance = Integer.MAX_VALUE;
+
+		private Entry(List<String> parameters, int[] enteredMethods, long cost) {
+			this.parameters = parameters;
+			this.enteredMethods = enteredMethods;
+			this.cost = cost;
+		}
+
+		private boolean isBetterThan(Entry other) {
+			return distance < other.distance || (distance == other.distance && cost > other.cost);
+		}
+
+		List<String> getParameters() {
+			return parameters;
+		}
+
+		int[] getEnteredMethods() {
+			return enteredMethods;
+		}
+
+		long getCost() {
+			return cost;
+		}
+	}
+
+	private final List<Entry> entries = new ArrayList<>();
+	private final Random random;
+	private int[] methodDistances = null;
+
+	/**
+	 * inputs added since the journal was last drained, null unless a checkpoint is kept
+	 */
+	private List<Entry> journal = null;
+
+	public Corpus(Random random) {
+		this.random = random;
+	}
+
+	/**
+	 * Adds an input to the corpus.
+	 * @param parameters - parameters of the input
+	 */
+	public void add(List<String> parameters) {
+		add(parameters, new int[0], 0);
+	}
+
+	/**
+	 * Adds an input to the corpus.
+	 * @param parameters - parameters of the input
+	 * @param enteredMethods - method slots the input entered, see EdgeMap.methodSlot
+	 * @param cost - resources used by the input, higher is preferred
+	 */
+	public synchronized void add(List<String> parameters, int[] enteredMethods, long cost) {
+		Entry entry = new Entry(new ArrayList<>(parameters), enteredMethods, cost);
+		entry.distance = getDistance(enteredMethods);
+		if (journal != null) {
+			journal.add(entry);
+		}
+		if (entries.size() < MAX_ENTRIES) {
+			entries.add(entry);
+		}
+		else {
+			entries.set(random.nextInt(entries.size()), entry);
+		}
+	}
+
+	/**
+	 * Picks a random input from the corpus, preferring inputs that are closest to uncovered methods
+	 * and then inputs that are most expensive.
+	 * @param random - random number generator to use
+	 * @return copy of the input's parameters that may be modified freely
+	 */
+	public synchronized List<String> pick(Random random) {
+		if (entries.isEmpty()) {
+			return new ArrayList<>();
+		}
+		Entry best = entries.get(random.nextInt(entries.size()));
+		for (int i = 1; i < TOURNAMENT_SIZE; i++) {
+			Entry entry = entries.get(random.nextInt(entries.size()));
+			if (entry.isBetterThan(best)) {
+				best = entry;
+			}
+		}
+		return new ArrayList<>(best.parameters);
+	}
+
+	/**
+	 * Updates the distances of all inputs to the uncovered methods.
+	 * @param methodDistances - distance to the nearest uncovered method for each method slot
+	 */
+	public synchronized void setMethodDistances(int[] methodDistances) {
+		this.methodDistances = methodDistances;
+		for (Entry entry : entries) {
+			entry.distance = getDistance(entry.enteredMethods);
+		}
+	}
+
+	private int getDistance(int[] enteredMethods) {
+		int distance = Integer.MAX_VALUE;
+		if (methodDistances != null) {
+			for (int method : enteredMethods) {
+				distance = Math.min(distance, methodDistances[method]);
+			}
+		}
+		return distance;
+	}
+
+	/**
+	 * Starts recording the inputs that are added, so that they can be saved incrementally.
+	 */
+	public synchronized void startJournal() {
+		journal = new ArrayList<>();
+	}
+
+	/**
+	 * Getter for the inputs added since the last call, which are then forgotten by the journal
+	 * @return List of added inputs
+	 */
+	synchronized List<Entry> drainJournal() {
+		List<Entry> drained = journal;
+		journal = new ArrayList<>();
+		return drained;
+	}
+
+	public synchronized int size() {
+		return entries.size();
+	}
+
+	/**
+	 * Getter for a snapshot of the inputs in the corpus
+	 * @return List of inputs
+	 */
+	public synchronized List<List<String>> getEntries() {
+		List<List<String>> snapshot = new ArrayList<>(entries.size());
+		for (Entry entry : entries) {
+			snapshot.add(entry.parameters);
+		}
+		return snapshot;
+	}
+}
@@ -0,0 +1,178 @@
+package contest.winter2017;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+import org.apache.commons.io.FileUtils;
+
+import contest.winter2017.agent.EdgeMap;
+
+/**
+ * Harness side of the edge coverage bitmap. Each worker slot owns a memory-mapped file that the
+ * agent in the child writes hit counts to. After the child exits, the counts are bucketed like
+ * AFL does and compared against the buckets seen so far, which tells whether the run found new
+ * behavior. JaCoCo remains the source of the reported coverage percentages.
+ */
+class CoverageBitmap {
+
+	/**
+	 * A memory-mapped bitmap file used by one child at a time.
+	 */
+	static class Slot {
+		private final File file;
+		private final MappedByteBuffer buffer;
+
+		private Slot(File file) throws IOException {
+			this.file = file;
+			try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+				buffer = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, EdgeMap.FILE_SIZE);
+			}
+		}
+
+		public String getPath() {
+			return file.getAbsolutePath();
+		}
+
+		private void clear() {
+			for (int i = 0; i < EdgeMap.FILE_SIZE; i += 8) {
+				buffer.putLong(i, 0L);
+			}
+		}
+	}
+
+	private final File directory;
+	private final BlockingQueue<Slot> freeSlots;
+
+	/**
+	 * bitwise or of the hit count buckets seen for every edge so far
+	 */
+	private final byte[] seenBuckets = new byte[EdgeMap.MAP_SIZE];
+	private int coveredEdges = 0;
+
+	public CoverageBitmap(int numSlots) throws IOException {
+		directory = Files.createTempDirectory("edgeCoverage").toFile();
+		Runtime.getRuntime().addShutdownHook(new Thread(() -> FileUtils.deleteQuietly(directory)));
+
+		freeSlots = new ArrayBlockingQueue<>(numSlots);
+		for (int i = 0; i < numSlots; i++) {
+			freeSlots.add(new Slot(new File(directory, "slot" + i + ".map")));
+		}
+	}
+
+	/**
+	 * Takes a cleared slot for a child that is about to be started.
+	 * @return Slot that must be released after the child exits
+	 * @throws InterruptedException
+	 */
+	public Slot acquire() throws InterruptedException {
+		Slot slot = freeSlots.take();
+		slot.clear();
+		return slot;
+	}
+
+	public void release(Slot slot) {
+		freeSlots.add(slot);
+	}
+
+	/**
+	 * Merges the counts of a finished child into the buckets seen so far. The whole map is merged
+	 * under one lock, since workers finishing at the same time would otherwise contend for it on
+	 * every edge.
+	 * @param slot - slot the child wrote to
+	 * @return number of new edge buckets, greater than zero if the run found new behavior
+	 */
+	public synchronized int merge(Slot slot) {
+		int newBuckets = 0;
+		MappedByteBuffer buffer = slot.buffer;
+		for (int i = 0; i < EdgeMap.MAP_SIZE; i += 8) {
+			// most of the map is empty, so skip it a word at a time
+			if (buffer.getLong(i) == 0L) {
+				continue;
+			}
+			for (int j = i; j < i + 8; j++) {
+				int count = buffer.get(j) & 0xff;
+				if (count != 0) {
+					newBuckets += mergeBucket(j, getBucket(count));
+				}
+			}
+		}
+		return newBuckets;
+	}
+
+	/**
+	 * Reads the methods that a finished child entered.
+	 * @param slot - slot the child wrote to
+	 * @return indices of the entered methods, as computed by EdgeMap.methodSlot
+	 */
+	public int[] getEnteredMethods(Slot slot) {
+		MappedByteBuffer buffer = slot.buffer;
+		int count = 0;
+		int[] methods = new int[64];
+		for (int i = 0; i < EdgeMap.METHOD_MAP_SIZE; i += 8) {
+			if (buffer.getLong(EdgeMap.MAP_SIZE + i) == 0L) {
+				continue;
+			}
+			for (int j = i; j < i + 8; j++) {
+				if (buffer.get(EdgeMap.MAP_SIZE + j) != 0) {
+					if (count == methods.length) {
+						methods = Arrays.copyOf(methods, count * 2);
+					}
+					methods[count++] = j;
+				}
+			}
+		}
+		return Arrays.copyOf(methods, count);
+	}
+
+	/**
+	 * Getter for the number of distinct edges seen by any run
+	 * @return number of edges
+	 */
+	public synchronized int getCoveredEdges() {
+		return coveredEdges;
+	}
+
+	private int mergeBucket(int index, int bucket) {
+		byte seen = seenBuckets[index];
+		if ((seen & bucket) != 0) {
+			return 0;
+		}
+		if (seen == 0) {
+			coveredEdges++;
+		}
+		seenBuckets[index] = (byte) (seen | bucket);
+		return 1;
+	}
+
+	/**
+	 * Classifies a hit count into one of eight buckets, so that only significant changes in
+	 * loop counts are treated as new behavior.
+	 * @param count - hit count from 1 to 255
+	 * @return single bit identifying the bucket
+	 */
+	private static int getBucket(int count) {
+		if (count <= 3) {
+			return 1 << (count - 1);
+		}
+		if (count <= 7) {
+			return 1 << 3;
+		}
+		if (count <= 15) {
+			return 1 << 4;
+		}
+		if (count <= 31) {
+			return 1 << 5;
+		}
+		if (count <= 127) {
+			return 1 << 6;
+		}
+		return 1 << 7;
+	}
+}
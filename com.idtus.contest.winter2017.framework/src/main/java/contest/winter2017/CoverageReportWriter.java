@@ -0,0 +1,157 @@
+package contest.winter2017;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.util.Locale;
+
+import org.jacoco.core.analysis.IClassCoverage;
+import org.jacoco.core.analysis.ICounter;
+import org.jacoco.core.analysis.ICoverageVisitor;
+import org.jacoco.core.analysis.ILine;
+
+/**
+ * Writes the code coverage section of the HTML report one class at a time, as the coverage is
+ * analyzed, so that the report of a jar with thousands of classes never holds more than a few
+ * classes in memory. The template writes the page around the classes.
+ *
+ * Besides the counters of each class, the status of its lines is written as a run-length encoded
+ * attribute, which the page only expands into lines when the class is opened. Each run is an
+ * optional count followed by e (no code), n (not covered), p (partly covered) or f (fully
+ * covered), e.g. "3e2fn" for lines first to first + 5. Lines with branches are listed in a second
+ * attribute as line:covered/total, separated by spaces.
+ */
+class CoverageReportWriter implements ICoverageVisitor {
+	private final Writer out;
+
+
+	/**
+	 * Creates a writer.
+	 * @param out - report, which the template has written up to the list of classes
+	 */
+	public CoverageReportWriter(Writer out) {
+		this.out = out;
+	}
+
+	/**
+	 * Writes the coverage of a class.
+	 * @param cc - coverage of the class
+	 * @throws UncheckedIOException if the report can't be written
+	 */
+	@Override
+	public void visitCoverage(IClassCoverage cc) {
+		try {
+			writeClass(cc);
+		}
+		catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	private void writeClass(IClassCoverage cc) throws IOException {
+		String name = cc.getName();
+		int sep = name.lastIndexOf('/');
+
+		out.write("            <div class=\"class\"");
+		if (cc.getFirstLine() != IClassCoverage.UNKNOWN_LINE) {
+			out.write(" data-first=\"" + cc.getFirstLine() + "\" data-lines=\"" + encodeLines(cc)
+					+ "\" data-branches=\"" + encodeBranches(cc) + "\"");
+		}
+		out.write(">\n");
+		out.write("                <div class=\"name\">" + escape(name.substring(sep + 1)) + "</div>\n");
+		out.write("                <div class=\"pkg\">" + escape(sep < 0 ? "" : name.substring(0, sep)) + "</div>\n");
+		out.write("                <table>\n");
+		out.write("                    <thead>\n");
+		out.write("                        <tr><td>Category</td><td>Covered</td><td>Total</td><td>Percent</td></tr>\n");
+		out.write("                    </thead>\n");
+		out.write("                    <tbody>\n");
+		writeCounter("Branches", cc.getBranchCounter());
+		writeCounter("Complexity", cc.getComplexityCounter());
+		writeCounter("Instructions", cc.getInstructionCounter());
+		writeCounter("Lines", cc.getLineCounter());
+		writeCounter("Methods", cc.getMethodCounter());
+		out.write("                    </tbody>\n");
+		out.write("                </table>\n");
+		out.write("                <div class=\"lines\"></div>\n");
+		out.write("            </div>\n");
+	}
+
+	private void writeCounter(String type, ICounter counter) throws IOException {
+		String color = counter.getCoveredCount() == counter.getTotalCount() ? "green"
+				: counter.getCoveredCount() == 0 ? "red" : "yellow";
+		String percent = counter.getTotalCount() == 0 ? "N/A"
+				: String.format(Locale.ROOT, "%.2f", counter.getCoveredCount() * 100.0 / counter.getTotalCount());
+		out.write("                        <tr class=\"" + color + "\"><td class=\"type\">" + type + "</td><td>"
+				+ counter.getCoveredCount() + "</td><td>" + counter.getTotalCount() + "</td><td>"
+				+ percent + "</td></tr>\n");
+	}
+
+
+	/**
+	 * Run-length encodes the status of the lines of a class.
+	 * @param cc - coverage of the class
+	 * @return runs of line status, from the first to the last line
+	 */
+	static String encodeLines(IClassCoverage cc) {
+		StringBuilder runs = new StringBuilder();
+		char run = 0;
+		int length = 0;
+		for (int i = cc.getFirstLine(); i <= cc.getLastLine(); i++) {
+			char status = getStatusCode(cc.getLine(i).getStatus());
+			if (status != run && length > 0) {
+				appendRun(runs, run, length);
+				length = 0;
+			}
+			run = status;
+			length++;
+		}
+		if (length > 0) {
+			appendRun(runs, run, length);
+		}
+		return runs.toString();
+	}
+
+	/**
+	 * Lists the branch coverage of the lines of a class that have branches.
+	 * @param cc - coverage of the class
+	 * @return line:covered/total of each line with branches, separated by spaces
+	 */
+	static String encodeBranches(IClassCoverage cc) {
+		StringBuilder branches = new StringBuilder();
+		for (int i = cc.getFirstLine(); i <= cc.getLastLine(); i++) {
+			ILine line = cc.getLine(i);
+			ICounter counter = line.getBranchCounter();
+			if (counter.getTotalCount() > 0) {
+				if (branches.length() > 0) {
+					branches.append(' ');
+				}
+				branches.append(i).append(':').append(counter.getCoveredCount())
+						.append('/').append(counter.getTotalCount());
+			}
+		}
+		return branches.toString();
+	}
+
+	private static void appendRun(StringBuilder runs, char status, int length) {
+		if (length > 1) {
+			runs.append(length);
+		}
+		runs.append(status);
+	}
+
+	private static char getStatusCode(int status) {
+		switch (status) {
+		case ICounter.NOT_COVERED:
+			return 'n';
+		case ICounter.PARTLY_COVERED:
+			return 'p';
+		case ICounter.FULLY_COVERED:
+			return 'f';
+		}
+		return 'e';
+	}
+
+	private static String escape(String text) {
+		return text.replace("&", "&amp;").replace("<", "&lt;").replace(">", "&gt;");
+	}
+}
@@ -1,8 +1,10 @@
 package contest.winter2017;
 
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.regex.Pattern;
 
 import org.apache.commons.lang.StringUtils;
 
@@ -10,8 +12,14 @@ public class DependentParameterFactory extends ParameterFactory {
 	// key: regex, value: parameter
 	private Map<String, List<Parameter>> dependentParametersMap;
 
+	// the keys compiled once, since getNext is called for every parameter of every generated test
+	private Map<Pattern, List<Parameter>> compiledParametersMap = new LinkedHashMap<>();
+
 	public DependentParameterFactory(Map<String, List<Parameter>> dependentParametersMap) {
 		this.dependentParametersMap = dependentParametersMap;
+		for (Map.Entry<String, List<Parameter>> entry : dependentParametersMap.entrySet()) {
+			compiledParametersMap.put(Pattern.compile(entry.getKey()), entry.getValue());
+		}
 	}
 
 	@Override
@@ -21,16 +29,18 @@ public class DependentParameterFactory extends ParameterFactory {
 
 	@Override
 	public List<Parameter> getNext(List<String> previousParameterValues) {
+		Profiler.Span span = Profiler.begin(Profiler.Operation.PARAMETER_LOOKUP, null);
 		String currentParamsString = getCurrentParamsString(previousParameterValues);
 		List<Parameter> possibleParamsList = new ArrayList<Parameter>();
 
-		for (String regex : dependentParametersMap.keySet()) {
-			List<Parameter> obj = dependentParametersMap.get(regex);
-			boolean matches = currentParamsString.matches(regex);
+		for (Map.Entry<Pattern, List<Parameter>> entry : compiledParametersMap.entrySet()) {
+			boolean matches = entry.getKey().matcher(currentParamsString).matches();
 			if (matches) {
-				possibleParamsList.addAll(obj);
+				possibleParamsList.addAll(entry.getValue());
 			}
 		}
+		span.end(previousParameterValues.size(), possibleParamsList.size(),
+				possibleParamsList.isEmpty() ? "no match" : "match");
 		return possibleParamsList;
 	}
 
@@ -0,0 +1,131 @@
+package contest.winter2017;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.commons.io.FilenameUtils;
+
+/**
+ * Compares the outputs of two versions of the jar under test for the same input, and groups the
+ * differences by signature like ErrorBuckets groups crashes. The outputs differ if the exit codes
+ * differ, if the signatures of their stderr differ, e.g. because only one of them crashed, if
+ * their stdout differs, or if the jar under test took many times as long as the reference jar.
+ * Times are compared without the startup and shutdown of the JVM where phase timing is enabled,
+ * and as CPU time where resource usage is sampled; without either, slowdowns aren't detected.
+ *
+ * Signatures are built from the stripped messages and stack traces of ErrorBuckets, and from the
+ * first line of stdout that differs, so that outputs that only differ in an echoed argument
+ * value count as one divergence.
+ */
+public class Divergences {
+	/**
+	 * how many times as long as the reference jar the jar under test may take before it counts as
+	 * a divergence
+	 */
+	public static final double SLOWDOWN_FACTOR = 10;
+
+	/**
+	 * milliseconds the jar under test must take longer than the reference jar for a slowdown, so
+	 * that timer and scheduling noise in short runs isn't reported
+	 */
+	public static final long MIN_SLOWDOWN_MILLIS = 100;
+
+	private final ErrorBuckets buckets;
+	private final String referenceName;
+	private final String testedName;
+
+
+	/**
+	 * @param referencePath - path of the reference jar, e.g. the previous version
+	 * @param testedPath - path of the jar under test
+	 * @param includeLineNumbers - whether line numbers of frames are part of signatures
+	 */
+	public Divergences(String referencePath, String testedPath, boolean includeLineNumbers) {
+		this.buckets = new ErrorBuckets(includeLineNumbers);
+		// versions of a jar are often built to the same file name in different directories
+		String referenceName = FilenameUtils.getName(referencePath);
+		String testedName = FilenameUtils.getName(testedPath);
+		boolean sameName = referenceName.equals(testedName);
+		this.referenceName = sameName ? referencePath : referenceName;
+		this.testedName = sameName ? testedPath : testedName;
+	}
+
+
+	/**
+	 * Compares the outputs of both jars for an input, and adds each difference to its bucket.
+	 * @param reference - output of the reference jar
+	 * @param tested - output of the jar under test for the same parameters
+	 * @return buckets the differences were added to, empty if the outputs are the same
+	 */
+	public List<ErrorBuckets.Bucket> compare(Output reference, Output tested) {
+		List<ErrorBuckets.Bucket> found = new ArrayList<>();
+		List<String> parameters = tested.getParameters();
+
+		String referenceStdErr = buckets.getSignature(parameters, reference.getStdErrString());
+		String testedStdErr = buckets.getSignature(parameters, tested.getStdErrString());
+		if (!referenceStdErr.equals(testedStdErr)) {
+			found.add(buckets.add("stderr " + referenceStdErr + "\nbecame " + testedStdErr, parameters,
+					describe(reference.getStdErrString(), tested.getStdErrString())));
+		}
+
+		// the exit code and output of a child that was killed once it crashed depend on timing
+		if (reference.isKilledEarly() || tested.isKilledEarly()) {
+			return found;
+		}
+
+		if (reference.getExitCode() != tested.getExitCode()) {
+			found.add(buckets.add("exit code " + reference.getExitCode() + " became " + tested.getExitCode(),
+					parameters, describe("exit code " + reference.getExitCode(), "exit code " + tested.getExitCode())));
+		}
+
+		String referenceStdOut = reference.getStdOutString();
+		String testedStdOut = tested.getStdOutString();
+		if (!referenceStdOut.equals(testedStdOut)) {
+			String[] referenceLines = referenceStdOut.split("\r?\n", -1);
+			String[] testedLines = testedStdOut.split("\r?\n", -1);
+			int line = 0;
+			while (line < referenceLines.length && line < testedLines.length
+					&& referenceLines[line].equals(testedLines[line])) {
+				line++;
+			}
+			String referenceLine = line < referenceLines.length ? referenceLines[line] : "";
+			String testedLine = line < testedLines.length ? testedLines[line] : "";
+			found.add(buckets.add("stdout " + buckets.getSignature(parameters, referenceLine) + "\nbecame "
+					+ buckets.getSignature(parameters, testedLine), parameters,
+					describe(referenceStdOut, testedStdOut)));
+		}
+
+		ResourceUsage referenceUsage = reference.getResourceUsage();
+		ResourceUsage testedUsage = tested.getResourceUsage();
+		String time = "main phase";
+		long referenceMillis = referenceUsage.getMainMillis();
+		long testedMillis = testedUsage.getMainMillis();
+		if (referenceMillis < 0 || testedMillis < 0) {
+			time = "CPU time";
+			referenceMillis = referenceUsage.getCpuMillis();
+			testedMillis = testedUsage.getCpuMillis();
+		}
+		if (referenceMillis > 0 && testedMillis >= SLOWDOWN_FACTOR * referenceMillis
+				&& testedMillis - referenceMillis >= MIN_SLOWDOWN_MILLIS) {
+			found.add(buckets.add("slowdown", parameters,
+					describe(referenceMillis + " ms " + time, testedMillis + " ms " + time)));
+		}
+		return found;
+	}
+
+	public int size() {
+		return buckets.size();
+	}
+
+	/**
+	 * Getter for the buckets
+	 * @return List of buckets, most frequent first
+	 */
+	public List<ErrorBuckets.Bucket> getBuckets() {
+		return buckets.getBuckets();
+	}
+
+	private String describe(String referenceText, String testedText) {
+		return referenceName + ":\n" + referenceText.trim() + "\n" + testedName + ":\n" + testedText.trim();
+	}
+}
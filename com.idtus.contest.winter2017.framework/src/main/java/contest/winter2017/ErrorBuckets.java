@@ -0,0 +1,264 @@
+package contest.winter2017;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Groups the errors seen during security testing by their stack trace signature, so that crashes
+ * that only differ in an echoed argument value count as one unique error. A signature consists of
+ * the exception class, the message with arguments and quoted values stripped, the top frames of
+ * the stack trace, and the classes of any causes. Only one bounded sample trace is kept per
+ * signature, so memory grows with the number of unique errors rather than failing runs.
+ */
+public class ErrorBuckets {
+	/**
+	 * number of stack frames that make up a signature
+	 */
+	private static final int SIGNATURE_FRAMES = 5;
+
+	/**
+	 * maximum number of characters of the sample trace kept per bucket
+	 */
+	private static final int MAX_SAMPLE_LENGTH = 4096;
+
+	/**
+	 * maximum number of characters of output without a stack trace that make up a signature
+	 */
+	private static final int MAX_FALLBACK_LENGTH = 256;
+
+	private static final String ARGUMENT_PLACEHOLDER = "<arg>";
+
+	private static final Pattern EXCEPTION_LINE = Pattern.compile(
+			"^(?:Exception in thread \"[^\"]*\" |Caused by: )?([\\w$.]+(?:Exception|Error|Throwable)[\\w$]*)(?::\\s*(.*))?$");
+	private static final Pattern CAUSE_LINE = Pattern.compile("^Caused by: ([\\w$.]+)");
+	private static final Pattern FRAME_LINE = Pattern.compile("^\\s+at ([^(]+)\\(([^:)]*)(?::(\\d+))?\\)");
+	private static final Pattern QUOTED = Pattern.compile("\"[^\"]*\"|'[^']*'");
+
+	/**
+	 * A group of errors with the same signature.
+	 */
+	public static class Bucket {
+		private final String signature;
+		private final List<String> firstInput;
+		private final String sampleTrace;
+		private final AtomicInteger count = new AtomicInteger();
+
+		private Bucket(String signature, List<String> firstInput, String sampleTrace) {
+			this.signature = signature;
+			this.firstInput = firstInput;
+			this.sampleTrace = sampleTrace;
+		}
+
+		public String getSignature() {
+			return signature;
+		}
+
+		/**
+		 * Getter for the parameters of the first run that hit this error
+		 * @return List of parameters
+		 */
+		public List<String> getFirstInput() {
+			return firstInput;
+		}
+
+		/**
+		 * Getter for the stderr of the first run that hit this error, truncated if it was long
+		 * @return String with the sample trace
+		 */
+		public String getSampleTrace() {
+			return sampleTrace;
+		}
+
+		public int getCount() {
+			return count.get();
+		}
+	}
+
+	private final ConcurrentMap<String, Bucket> buckets = new ConcurrentHashMap<>();
+	private final boolean includeLineNumbers;
+
+	/**
+	 * @param includeLineNumbers - whether line numbers of frames are part of signatures
+	 */
+	public ErrorBuckets(boolean includeLineNumbers) {
+		this.includeLineNumbers = includeLineNumbers;
+	}
+
+
+	/**
+	 * Adds an error to its bucket.
+	 * @param parameters - parameters of the run
+	 * @param stdErr - standard error of the run, containing the stack trace
+	 * @return Bucket the error was added to
+	 */
+	public Bucket add(List<String> parameters, String stdErr) {
+		return add(getSignature(parameters, stdErr), parameters, stdErr);
+	}
+
+	/**
+	 * Adds a finding with a signature of its own to its bucket.
+	 * @param signature - signature of the finding
+	 * @param parameters - parameters of the run
+	 * @param sampleText - text kept as the sample if the bucket is new
+	 * @return Bucket the finding was added to
+	 */
+	public Bucket add(String signature, List<String> parameters, String sampleText) {
+		Bucket bucket = buckets.get(signature);
+		if (bucket == null) {
+			String sample = sampleText.trim();
+			if (sample.length() > MAX_SAMPLE_LENGTH) {
+				sample = sample.substring(0, MAX_SAMPLE_LENGTH) + "\n...";
+			}
+			Bucket newBucket = new Bucket(signature, parameters, sample);
+			bucket = buckets.putIfAbsent(signature, newBucket);
+			if (bucket == null) {
+				bucket = newBucket;
+			}
+		}
+		bucket.count.incrementAndGet();
+		return bucket;
+	}
+
+	/**
+	 * Adds buckets that were saved by a checkpoint, keeping their counts.
+	 * @param saved - buckets to add
+	 */
+	public void restore(List<Bucket> saved) {
+		for (Bucket bucket : saved) {
+			Bucket existing = buckets.putIfAbsent(bucket.signature, bucket);
+			if (existing != null) {
+				existing.count.addAndGet(bucket.getCount());
+			}
+		}
+	}
+
+	public int size() {
+		return buckets.size();
+	}
+
+	/**
+	 * Getter for the buckets
+	 * @return List of buckets, most frequent first
+	 */
+	public List<Bucket> getBuckets() {
+		List<Bucket> list = new ArrayList<>(buckets.values());
+		list.sort(Comparator.comparingInt(Bucket::getCount).reversed());
+		return list;
+	}
+
+
+	/**
+	 * Computes the normalized signature of a stack trace.
+	 * @param parameters - parameters of the run, whose values are stripped from the message
+	 * @param stdErr - standard error of the run
+	 * @return String signature
+	 */
+	String getSignature(List<String> parameters, String stdErr) {
+		StringBuilder sb = new StringBuilder();
+		int frames = 0;
+		boolean foundException = false;
+
+		for (String line : stdErr.split("\r?\n")) {
+			if (!foundException) {
+				Matcher m = EXCEPTION_LINE.matcher(line.trim());
+				if (m.matches()) {
+					foundException = true;
+					sb.append(m.group(1));
+					if (m.group(2) != null) {
+						sb.append(": ").append(stripArguments(parameters, m.group(2)));
+					}
+				}
+				continue;
+			}
+
+			Matcher frame = FRAME_LINE.matcher(line);
+			if (frame.find()) {
+				if (frames++ < SIGNATURE_FRAMES) {
+					sb.append("\n  at ").append(frame.group(1));
+					if (includeLineNumbers && frame.group(3) != null) {
+						sb.append(':').append(frame.group(3));
+					}
+				}
+				continue;
+			}
+
+			Matcher cause = CAUSE_LINE.matcher(line);
+			if (cause.find()) {
+				sb.append("\ncaused by ").append(cause.group(1));
+			}
+		}
+
+		// not a java stack trace, fall back to the first line of the output, which is usually the
+		// message, so that output that keeps going, like a progress log, doesn't split the bucket
+		if (!foundException) {
+			return stripArguments(parameters, getFirstLine(stdErr));
+		}
+		return sb.toString();
+	}
+
+	private static String getFirstLine(String text) {
+		for (String line : text.split("\r?\n")) {
+			String trimmed = line.trim();
+			if (!trimmed.isEmpty()) {
+				return trimmed.length() > MAX_FALLBACK_LENGTH ? trimmed.substring(0, MAX_FALLBACK_LENGTH) : trimmed;
+			}
+		}
+		return "";
+	}
+
+	private static String stripArguments(List<String> parameters, String message) {
+		if (parameters != null) {
+			// replace longer arguments first, so that arguments containing others are replaced whole
+			List<String> arguments = new ArrayList<>(parameters);
+			arguments.sort(Comparator.comparingInt(String::length).reversed());
+			for (String argument : arguments) {
+				if (!argument.trim().isEmpty()) {
+					message = replaceWord(message, argument);
+				}
+			}
+		}
+		return QUOTED.matcher(message).replaceAll(ARGUMENT_PLACEHOLDER);
+	}
+
+	/**
+	 * Replaces the occurrences of an argument that aren't part of a longer word with the
+	 * placeholder, so that short arguments don't mangle the rest of the message.
+	 */
+	private static String replaceWord(String message, String argument) {
+		StringBuilder sb = null;
+		int copied = 0;
+		int index = message.indexOf(argument);
+		while (index >= 0) {
+			int end = index + argument.length();
+			if ((index == 0 || !isWordChar(message.charAt(index - 1)))
+					&& (end == message.length() || !isWordChar(message.charAt(end)))) {
+				if (sb == null) {
+					sb = new StringBuilder(message.length());
+				}
+				sb.append(message, copied, index).append(ARGUMENT_PLACEHOLDER);
+				copied = end;
+				index = message.indexOf(argument, end);
+			}
+			else {
+				index = message.indexOf(argument, index + 1);
+			}
+		}
+		if (sb == null) {
+			return message;
+		}
+		return sb.append(message, copied, message.length()).toString();
+	}
+
+	/**
+	 * Whether a character is matched by \w in a regex
+	 */
+	private static boolean isWordChar(char c) {
+		return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9') || c == '_';
+	}
+}
@@ -0,0 +1,193 @@
+package contest.winter2017;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Execution slots shared by the jars of a campaign. Each jar registers a share, and its workers
+ * take a slot from the pool before starting a child and return it when the child exits.
+ *
+ * Free slots go to the waiting share that has used the least time so far, weighted by its
+ * progress: a share's time counts in full while its coverage keeps growing or it keeps finding
+ * new errors, and many times over once it has plateaued, so that jars which stopped making
+ * progress give most of their slots to the ones that still do.
+ */
+public class ExecutionPool {
+	/**
+	 * weight of a share that made progress recently
+	 */
+	private static final double PROGRESS_WEIGHT = 1;
+
+	/**
+	 * weight of a share that plateaued, which still gets a slot now and then to notice if it
+	 * makes progress again
+	 */
+	private static final double PLATEAU_WEIGHT = 0.1;
+
+	private final int slots;
+	private final List<Share> shares = new ArrayList<>();
+	private int free;
+
+
+	/**
+	 * The slots of one jar.
+	 */
+	public class Share {
+		private final String name;
+		private final Metrics metrics;
+		private final long plateauExecutions;
+
+		// guarded by the pool
+		private double usedMillis;
+		private int waiting = 0;
+		private int running = 0;
+		private double weight = PROGRESS_WEIGHT;
+		private long progress = 0;
+		private double coverage = 0;
+		private long executionsAtProgress = 0;
+
+		private Share(String name, Metrics metrics, long plateauExecutions, double usedMillis) {
+			this.name = name;
+			this.metrics = metrics;
+			this.plateauExecutions = plateauExecutions;
+			this.usedMillis = usedMillis;
+		}
+
+		public String getName() {
+			return name;
+		}
+
+		/**
+		 * Waits for a free slot.
+		 * @return true if a slot was taken, false if the thread was interrupted while waiting
+		 */
+		public boolean acquire() {
+			synchronized (ExecutionPool.this) {
+				if (waiting == 0 && running == 0) {
+					// a share that was idle, e.g. while analyzing coverage between rounds, doesn't
+					// get to make up for the time it didn't use
+					usedMillis = Math.max(usedMillis, getMinUsedMillis());
+				}
+				waiting++;
+				try {
+					while (free == 0 || getNext() != this) {
+						ExecutionPool.this.wait();
+					}
+				}
+				catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					return false;
+				}
+				finally {
+					waiting--;
+					// the next share in line may have changed
+					ExecutionPool.this.notifyAll();
+				}
+				free--;
+				running++;
+				return true;
+			}
+		}
+
+		/**
+		 * Returns a slot taken by acquire.
+		 * @param wallMillis - how long the slot was used
+		 */
+		public void release(long wallMillis) {
+			synchronized (ExecutionPool.this) {
+				free++;
+				running--;
+				updateWeight();
+				usedMillis += Math.max(wallMillis, 1) / weight;
+				ExecutionPool.this.notifyAll();
+			}
+		}
+
+		/**
+		 * Whether the share has plateaued and gets fewer slots
+		 * @return true if it made no progress in a while
+		 */
+		public boolean isPlateaued() {
+			synchronized (ExecutionPool.this) {
+				return weight < PROGRESS_WEIGHT;
+			}
+		}
+
+		private void updateWeight() {
+			long newProgress = 0;
+			for (Map.Entry<String, Metrics.GeneratorStats> entry : metrics.getGenerators().entrySet()) {
+				newProgress += entry.getValue().getCorpusAdditions() + entry.getValue().getNewErrors();
+			}
+			List<Metrics.CoverageSample> history = metrics.getCoverageHistory();
+			double newCoverage = history.isEmpty() ? 0 : history.get(history.size() - 1).getPercentCovered();
+
+			long executions = metrics.getExecutions();
+			if (newProgress > progress || newCoverage > coverage) {
+				progress = newProgress;
+				coverage = newCoverage;
+				executionsAtProgress = executions;
+			}
+			weight = executions - executionsAtProgress > plateauExecutions ? PLATEAU_WEIGHT : PROGRESS_WEIGHT;
+		}
+	}
+
+
+	/**
+	 * Creates a pool.
+	 * @param slots - number of children that may run at the same time
+	 */
+	public ExecutionPool(int slots) {
+		this.slots = slots;
+		this.free = slots;
+	}
+
+	public int getSlots() {
+		return slots;
+	}
+
+	/**
+	 * Registers a jar. It starts out level with the share that used the least time so far.
+	 * @param name - name of the jar
+	 * @param metrics - metrics of the jar's runner, which tell its progress
+	 * @param plateauExecutions - executions without progress after which the jar has plateaued
+	 * @return share of the jar
+	 */
+	public synchronized Share register(String name, Metrics metrics, long plateauExecutions) {
+		Share share = new Share(name, metrics, plateauExecutions, getMinUsedMillis());
+		shares.add(share);
+		return share;
+	}
+
+	/**
+	 * Getter for the shares registered so far
+	 * @return shares in the order they were registered
+	 */
+	public synchronized List<Share> getShares() {
+		return new ArrayList<>(shares);
+	}
+
+	private double getMinUsedMillis() {
+		double min = Double.MAX_VALUE;
+		for (Share share : shares) {
+			if (share.waiting > 0 || share.running > 0) {
+				min = Math.min(min, share.usedMillis);
+			}
+		}
+		return min == Double.MAX_VALUE ? 0 : min;
+	}
+
+	/**
+	 * Picks the waiting share that is next in line for a slot.
+	 * @return share, null if none is waiting
+	 */
+	private Share getNext() {
+		Share next = null;
+		for (Share share : shares) {
+			if (share.waiting > 0 && (next == null || share.usedMillis < next.usedMillis)) {
+				next = share;
+			}
+		}
+		return next;
+	}
+}
@@ -0,0 +1,148 @@
+package contest.winter2017;
+
+import java.io.File;
+import java.io.IOException;
+import java.text.ParseException;
+
+import jdk.jfr.Category;
+import jdk.jfr.Configuration;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.FlightRecorder;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Recording;
+
+/**
+ * The JFR half of Profiler. This class is only loaded once Profiler has found that the JVM has
+ * Flight Recorder, since it can't be loaded without the jdk.jfr module.
+ */
+class FlightRecorderEvents {
+
+	@Category("Black-Box Tester")
+	abstract static class HarnessEvent extends Event {
+		@Label("Detail")
+		String detail;
+
+		@Label("Argument Count")
+		int argumentCount;
+
+		@Label("Output Size")
+		long outputSize;
+
+		@Label("Outcome")
+		String outcome;
+	}
+
+	@Name("contest.winter2017.Execution")
+	@Label("Execution")
+	@Description("Execution of the jar under test, output size in characters")
+	static class ExecutionEvent extends HarnessEvent {
+	}
+
+	@Name("contest.winter2017.CoverageLoad")
+	@Label("Coverage Load")
+	@Description("Loading and analyzing the JaCoCo output, output size in bytes of execution data")
+	static class CoverageLoadEvent extends HarnessEvent {
+	}
+
+	@Name("contest.winter2017.ParameterLookup")
+	@Label("Parameter Lookup")
+	@Description("Lookup of the possible next parameters, output size in parameters")
+	static class ParameterLookupEvent extends HarnessEvent {
+	}
+
+	@Name("contest.winter2017.Generator")
+	@Label("Generator")
+	@Description("Call of a security test generator, output size in generated tests")
+	static class GeneratorEvent extends HarnessEvent {
+	}
+
+	@Name("contest.winter2017.Report")
+	@Label("Report")
+	@Description("Rendering of a report, output size in bytes")
+	static class ReportEvent extends HarnessEvent {
+	}
+
+	private static class EventSpan implements Profiler.Span {
+		private final HarnessEvent event;
+
+		private EventSpan(HarnessEvent event) {
+			this.event = event;
+		}
+
+		@Override
+		public void end(int argumentCount, long outputSize, String outcome) {
+			if (event.shouldCommit()) {
+				event.argumentCount = argumentCount;
+				event.outputSize = outputSize;
+				event.outcome = outcome;
+				event.commit();
+			}
+		}
+	}
+
+	private static Recording recording;
+
+	private FlightRecorderEvents() {
+	}
+
+
+	static boolean isAvailable() {
+		return FlightRecorder.isAvailable();
+	}
+
+	static Profiler.Span begin(Profiler.Operation operation, String detail) {
+		HarnessEvent event = createEvent(operation);
+		if (!event.isEnabled()) {
+			return (argumentCount, outputSize, outcome) -> { };
+		}
+		event.detail = detail;
+		event.begin();
+		return new EventSpan(event);
+	}
+
+	private static HarnessEvent createEvent(Profiler.Operation operation) {
+		switch (operation) {
+		case EXECUTION:
+			return new ExecutionEvent();
+		case COVERAGE_LOAD:
+			return new CoverageLoadEvent();
+		case PARAMETER_LOOKUP:
+			return new ParameterLookupEvent();
+		case GENERATOR:
+			return new GeneratorEvent();
+		default:
+			return new ReportEvent();
+		}
+	}
+
+	static synchronized void startRecording(File file) throws IOException {
+		Configuration configuration;
+		try {
+			configuration = Configuration.getConfiguration("profile");
+		}
+		catch (ParseException e) {
+			throw new IOException("couldn't read the JFR profile settings", e);
+		}
+		recording = new Recording(configuration);
+		recording.setName("black-box tester");
+		recording.setDestination(file.toPath());
+		recording.setDumpOnExit(true);
+		for (Profiler.Operation operation : Profiler.Operation.values()) {
+			// stack traces would cost more than the events themselves, and each event type is only
+			// emitted from one place
+			recording.enable(createEvent(operation).getClass()).withoutThreshold().withoutStackTrace();
+		}
+		recording.start();
+	}
+
+	static synchronized void stopRecording() {
+		if (recording != null) {
+			// writes the recording to its destination
+			recording.stop();
+			recording.close();
+			recording = null;
+		}
+	}
+}
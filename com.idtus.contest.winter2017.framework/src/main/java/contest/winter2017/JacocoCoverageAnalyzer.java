@@ -3,49 +3,253 @@ package contest.winter2017;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.Date;
+import java.util.Deque;
+import java.util.Enumeration;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.TreeMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
 
 import org.jacoco.core.analysis.Analyzer;
 import org.jacoco.core.analysis.CoverageBuilder;
 import org.jacoco.core.analysis.IClassCoverage;
 import org.jacoco.core.analysis.ICounter;
+import org.jacoco.core.analysis.ICoverageVisitor;
+import org.jacoco.core.analysis.IMethodCoverage;
 import org.jacoco.core.data.ExecutionData;
 import org.jacoco.core.data.ExecutionDataReader;
+import org.jacoco.core.data.ExecutionDataStore;
 import org.jacoco.core.data.IExecutionDataVisitor;
 import org.jacoco.core.data.ISessionInfoVisitor;
 import org.jacoco.core.data.SessionInfo;
+import org.jacoco.core.runtime.WildcardMatcher;
 import org.jacoco.core.tools.ExecFileLoader;
 
 import contest.winter2017.Tester.TesterOptions;
 
 class JacocoCoverageAnalyzer {
+	/**
+	 * most entries of the jar that one task analyzes, before splitting them among two tasks
+	 */
+	private static final int ENTRIES_PER_TASK = 32;
+
 	private final String jacocoOutputFilePath;
 	private final String jarToTestPath;
-
-	private CoverageBuilder coverageBuilder = null;
+	private final WildcardMatcher includes;
+	private final WildcardMatcher excludes;
 
 	public JacocoCoverageAnalyzer(TesterOptions options) throws IOException {
 		this.jacocoOutputFilePath = options.jacocoOutputFilePath;
 		this.jarToTestPath = options.jarToTestPath;
+		this.includes = options.coverageIncludes != null ? new WildcardMatcher(options.coverageIncludes) : null;
+		this.excludes = options.coverageExcludes != null ? new WildcardMatcher(options.coverageExcludes) : null;
+	}
+
+
+	/**
+	 * Results of one analysis of the coverage: the totals, and which methods were entered.
+	 */
+	public static class Analysis implements ICoverageVisitor {
+		private final ICoverageVisitor next;
+		private final Map<String, Boolean> methodCoverage = new TreeMap<String, Boolean>();
+		private long total = 0;
+		private long covered = 0;
+
+		private Analysis(ICoverageVisitor next) {
+			this.next = next;
+		}
+
+		@Override
+		public void visitCoverage(IClassCoverage cc) {
+			for (ICounter counter : new ICounter[] { cc.getInstructionCounter(), cc.getBranchCounter(),
+					cc.getLineCounter(), cc.getMethodCounter(), cc.getComplexityCounter() }) {
+				total += counter.getTotalCount();
+				covered += counter.getCoveredCount();
+			}
+			for (IMethodCoverage mc : cc.getMethods()) {
+				String key = CallGraph.getMethodKey(cc.getName(), mc.getName() + mc.getDesc());
+				methodCoverage.put(key, mc.getMethodCounter().getCoveredCount() > 0);
+			}
+			if (next != null) {
+				next.visitCoverage(cc);
+			}
+		}
+
+		/**
+		 * Getter for the code coverage metrics including instructions, branches, lines, methods
+		 * and complexity
+		 * @return double representation of the percentage of code covered during testing
+		 */
+		public double getPercentCovered() {
+			return ((double) covered / (double) total) * 100.0;
+		}
+
+		/**
+		 * Getter for the methods of the jar under test, and whether each was entered during testing
+		 * @return Map from method key (as used by CallGraph) to whether the method was covered
+		 */
+		public Map<String, Boolean> getMethodCoverage() {
+			return methodCoverage;
+		}
 	}
 
-	private void loadCoverage() throws IOException {
+
+	/**
+	 * Analyzes the coverage of the jar under test once, handing each class to a visitor as it is
+	 * analyzed, so that the coverage of all classes is never held at once.
+	 * @param visitor - visitor of each class, in the order of the class names, or null
+	 * @return Analysis with the totals and the coverage of each method
+	 * @throws IOException if the coverage or the jar can't be read
+	 */
+	public Analysis analyze(ICoverageVisitor visitor) throws IOException {
 		// creating a new file for output in the jacoco output directory (one of the application arguments)
 		File executionDataFile = new File(this.jacocoOutputFilePath);
-		ExecFileLoader execFileLoader = new ExecFileLoader();
-		execFileLoader.load(executionDataFile);
+		Profiler.Span span = Profiler.begin(Profiler.Operation.COVERAGE_LOAD, jacocoOutputFilePath);
+		String outcome = "error";
+		try {
+			ExecFileLoader execFileLoader = new ExecFileLoader();
+			execFileLoader.load(executionDataFile);
+
+			Analysis analysis = new Analysis(visitor);
+			int classCount = analyzeJar(execFileLoader.getExecutionDataStore(), analysis);
+			outcome = classCount + " classes";
+			return analysis;
+		}
+		finally {
+			span.end(0, executionDataFile.length(), outcome);
+		}
+	}
+
+	/**
+	 * Analyzes the classes of the jar under test in parallel. This does what Analyzer.analyzeAll
+	 * does for the whole jar, but with the entries of the jar, sorted by name, split into chunks
+	 * that are analyzed on a fork/join pool, each with an Analyzer and a CoverageBuilder of its
+	 * own, and skipping the classes that are filtered out without reading them. The classes of
+	 * each chunk are handed to the visitor in order on the calling thread, and only a few chunks
+	 * are analyzed ahead of the visitor.
+	 * @param executionData - coverage of the tests
+	 * @param visitor - visitor of each class that contains code
+	 * @return number of classes visited
+	 * @throws IOException if the jar can't be read
+	 */
+	private int analyzeJar(ExecutionDataStore executionData, ICoverageVisitor visitor) throws IOException {
+		try (ZipFile jar = new ZipFile(jarToTestPath)) {
+			List<ZipEntry> entries = new ArrayList<>();
+			for (Enumeration<? extends ZipEntry> e = jar.entries(); e.hasMoreElements();) {
+				ZipEntry entry = e.nextElement();
+				String name = entry.getName();
+				if (name.endsWith(".class")) {
+					if (isIncluded(name.substring(0, name.length() - ".class".length()))) {
+						entries.add(entry);
+					}
+				}
+				// nested archives are analyzed as a whole and filtered afterwards
+				else if (name.endsWith(".jar") || name.endsWith(".zip")) {
+					entries.add(entry);
+				}
+			}
+			entries.sort(Comparator.comparing(ZipEntry::getName));
+
+			ForkJoinPool pool = ForkJoinPool.commonPool();
+			int window = 2 * pool.getParallelism();
+			Deque<Future<List<IClassCoverage>>> pending = new ArrayDeque<>();
+			// the same check as CoverageBuilder's, for classes that are in the jar more than once
+			Map<String, Long> ids = new HashMap<>();
+			for (int from = 0; from < entries.size(); from += ENTRIES_PER_TASK) {
+				List<ZipEntry> chunk = entries.subList(from, Math.min(from + ENTRIES_PER_TASK, entries.size()));
+				pending.add(pool.submit(() -> analyzeEntries(jar, chunk, executionData)));
+				if (pending.size() >= window) {
+					visitAll(pending.remove(), visitor, ids);
+				}
+			}
+			while (!pending.isEmpty()) {
+				visitAll(pending.remove(), visitor, ids);
+			}
+			return ids.size();
+		}
+	}
+
+	/**
+	 * Analyzes some entries of the jar.
+	 * @return coverage of the included classes, sorted by name
+	 */
+	private List<IClassCoverage> analyzeEntries(ZipFile jar, List<ZipEntry> entries, ExecutionDataStore executionData) {
+		CoverageBuilder coverageBuilder = new CoverageBuilder();
+		Analyzer analyzer = new Analyzer(executionData, coverageBuilder);
+		for (ZipEntry entry : entries) {
+			try (InputStream in = jar.getInputStream(entry)) {
+				analyzer.analyzeAll(in, jarToTestPath + "@" + entry.getName());
+			}
+			catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+		}
 
-		// use CoverageBuilder and Analyzer to assess code coverage from jacoco output file
-		coverageBuilder = new CoverageBuilder();
-		final Analyzer analyzer = new Analyzer(
-				execFileLoader.getExecutionDataStore(), coverageBuilder);
+		List<IClassCoverage> classes = new ArrayList<>();
+		for (IClassCoverage cc : coverageBuilder.getClasses()) {
+			if (isIncluded(cc.getName())) {
+				classes.add(cc);
+			}
+		}
+		classes.sort(Comparator.comparing(IClassCoverage::getName));
+		return classes;
+	}
+
+	private static void visitAll(Future<List<IClassCoverage>> chunk, ICoverageVisitor visitor, Map<String, Long> ids)
+			throws IOException {
+		List<IClassCoverage> classes;
+		try {
+			classes = chunk.get();
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("coverage analysis was interrupted");
+		}
+		catch (ExecutionException e) {
+			if (e.getCause() instanceof UncheckedIOException) {
+				throw ((UncheckedIOException) e.getCause()).getCause();
+			}
+			if (e.getCause() instanceof RuntimeException) {
+				throw (RuntimeException) e.getCause();
+			}
+			throw new IOException(e.getCause());
+		}
+		for (IClassCoverage cc : classes) {
+			Long duplicate = ids.put(cc.getName(), cc.getId());
+			if (duplicate != null) {
+				if (duplicate != cc.getId()) {
+					throw new IllegalStateException("Can't add different class with same name: " + cc.getName());
+				}
+				continue;
+			}
+			visitor.visitCoverage(cc);
+		}
+	}
 
-		// analyzeAll is the way to go to analyze all classes inside a container (jar or zip or directory)
-		File jarToTest = new File(jarToTestPath);
-		analyzer.analyzeAll(jarToTest);
+	/**
+	 * Whether a class counts towards the coverage
+	 * @param vmName - name of the class with / as separator
+	 * @return true unless it is the TestBounds class or filtered out by the includes and excludes
+	 */
+	private boolean isIncluded(String vmName) {
+		// ignore the TestBounds class within the jar
+		if (vmName.endsWith("TestBounds")) {
+			return false;
+		}
+		String name = vmName.replace('/', '.');
+		return (includes == null || includes.matches(name)) && (excludes == null || !excludes.matches(name));
 	}
 
 
@@ -112,118 +316,10 @@ class JacocoCoverageAnalyzer {
 	 */
 	public double generateSummaryCodeCoverageResults() {
 		try {
-			loadCoverage();
+			return analyze(null).getPercentCovered();
 		} catch (IOException e) {
 			e.printStackTrace();
 			return 0.0;
 		}
-
-		long total = 0;
-		long covered = 0;
-
-		for (final IClassCoverage cc : coverageBuilder.getClasses()) {
-			// ignore the TestBounds class within the jar
-			if (cc.getName().endsWith("TestBounds")) {
-				continue;
-			}
-
-			total += cc.getInstructionCounter().getTotalCount();
-			total += cc.getBranchCounter().getTotalCount();
-			total += cc.getLineCounter().getTotalCount();
-			total += cc.getMethodCounter().getTotalCount();
-			total += cc.getComplexityCounter().getTotalCount();
-
-			covered += cc.getInstructionCounter().getCoveredCount();
-			covered += cc.getBranchCounter().getCoveredCount();
-			covered += cc.getLineCounter().getCoveredCount();
-			covered += cc.getMethodCounter().getCoveredCount();
-			covered += cc.getComplexityCounter().getCoveredCount();
-		}
-
-		double percentCovered = ((double)covered / (double)total) * 100.0;
-		return percentCovered;
-	}
-
-
-	/**
-	 * This method shows an example of how to generate code coverage metrics from Jacoco
-	 * 
-	 * @return Map<String, Map<String, String>> representing code coverage results
-	 */
-	@SuppressWarnings("rawtypes")
-	public Map<String, Map> generateDetailedCodeCoverageResults() {
-		try {
-			loadCoverage();
-		} catch (IOException e) {
-			e.printStackTrace();
-			return null;
-		}
-
-		Map<String, Map> executionResults = new TreeMap<String, Map>();
-
-		for (final IClassCoverage cc : coverageBuilder.getClasses()) {
-			// ignore the TestBounds class within the jar
-			if (cc.getName().endsWith("TestBounds")) {
-				continue;
-			}
-
-			Map<String, Map> coverage = new TreeMap<String, Map>();
-
-			coverage.put("instructions", getMetricResultMap(cc.getInstructionCounter()));
-			coverage.put("branches", getMetricResultMap(cc.getBranchCounter()));
-			coverage.put("lines", getMetricResultMap(cc.getLineCounter()));
-			coverage.put("methods", getMetricResultMap(cc.getMethodCounter()));
-			coverage.put("complexity", getMetricResultMap(cc.getComplexityCounter()));
-
-			executionResults.put(cc.getName(), coverage);
-
-			// adding this to a string is a little impractical with the size of some of the files,
-			// so we are commenting it out, but it shows that you can get the coverage status of each line
-			// if you wanted to add debug argument to display this level of detail at command line level....
-			/*
-			for (int i = cc.getFirstLine(); i <= cc.getLastLine(); i++) {
-				coverage.put("Line " + Integer.valueOf(i) + ": " + getStatusString(cc.getLine(i).getStatus()) + "\n");
-			}
-			 */
-		}
-
-		return executionResults;
-	}
-
-
-	/**
-	 * Method to translate the Jacoco line coverage status integers to Strings.
-	 * 
-	 * @param status - integer representation of line coverage status provided by Jacoco
-	 * @return String representation of line coverage status (not covered, partially covered, fully covered)
-	 */
-	@SuppressWarnings("unused")
-	private String getStatusString(final int status) {
-		switch (status) {
-		case ICounter.NOT_COVERED:
-			return "not covered";
-		case ICounter.PARTLY_COVERED:
-			return "partially covered";
-		case ICounter.FULLY_COVERED:
-			return "fully covered";
-		}
-		return "";
-	}
-
-
-	/**
-	 * Method to translate the counter data and units into a human readable metric result String
-	 * 
-	 * @param unit
-	 * @param counter
-	 * @return
-	 */
-
-	private Map<String, Integer> getMetricResultMap(final ICounter counter) {
-		Map<String, Integer> res = new HashMap<String, Integer>();
-		res.put("missed", counter.getMissedCount());
-		res.put("covered", counter.getCoveredCount());
-		res.put("total", counter.getTotalCount());
-		return res;
 	}
 }
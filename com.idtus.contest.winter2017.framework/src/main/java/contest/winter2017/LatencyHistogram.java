@@ -0,0 +1,82 @@
+package contest.winter2017;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Histogram of durations that can be updated and read concurrently without locks. The unit is up
+ * to the caller. Durations below 16 have a bucket each, and every power of two above that is split
+ * into eight buckets, so percentiles are accurate to within 12.5%.
+ */
+public class LatencyHistogram {
+	private static final int LINEAR_BUCKETS = 16;
+	private static final int SUB_BUCKET_BITS = 3;
+	private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+	private static final int LINEAR_BITS = 4;
+
+	private final AtomicLongArray counts = new AtomicLongArray(LINEAR_BUCKETS + (64 - LINEAR_BITS) * SUB_BUCKETS);
+
+	/**
+	 * Records a duration.
+	 * @param duration - the duration, negative durations are counted as 0
+	 */
+	public void record(long duration) {
+		counts.incrementAndGet(getBucket(Math.max(0, duration)));
+	}
+
+	/**
+	 * Getter for the number of recorded durations
+	 * @return count
+	 */
+	public long getCount() {
+		long count = 0;
+		for (int i = 0; i < counts.length(); i++) {
+			count += counts.get(i);
+		}
+		return count;
+	}
+
+	/**
+	 * Estimates a percentile of the recorded durations. Durations recorded while this runs may or
+	 * may not be included.
+	 * @param percentile - percentile between 0 and 100
+	 * @return upper bound of the bucket that contains the percentile, 0 if nothing was recorded
+	 */
+	public long getPercentile(double percentile) {
+		long[] snapshot = new long[counts.length()];
+		long total = 0;
+		for (int i = 0; i < snapshot.length; i++) {
+			snapshot[i] = counts.get(i);
+			total += snapshot[i];
+		}
+		if (total == 0) {
+			return 0;
+		}
+		long rank = Math.max(1, (long) Math.ceil(total * percentile / 100.0));
+		long seen = 0;
+		for (int i = 0; i < snapshot.length; i++) {
+			seen += snapshot[i];
+			if (seen >= rank) {
+				return getUpperBound(i);
+			}
+		}
+		return getUpperBound(snapshot.length - 1);
+	}
+
+	static int getBucket(long duration) {
+		if (duration < LINEAR_BUCKETS) {
+			return (int) duration;
+		}
+		int exponent = 63 - Long.numberOfLeadingZeros(duration);
+		int subBucket = (int) (duration >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+		return LINEAR_BUCKETS + (exponent - LINEAR_BITS) * SUB_BUCKETS + subBucket;
+	}
+
+	static long getUpperBound(int bucket) {
+		if (bucket < LINEAR_BUCKETS) {
+			return bucket;
+		}
+		int exponent = (bucket - LINEAR_BUCKETS) / SUB_BUCKETS + LINEAR_BITS;
+		long subBucket = (bucket - LINEAR_BUCKETS) % SUB_BUCKETS;
+		return ((SUB_BUCKETS + subBucket + 1) << (exponent - SUB_BUCKET_BITS)) - 1;
+	}
+}
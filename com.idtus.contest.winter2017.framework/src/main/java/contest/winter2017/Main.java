@@ -3,8 +3,14 @@ package contest.winter2017;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
+import java.net.URISyntaxException;
 import java.nio.file.Files;
 import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ExecutionException;
 
 import org.apache.commons.cli.CommandLine;
 import org.apache.commons.cli.CommandLineParser;
@@ -39,6 +45,11 @@ public class Main {
 	 */
 	public static final String JAR_TO_TEST_PATH = "jarToTestPath";
 
+	/**
+	 * cli key for a directory of jars, or a list of jars, to test in one campaign
+	 */
+	public static final String CAMPAIGN = "campaign";
+
 	/**
 	 * cli key for path to the directory to be used to store output generated by 
 	 * jacoco framework
@@ -97,6 +108,116 @@ public class Main {
 	public static final String HTML_OUTPUT = "html";
 	public static final String HTML_OUTPUT_PATH = "htmlPath";
 
+	/**
+	 * use the bundled agent to log comparison operands and feed them back into black box tests
+	 */
+	public static final String COMPARISON_FEEDBACK = "cmpLog";
+
+	/**
+	 * use the bundled agent's edge coverage bitmap to guide black box tests
+	 */
+	public static final String FAST_COVERAGE = "fastCoverage";
+
+	/**
+	 * direct black box tests toward uncovered methods using a static call graph
+	 */
+	public static final String DIRECTED = "directed";
+
+	/**
+	 * evolve black box tests toward inputs that use the most CPU time and memory
+	 */
+	public static final String PERFORMANCE_FUZZING = "perfFuzz";
+
+	/**
+	 * include line numbers when grouping errors by stack trace
+	 */
+	public static final String ERROR_LINE_NUMBERS = "errorLines";
+
+	/**
+	 * additional stderr content that marks a crash, may be given more than once
+	 */
+	public static final String CRASH_SIGNATURE = "crashSignature";
+
+	/**
+	 * kill black box test children as soon as their stack trace was emitted
+	 */
+	public static final String EARLY_KILL = "earlyKill";
+
+	/**
+	 * directory of the cache used to skip basic tests that are unaffected by changes to the jar
+	 */
+	public static final String RUN_CACHE = "runCache";
+
+	/**
+	 * directory the security test campaign is checkpointed to after every round
+	 */
+	public static final String CHECKPOINT_DIR = "checkpointDir";
+
+	/**
+	 * continue the campaign saved in the checkpoint directory
+	 */
+	public static final String RESUME = "resume";
+
+	/**
+	 * seed of the random number generator used by the security tests
+	 */
+	public static final String SEED = "seed";
+
+	/**
+	 * file that a record of every executed test is written to
+	 */
+	public static final String RESULT_LOG = "resultLog";
+
+	/**
+	 * encoding of the result log, jsonl or binary
+	 */
+	public static final String RESULT_LOG_FORMAT = "resultLogFormat";
+
+	/**
+	 * port of the HTTP server on localhost that reports progress
+	 */
+	public static final String STATS_PORT = "statsPort";
+
+	/**
+	 * summarize the time spent in each phase of a test
+	 */
+	public static final String PHASE_TIMING = "phaseTiming";
+
+	/**
+	 * file the progress metrics are written to at the end of the run
+	 */
+	public static final String STATS_FILE = "statsFile";
+
+	/**
+	 * file that a Flight Recorder recording of the harness is written to
+	 */
+	public static final String PROFILE = "profile";
+
+	/**
+	 * directory of jars under test that were instrumented by JaCoCo ahead of time
+	 */
+	public static final String OFFLINE_CACHE = "offlineCache";
+
+	/**
+	 * checkpoint directory whose saved inputs are run again instead of generating new ones
+	 */
+	public static final String REPLAY = "replay";
+
+	/**
+	 * another version of the jar under test, which every security test is also run on
+	 */
+	public static final String DIFF_JAR = "diffJar";
+
+	/**
+	 * classes of the jar under test that count towards the coverage
+	 */
+	public static final String COVERAGE_INCLUDES = "coverageIncludes";
+
+	/**
+	 * classes of the jar under test that don't count towards the coverage, e.g. shaded libraries
+	 */
+	public static final String COVERAGE_EXCLUDES = "coverageExcludes";
+
 
 	/**
 	 * list of Option objects representing all command line arguments
@@ -105,6 +226,15 @@ public class Main {
 		// paths
 		Option.builder(JAR_TO_TEST_PATH).hasArg(true)
 			.desc("path to the executable jar to test").build(),
+		Option.builder(CAMPAIGN).hasArg(true)
+			.desc("directory of jars, or jars separated by " + File.pathSeparator
+					+ ", to test at the same time, sharing -threads workers").build(),
+		Option.builder(REPLAY).hasArg(true)
+			.desc("only run the errors and corpus saved in a -" + CHECKPOINT_DIR
+					+ " again, reporting which errors still reproduce").build(),
+		Option.builder(DIFF_JAR).hasArg(true)
+			.desc("previous version of the jar to run every security test on as well, reporting differences"
+					+ " in output, exit code and time").build(),
 		Option.builder(JACOCO_OUTPUT_PATH).hasArg(true)
 			.desc("path to directory for jacoco output").build(),
 		Option.builder(JACOCO_AGENT_JAR_PATH).hasArg(true)
@@ -119,6 +249,33 @@ public class Main {
 			.desc("number of threads to use for tests (default: 4 threads)").build(),
 		Option.builder(HTML_OUTPUT_PATH).hasArg(true)
 			.desc("html output file path").build(),
+		Option.builder(CHECKPOINT_DIR).hasArg(true)
+			.desc("directory to save the security test campaign to after every round").build(),
+		Option.builder(RESUME)
+			.desc("continue the campaign saved in the checkpoint directory").build(),
+		Option.builder(SEED).hasArg(true)
+			.desc("seed of the random number generator used by the security tests").build(),
+		Option.builder(RESULT_LOG).hasArg(true)
+			.desc("file to write a record of every executed test to while testing").build(),
+		Option.builder(RESULT_LOG_FORMAT).hasArg(true)
+			.desc("encoding of the result log, jsonl (default) or binary").build(),
+		Option.builder(STATS_PORT).hasArg(true)
+			.desc("port on localhost to serve progress and metrics on while testing").build(),
+		Option.builder(STATS_FILE).hasArg(true)
+			.desc("file to write the progress metrics to at the end of the run").build(),
+		Option.builder(PROFILE).hasArg(true)
+			.desc("record a Flight Recorder profile of the harness to a file").build(),
+		Option.builder(OFFLINE_CACHE).hasArg(true)
+			.desc("instrument the jar once ahead of time instead of in every test, caching it in a directory").build(),
+		Option.builder(COVERAGE_INCLUDES).hasArg(true)
+			.desc("classes to analyze for coverage, as wildcards like com.example.* separated by : (default: all)").build(),
+		Option.builder(COVERAGE_EXCLUDES).hasArg(true)
+			.desc("classes to leave out of the coverage, as wildcards like com.example.shaded.* separated by :").build(),
+		Option.builder(RUN_CACHE).hasArg(true)
+			.desc("directory to cache results in, so that basic tests unaffected by changes to the jar are skipped").build(),
+		Option.builder(CRASH_SIGNATURE).hasArg(true)
+			.desc("stderr text that marks a crash in addition to \"" + ProgramRunner.DEFAULT_CRASH_SIGNATURE
+					+ "\", may be repeated").build(),
 
 		// boolean options
 		Option.builder(NO_CONVERT_TO_JSON)
@@ -130,7 +287,21 @@ public class Main {
 		Option.builder(ALT_HELP).longOpt(HELP)
 			.desc("display this help message").build(),
 		Option.builder(HTML_OUTPUT)
-			.desc("generate detailed html output to file").build()
+			.desc("generate detailed html output to file").build(),
+		Option.builder(COMPARISON_FEEDBACK)
+			.desc("feed comparison operands logged by the bundled agent into black box tests").build(),
+		Option.builder(FAST_COVERAGE)
+			.desc("guide black box tests with the bundled agent's edge coverage bitmap").build(),
+		Option.builder(DIRECTED)
+			.desc("direct black box tests toward uncovered methods (implies -" + FAST_COVERAGE + ")").build(),
+		Option.builder(PERFORMANCE_FUZZING)
+			.desc("search for inputs that use the most CPU time and memory (Linux only)").build(),
+		Option.builder(ERROR_LINE_NUMBERS)
+			.desc("distinguish errors thrown from different lines of the same methods").build(),
+		Option.builder(EARLY_KILL)
+			.desc("kill black box tests once their stack trace is printed, losing their code coverage").build(),
+		Option.builder(PHASE_TIMING)
+			.desc("summarize the time spent in each phase of a test").build()
 	};
 
 
@@ -152,15 +323,87 @@ public class Main {
 			return;
 		}
 
-		if (cliArgs.hasOption(JAR_TO_TEST_PATH)) {
+		if (cliArgs.hasOption(CAMPAIGN)) {
+			List<File> jars = Campaign.findJars(cliArgs.getOptionValue(CAMPAIGN));
+			if (jars.isEmpty()) {
+				System.err.println("Failed to execute - no jars found for -" + CAMPAIGN + ".");
+				return;
+			}
+			TesterOptions campaignOptions;
+			List<TesterOptions> jarOptions = new ArrayList<>();
+			try {
+				campaignOptions = parseArguments(cliArgs);
+				for (File jar : jars) {
+					jarOptions.add(getJarOptions(campaignOptions, jar, cliArgs, true));
+				}
+			} catch (IOException ex) {
+				ex.printStackTrace();
+				return;
+			}
+			if (campaignOptions.statsPort != null) {
+				System.err.println("Warning: -" + STATS_PORT + " can't serve more than one jar, ignoring.");
+			}
+			if (cliArgs.hasOption(REPLAY)) {
+				System.err.println("Warning: -" + REPLAY + " can't replay more than one jar, ignoring.");
+			}
+			if (campaignOptions.diffJarPath != null) {
+				System.err.println("Warning: -" + DIFF_JAR + " can't be compared with more than one jar, ignoring.");
+			}
+
+			try {
+				new Campaign(jarOptions, campaignOptions.numThreads, campaignOptions.profilePath).run();
+			}
+			catch (IOException | InterruptedException e) {
+				System.out.println("ERROR: An exception occurred during the campaign.");
+				e.printStackTrace();
+			}
+		}
+
+		else if (cliArgs.hasOption(JAR_TO_TEST_PATH)) {
 			TesterOptions testerOptions;
 			try {
-				testerOptions = parseArguments(cliArgs);
+				testerOptions = getJarOptions(parseArguments(cliArgs),
+						new File(cliArgs.getOptionValue(JAR_TO_TEST_PATH)), cliArgs, false);
 			} catch (IOException ex) {
 				ex.printStackTrace();
 				return;
 			}
 
+			if (cliArgs.hasOption(REPLAY)) {
+				File replayDir = new File(cliArgs.getOptionValue(REPLAY));
+				if (!replayDir.isDirectory()) {
+					System.err.println("Failed to execute - -" + REPLAY + " " + replayDir + " is not a directory.");
+					return;
+				}
+				// nothing is generated, so coverage isn't needed, and all inputs can run at once
+				testerOptions.disableCoverage = true;
+				if (!cliArgs.hasOption(TEST_THREADS)) {
+					testerOptions.numThreads = Runtime.getRuntime().availableProcessors();
+				}
+				ProgramRunner replayRunner = null;
+				try {
+					long startTime = System.currentTimeMillis();
+					replayRunner = new ProgramRunner(testerOptions);
+					Replay replay = new Replay(replayRunner, replayDir, testerOptions.errorLineNumbers);
+					replay.run();
+					if (!testerOptions.yamlOnly) {
+						System.out.printf("Replayed %d inputs in %.1f seconds.%n", replay.getInputCount(),
+								(System.currentTimeMillis() - startTime) / 1000.0);
+					}
+					System.out.println(replay.getYaml());
+				}
+				catch (IOException | InterruptedException | ExecutionException e) {
+					System.out.println("ERROR: An exception occurred during the replay.");
+					e.printStackTrace();
+				}
+				finally {
+					if (replayRunner != null) {
+						replayRunner.close();
+					}
+				}
+				return;
+			}
+
 			Tester tester = new Tester();
 			try {
 				tester.init(testerOptions);
@@ -178,6 +421,7 @@ public class Main {
 				tester.generateHtmlOutput(testerOptions.htmlFilePath);
 			}
 			tester.printYaml();
+			tester.close();
 		}
 
 		// if the user has requested help
@@ -187,7 +431,8 @@ public class Main {
 
 		// user did not request help and we had an inadequate number of arguments
 		else {
-			System.err.println("Failed to execute - the -" + JAR_TO_TEST_PATH + " argument is required.");
+			System.err.println("Failed to execute - the -" + JAR_TO_TEST_PATH + " or -" + CAMPAIGN
+					+ " argument is required.");
 			printHelp(options);
 		}
 	}
@@ -204,15 +449,6 @@ public class Main {
 	private static TesterOptions parseArguments(CommandLine cliArgs) throws IOException {
 		TesterOptions options = new TesterOptions();
 
-		// get jarToTestPath
-		assert cliArgs.hasOption(JAR_TO_TEST_PATH);
-		options.jarToTestPath = cliArgs.getOptionValue(JAR_TO_TEST_PATH);
-
-		// get testFilePath
-		File jarToTestFile = new File(options.jarToTestPath);
-		File testFile = new File(jarToTestFile.getParent(), FilenameUtils.removeExtension(jarToTestFile.getName()) + ".json");
-		options.jsonFilePath = testFile.getAbsolutePath();
-
 		// get jacocoOutputDirPath
 		if (cliArgs.hasOption(JACOCO_OUTPUT_PATH)) {
 			options.jacocoOutputDirPath = cliArgs.getOptionValue(JACOCO_OUTPUT_PATH);
@@ -223,17 +459,6 @@ public class Main {
 				FileUtils.deleteQuietly(new File(options.jacocoOutputDirPath))));
 		}
 
-		// determine jacocoOutputFilePath
-		options.jacocoOutputFilePath = Paths.get(
-				options.jacocoOutputDirPath,
-				FilenameUtils.removeExtension(jarToTestFile.getName()) + JACOCO_OUTPUT_FILE_SUFFIX
-			).toString();
-
-		File jacocoOutputFile = new File(options.jacocoOutputFilePath);
-		if (jacocoOutputFile != null && jacocoOutputFile.exists()) {
-			jacocoOutputFile.delete();
-		}
-
 		// get jacocoAgentJarPath
 		if (cliArgs.hasOption(JACOCO_AGENT_JAR_PATH)) {
 			options.jacocoAgentJarPath = cliArgs.getOptionValue(JACOCO_AGENT_JAR_PATH);
@@ -251,6 +476,37 @@ public class Main {
 			}
 		}
 
+		// the framework jar doubles as the agent jar for our own instrumentation
+		options.agentJarPath = findFrameworkJar();
+		options.comparisonFeedback = cliArgs.hasOption(COMPARISON_FEEDBACK);
+		if (options.comparisonFeedback && options.agentJarPath == null) {
+			System.err.println("Warning: -" + COMPARISON_FEEDBACK + " requires running from the packaged jar, ignoring.");
+			options.comparisonFeedback = false;
+		}
+		options.directed = cliArgs.hasOption(DIRECTED);
+		options.fastCoverage = cliArgs.hasOption(FAST_COVERAGE) || options.directed;
+		if (options.fastCoverage && options.agentJarPath == null) {
+			System.err.println("Warning: -" + FAST_COVERAGE + " and -" + DIRECTED
+					+ " require running from the packaged jar, ignoring.");
+			options.fastCoverage = false;
+			options.directed = false;
+		}
+		options.performanceFuzzing = cliArgs.hasOption(PERFORMANCE_FUZZING);
+		if (options.performanceFuzzing && !ResourceUsage.isSupported()) {
+			System.err.println("Warning: -" + PERFORMANCE_FUZZING + " requires /proc, ignoring.");
+			options.performanceFuzzing = false;
+		}
+		options.profilePath = cliArgs.getOptionValue(PROFILE);
+		if (options.profilePath != null && !Profiler.isAvailable()) {
+			System.err.println("Warning: -" + PROFILE + " requires a JVM with Flight Recorder, ignoring.");
+			options.profilePath = null;
+		}
+		options.phaseTiming = cliArgs.hasOption(PHASE_TIMING);
+		if (options.phaseTiming && options.agentJarPath == null) {
+			System.err.println("Warning: -" + PHASE_TIMING + " can only split the run time of children"
+					+ " when running from the packaged jar.");
+		}
+
 		// get numThreads
 		options.numThreads = 4;
 		if (cliArgs.hasOption(TEST_THREADS)) {
@@ -264,6 +520,54 @@ public class Main {
 		}
 
 		options.yamlOnly = cliArgs.hasOption(ONLY_YAML);
+		options.errorLineNumbers = cliArgs.hasOption(ERROR_LINE_NUMBERS);
+		options.earlyKill = cliArgs.hasOption(EARLY_KILL);
+		options.runCacheDirPath = cliArgs.getOptionValue(RUN_CACHE);
+		options.offlineCacheDirPath = cliArgs.getOptionValue(OFFLINE_CACHE);
+		options.coverageIncludes = cliArgs.getOptionValue(COVERAGE_INCLUDES);
+		options.coverageExcludes = cliArgs.getOptionValue(COVERAGE_EXCLUDES);
+		options.diffJarPath = cliArgs.getOptionValue(DIFF_JAR);
+		options.checkpointDirPath = cliArgs.getOptionValue(CHECKPOINT_DIR);
+		options.resume = cliArgs.hasOption(RESUME);
+		if (options.resume && options.checkpointDirPath == null) {
+			System.err.println("Error: " + RESUME + " requires " + CHECKPOINT_DIR);
+			throw new IllegalArgumentException(RESUME + " requires " + CHECKPOINT_DIR);
+		}
+		options.resultLogPath = cliArgs.getOptionValue(RESULT_LOG);
+		if (cliArgs.hasOption(RESULT_LOG_FORMAT)) {
+			try {
+				options.resultLogFormat = ResultLog.Format.valueOf(
+						cliArgs.getOptionValue(RESULT_LOG_FORMAT).toUpperCase(Locale.ROOT));
+			}
+			catch (IllegalArgumentException ex) {
+				System.err.println("Error: Unable to parse " + RESULT_LOG_FORMAT);
+				throw ex;
+			}
+		}
+		if (cliArgs.hasOption(STATS_PORT)) {
+			try {
+				options.statsPort = Integer.parseInt(cliArgs.getOptionValue(STATS_PORT));
+			}
+			catch (NumberFormatException ex) {
+				System.err.println("Error: Unable to parse " + STATS_PORT);
+				throw ex;
+			}
+		}
+		if (cliArgs.hasOption(STATS_FILE)) {
+			options.statsFilePath = cliArgs.getOptionValue(STATS_FILE);
+		}
+		if (cliArgs.hasOption(SEED)) {
+			try {
+				options.seed = Long.parseLong(cliArgs.getOptionValue(SEED));
+			}
+			catch (NumberFormatException ex) {
+				System.err.println("Error: Unable to parse " + SEED);
+				throw ex;
+			}
+		}
+		if (cliArgs.hasOption(CRASH_SIGNATURE)) {
+			options.crashSignatures = Arrays.asList(cliArgs.getOptionValues(CRASH_SIGNATURE));
+		}
 		options.verbose = cliArgs.hasOption(ENABLE_VERBOSE);
 		options.disableJsonConversion = cliArgs.hasOption(NO_CONVERT_TO_JSON);
 
@@ -289,23 +593,108 @@ public class Main {
 			}
 		}
 
-		options.htmlFilePath = null;
+		return options;
+	}
+
+	/**
+	 * Fills in the options that depend on the jar to test.
+	 * @param options - options parsed from the command line
+	 * @param jarToTestFile - jar to test
+	 * @param cliArgs - the command line
+	 * @param campaign - whether other jars are tested in the same run, in which case the output
+	 *                   files given on the command line get the name of the jar added
+	 * @return options for the jar
+	 */
+	private static TesterOptions getJarOptions(TesterOptions options, File jarToTestFile, CommandLine cliArgs,
+			boolean campaign) {
+		TesterOptions jarOptions = options.copy();
+		String jarBaseName = FilenameUtils.removeExtension(jarToTestFile.getName());
+		jarOptions.jarToTestPath = jarToTestFile.getPath();
+
+		// get testFilePath
+		File testFile = new File(jarToTestFile.getParent(), jarBaseName + ".json");
+		jarOptions.jsonFilePath = testFile.getAbsolutePath();
+		File testBoundsCacheFile = new File(jarToTestFile.getParent(), jarBaseName + ".bounds");
+		jarOptions.testBoundsCachePath = testBoundsCacheFile.getAbsolutePath();
+
+		// determine jacocoOutputFilePath
+		jarOptions.jacocoOutputFilePath = Paths.get(
+				options.jacocoOutputDirPath,
+				jarBaseName + JACOCO_OUTPUT_FILE_SUFFIX
+			).toString();
+
+		File jacocoOutputFile = new File(jarOptions.jacocoOutputFilePath);
+		if (jacocoOutputFile.exists()) {
+			jacocoOutputFile.delete();
+		}
+
+		jarOptions.htmlFilePath = null;
 		if (cliArgs.hasOption(HTML_OUTPUT) || cliArgs.hasOption(HTML_OUTPUT_PATH)) {
-			options.htmlFilePath = cliArgs.getOptionValue(HTML_OUTPUT_PATH);
-			if (options.htmlFilePath == null) {
-				File file = new File(jarToTestFile.getParent(),
-						FilenameUtils.removeExtension(jarToTestFile.getName()) + ".html");
-				options.htmlFilePath = file.getAbsolutePath();
+			jarOptions.htmlFilePath = cliArgs.getOptionValue(HTML_OUTPUT_PATH);
+			if (jarOptions.htmlFilePath == null) {
+				File file = new File(jarToTestFile.getParent(), jarBaseName + ".html");
+				jarOptions.htmlFilePath = file.getAbsolutePath();
+			}
+			else if (campaign) {
+				jarOptions.htmlFilePath = addJarName(jarOptions.htmlFilePath, jarBaseName);
 			}
 		}
 
-		return options;
+		if (campaign) {
+			if (options.resultLogPath != null) {
+				jarOptions.resultLogPath = addJarName(options.resultLogPath, jarBaseName);
+			}
+			if (options.statsFilePath != null) {
+				jarOptions.statsFilePath = addJarName(options.statsFilePath, jarBaseName);
+			}
+			if (options.checkpointDirPath != null) {
+				jarOptions.checkpointDirPath = new File(options.checkpointDirPath, jarBaseName).getPath();
+			}
+			if (options.runCacheDirPath != null) {
+				jarOptions.runCacheDirPath = new File(options.runCacheDirPath, jarBaseName).getPath();
+			}
+			// the profile is recorded by the campaign as a whole, while the stats port and the diff
+			// jar aren't supported in a campaign
+			jarOptions.statsPort = null;
+			jarOptions.profilePath = null;
+			jarOptions.diffJarPath = null;
+		}
+		return jarOptions;
+	}
+
+	/**
+	 * Adds the name of a jar to a file name, e.g. results.jsonl becomes results-Jar.jsonl.
+	 * @param path - path of the file
+	 * @param jarBaseName - name of the jar without its extension
+	 * @return path of the file for the jar
+	 */
+	private static String addJarName(String path, String jarBaseName) {
+		String extension = FilenameUtils.getExtension(path);
+		return FilenameUtils.removeExtension(path) + "-" + jarBaseName
+				+ (extension.isEmpty() ? "" : "." + extension);
 	}
 
 	private static File createTempDir() throws IOException {
 		return Files.createTempDirectory("jacocoOutput").toFile();
 	}
 
+	/**
+	 * Determines the jar this class was loaded from, which also contains the instrumentation agent.
+	 * @return absolute path to the jar, or null when not running from a jar
+	 */
+	private static String findFrameworkJar() {
+		try {
+			File location = new File(Main.class.getProtectionDomain().getCodeSource().getLocation().toURI());
+			if (location.isFile() && location.getName().endsWith(".jar")) {
+				return location.getAbsolutePath();
+			}
+		}
+		catch (SecurityException | URISyntaxException ex) {
+			// fall through, agent is unavailable
+		}
+		return null;
+	}
+
 	/**
 	 * Reads Jacoco agent jar bundled with this project into a temporary file.
 	 * @return path to the temporary file
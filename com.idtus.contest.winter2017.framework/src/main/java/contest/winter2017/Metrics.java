@@ -0,0 +1,233 @@
+package contest.winter2017;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counters describing the progress of a run. ProgramRunner counts executions as they start and
+ * finish, and SecurityTester counts what every generator yielded. All counters are lock-free, so
+ * the workers never wait for each other or for a reader, and readers see a slightly stale but
+ * consistent enough view.
+ */
+public class Metrics {
+	/**
+	 * Yield of one test generator.
+	 */
+	public static class GeneratorStats {
+		private final LongAdder executions = new LongAdder();
+		private final LongAdder corpusAdditions = new LongAdder();
+		private final LongAdder crashes = new LongAdder();
+		private final LongAdder newErrors = new LongAdder();
+
+		public long getExecutions() {
+			return executions.sum();
+		}
+
+		/**
+		 * Getter for the number of inputs that were added to the corpus
+		 * @return count
+		 */
+		public long getCorpusAdditions() {
+			return corpusAdditions.sum();
+		}
+
+		public long getCrashes() {
+			return crashes.sum();
+		}
+
+		/**
+		 * Getter for the number of crashes that had a signature that wasn't seen before
+		 * @return count
+		 */
+		public long getNewErrors() {
+			return newErrors.sum();
+		}
+	}
+
+	/**
+	 * Code coverage at a point in time.
+	 */
+	public static class CoverageSample {
+		private final long elapsedMillis;
+		private final double percentCovered;
+
+		private CoverageSample(long elapsedMillis, double percentCovered) {
+			this.elapsedMillis = elapsedMillis;
+			this.percentCovered = percentCovered;
+		}
+
+		public long getElapsedMillis() {
+			return elapsedMillis;
+		}
+
+		public double getPercentCovered() {
+			return percentCovered;
+		}
+	}
+
+	private final long startTime = System.nanoTime();
+	private final LongAdder executions = new LongAdder();
+	private final AtomicInteger inFlight = new AtomicInteger();
+	private final AtomicInteger queued = new AtomicInteger();
+	private final AtomicInteger uniqueErrors = new AtomicInteger();
+	private final AtomicLong firstErrorMillis = new AtomicLong(-1);
+	private final LatencyHistogram latency = new LatencyHistogram();
+	private final PhaseTimings phases = new PhaseTimings();
+	private final ConcurrentMap<String, GeneratorStats> generators = new ConcurrentHashMap<>();
+
+	// appended once per round, so copying on write is cheap
+	private final List<CoverageSample> coverageHistory = new CopyOnWriteArrayList<>();
+
+
+	/**
+	 * Counts tests that were submitted to the worker pool.
+	 * @param count - number of tests
+	 */
+	void testsQueued(int count) {
+		queued.addAndGet(count);
+	}
+
+	/**
+	 * Counts tests that were removed from the queue without being started.
+	 * @param count - number of tests
+	 */
+	void testsDropped(int count) {
+		queued.addAndGet(-count);
+	}
+
+	void executionStarted() {
+		queued.decrementAndGet();
+		inFlight.incrementAndGet();
+	}
+
+	/**
+	 * Counts an execution that finished.
+	 * @param wallMillis - duration of the execution, negative if it didn't complete
+	 */
+	void executionFinished(long wallMillis) {
+		inFlight.decrementAndGet();
+		if (wallMillis >= 0) {
+			executions.increment();
+			latency.record(wallMillis);
+		}
+	}
+
+	/**
+	 * Counts the result of a security test.
+	 * @param generator - name of the generator that created the test
+	 * @param addedToCorpus - whether the input was added to the corpus
+	 * @param crashed - whether the test crashed
+	 * @param newError - whether the crash had a new signature
+	 */
+	void recordYield(String generator, boolean addedToCorpus, boolean crashed, boolean newError) {
+		GeneratorStats stats = generators.computeIfAbsent(generator, name -> new GeneratorStats());
+		stats.executions.increment();
+		if (addedToCorpus) {
+			stats.corpusAdditions.increment();
+		}
+		if (crashed) {
+			stats.crashes.increment();
+		}
+		if (newError) {
+			stats.newErrors.increment();
+		}
+	}
+
+	void setUniqueErrors(int count) {
+		uniqueErrors.set(count);
+		if (count > 0 && firstErrorMillis.get() < 0) {
+			firstErrorMillis.compareAndSet(-1, getElapsedMillis());
+		}
+	}
+
+	void recordCoverage(double percentCovered) {
+		coverageHistory.add(new CoverageSample(getElapsedMillis(), percentCovered));
+	}
+
+
+	public long getElapsedMillis() {
+		return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime);
+	}
+
+	public long getExecutions() {
+		return executions.sum();
+	}
+
+	/**
+	 * Getter for the average number of executions per second since the run started
+	 * @return executions per second
+	 */
+	public double getExecutionsPerSecond() {
+		long elapsed = getElapsedMillis();
+		return elapsed == 0 ? 0 : getExecutions() * 1000.0 / elapsed;
+	}
+
+	/**
+	 * Getter for the number of children that are currently running
+	 * @return count
+	 */
+	public int getInFlight() {
+		return inFlight.get();
+	}
+
+	/**
+	 * Getter for the number of tests waiting for a worker
+	 * @return count
+	 */
+	public int getQueueDepth() {
+		return queued.get();
+	}
+
+	public int getUniqueErrors() {
+		return uniqueErrors.get();
+	}
+
+	/**
+	 * Getter for the time the first unique error was found
+	 * @return milliseconds since the run started, -1 if no error was found yet
+	 */
+	public long getFirstErrorMillis() {
+		return firstErrorMillis.get();
+	}
+
+	/**
+	 * Getter for the wall clock time of executions
+	 * @return histogram in milliseconds
+	 */
+	public LatencyHistogram getLatency() {
+		return latency;
+	}
+
+	/**
+	 * Getter for the time spent in each phase of a test
+	 * @return PhaseTimings in microseconds
+	 */
+	public PhaseTimings getPhases() {
+		return phases;
+	}
+
+	/**
+	 * Getter for the yield of each generator
+	 * @return Map from generator name to its stats, sorted by name
+	 */
+	public Map<String, GeneratorStats> getGenerators() {
+		return new TreeMap<>(generators);
+	}
+
+	/**
+	 * Getter for the code coverage after each round of security tests
+	 * @return List of samples, oldest first
+	 */
+	public List<CoverageSample> getCoverageHistory() {
+		return new ArrayList<>(coverageHistory);
+	}
+}
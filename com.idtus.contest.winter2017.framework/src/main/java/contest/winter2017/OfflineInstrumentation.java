@@ -0,0 +1,126 @@
+package contest.winter2017;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.jar.Attributes;
+import java.util.jar.JarFile;
+import java.util.jar.Manifest;
+
+import org.jacoco.core.instr.Instrumenter;
+import org.jacoco.core.runtime.OfflineInstrumentationAccessGenerator;
+
+/**
+ * The jar under test instrumented by JaCoCo ahead of time, so that children load classes that
+ * already carry the coverage probes, instead of every child instrumenting every class it loads
+ * with the JaCoCo agent.
+ *
+ * Instrumented jars are cached by the SHA-256 hash of the original jar, so a jar is only
+ * instrumented once across runs. Children run the main class of the instrumented jar with the
+ * JaCoCo agent jar on the class path, which provides the runtime that the probes report to and
+ * writes the coverage to the file given by the jacoco-agent.destfile system property on exit.
+ * The class ids of the probes are those of the original classes, so JacocoCoverageAnalyzer
+ * analyzes the coverage against the original jar as usual.
+ */
+public class OfflineInstrumentation {
+	private static final String DESTFILE_PROPERTY = "jacoco-agent.destfile";
+
+	private final File instrumentedJar;
+	private final String mainClassName;
+	private final String classPath;
+
+
+	private OfflineInstrumentation(File instrumentedJar, String mainClassName, String classPath) {
+		this.instrumentedJar = instrumentedJar;
+		this.mainClassName = mainClassName;
+		this.classPath = classPath;
+	}
+
+	/**
+	 * Instruments a jar, or finds it in the cache if it was instrumented before.
+	 * @param jar - jar under test
+	 * @param cacheDir - directory of the instrumented jars
+	 * @param jacocoAgentJarPath - path of the JaCoCo agent jar, whose version has to match the
+	 *                             JaCoCo version of the framework
+	 * @return the instrumented jar
+	 * @throws IOException if the jar can't be read or instrumented
+	 */
+	public static OfflineInstrumentation prepare(File jar, File cacheDir, String jacocoAgentJarPath)
+			throws IOException {
+		File instrumentedJar = new File(cacheDir, RunCache.hashFile(jar) + ".jar");
+		if (!instrumentedJar.isFile()) {
+			Files.createDirectories(cacheDir.toPath());
+			File tempFile = File.createTempFile(instrumentedJar.getName(), ".tmp", cacheDir);
+			try {
+				try (InputStream in = new BufferedInputStream(new FileInputStream(jar));
+						OutputStream out = new BufferedOutputStream(new FileOutputStream(tempFile))) {
+					new Instrumenter(new OfflineInstrumentationAccessGenerator()).instrumentAll(in, out, jar.getName());
+				}
+				// moved into place when complete, so that concurrent runs never see a partial jar
+				try {
+					Files.move(tempFile.toPath(), instrumentedJar.toPath(), StandardCopyOption.ATOMIC_MOVE);
+				}
+				catch (AtomicMoveNotSupportedException e) {
+					Files.move(tempFile.toPath(), instrumentedJar.toPath(), StandardCopyOption.REPLACE_EXISTING);
+				}
+			}
+			finally {
+				tempFile.delete();
+			}
+		}
+
+		// -jar can't be combined with a class path, so the main class and the class path of the
+		// manifest are given explicitly
+		String mainClassName;
+		List<String> classPath = new ArrayList<>();
+		classPath.add(instrumentedJar.getAbsolutePath());
+		try (JarFile jarFile = new JarFile(jar)) {
+			Manifest manifest = jarFile.getManifest();
+			mainClassName = manifest != null ? manifest.getMainAttributes().getValue(Attributes.Name.MAIN_CLASS) : null;
+			String manifestClassPath = manifest != null
+					? manifest.getMainAttributes().getValue(Attributes.Name.CLASS_PATH) : null;
+			if (manifestClassPath != null) {
+				for (String entry : manifestClassPath.trim().split("\\s+")) {
+					classPath.add(new File(jar.getAbsoluteFile().getParentFile(), entry).getPath());
+				}
+			}
+		}
+		if (mainClassName == null) {
+			throw new IOException("jar has no main class: " + jar);
+		}
+		classPath.add(new File(jacocoAgentJarPath).getAbsolutePath());
+		return new OfflineInstrumentation(instrumentedJar, mainClassName, String.join(File.pathSeparator, classPath));
+	}
+
+	public File getInstrumentedJar() {
+		return instrumentedJar;
+	}
+
+	/**
+	 * Getter for the JVM argument that tells the JaCoCo runtime where to write the coverage
+	 * @param execFilePath - path of the JaCoCo output file
+	 * @return system property argument
+	 */
+	public String getDestFileArgument(String execFilePath) {
+		return "-D" + DESTFILE_PROPERTY + "=" + execFilePath;
+	}
+
+	/**
+	 * Getter for the arguments that run the instrumented jar, in place of -jar and the original jar
+	 * @return class path and main class arguments
+	 */
+	public List<String> getLaunchArguments() {
+		return Arrays.asList("-cp", classPath, mainClassName);
+	}
+}
@@ -1,5 +1,8 @@
 package contest.winter2017;
 
+import java.util.Collections;
+import java.util.List;
+
 /**
  * Class to hold output (std out/err) associated with a given test run 
  * 
@@ -17,6 +20,46 @@ public class Output {
 	 */
 	private String stdErrString = null;
 
+	/**
+	 * Parameters that were passed to the jar under test for this run
+	 */
+	private List<String> parameters = null;
+
+	/**
+	 * Comparisons reported by the comparison operand feedback agent, if it was enabled for this run
+	 */
+	private List<Comparison> comparisons = Collections.emptyList();
+
+	/**
+	 * Number of new edge coverage buckets found by this run, if the fast coverage bitmap was enabled
+	 */
+	private int newCoverage = 0;
+
+	/**
+	 * Method slots entered during this run, if the fast coverage bitmap was enabled
+	 */
+	private int[] enteredMethods = new int[0];
+
+	/**
+	 * Resources used by the child process of this run
+	 */
+	private ResourceUsage resourceUsage = new ResourceUsage();
+
+	/**
+	 * Milliseconds after start at which a crash signature was seen on stderr, -1 if none was
+	 */
+	private long crashMillis = -1;
+
+	/**
+	 * Whether the child was killed as soon as its stack trace was emitted
+	 */
+	private boolean killedEarly = false;
+
+	/**
+	 * exit code of the child, -1 if it isn't known
+	 */
+	private int exitCode = -1;
+
 
 	/**
 	 * Ctr for Output object
@@ -29,6 +72,18 @@ public class Output {
 	}
 
 
+	/**
+	 * Ctr for Output object
+	 * @param parameters - parameters the jar under test was run with
+	 * @param stdOutString - std out string to hold
+	 * @param stdErrString - std err string to hold
+	 */
+	public Output(List<String> parameters, String stdOutString, String stdErrString) {
+		this(stdOutString, stdErrString);
+		this.parameters = parameters;
+	}
+
+
 	/**
 	 * Getter for std out string
 	 * @return String representation of std out associated with a given test run
@@ -46,4 +101,121 @@ public class Output {
 		return stdErrString;
 	}
 
+
+	/**
+	 * Getter for the parameters of the run
+	 * @return List of parameters passed to the jar under test
+	 */
+	public List<String> getParameters() {
+		return parameters;
+	}
+
+
+	/**
+	 * Getter for the comparisons observed during the run
+	 * @return List of comparisons, empty unless comparison logging was enabled
+	 */
+	public List<Comparison> getComparisons() {
+		return comparisons;
+	}
+
+
+	void setComparisons(List<Comparison> comparisons) {
+		this.comparisons = comparisons;
+	}
+
+
+	/**
+	 * Getter for the new edge coverage found by the run
+	 * @return number of new edge buckets, zero unless the fast coverage bitmap was enabled
+	 */
+	public int getNewCoverage() {
+		return newCoverage;
+	}
+
+
+	void setNewCoverage(int newCoverage) {
+		this.newCoverage = newCoverage;
+	}
+
+
+	/**
+	 * Getter for the methods entered during the run
+	 * @return method slots as computed by EdgeMap.methodSlot, empty unless the fast coverage bitmap was enabled
+	 */
+	public int[] getEnteredMethods() {
+		return enteredMethods;
+	}
+
+
+	void setEnteredMethods(int[] enteredMethods) {
+		this.enteredMethods = enteredMethods;
+	}
+
+
+	/**
+	 * Getter for the resources used by the run
+	 * @return ResourceUsage of the child; CPU time and memory are only sampled in performance fuzzing mode
+	 */
+	public ResourceUsage getResourceUsage() {
+		return resourceUsage;
+	}
+
+
+	void setResourceUsage(ResourceUsage resourceUsage) {
+		this.resourceUsage = resourceUsage;
+	}
+
+
+	/**
+	 * Whether a crash signature was seen on standard error while the run was in progress
+	 * @return true if the run crashed
+	 */
+	public boolean isCrashDetected() {
+		return crashMillis >= 0;
+	}
+
+
+	/**
+	 * Getter for the time the crash was detected
+	 * @return milliseconds after the child was started, -1 if no crash was detected
+	 */
+	public long getCrashMillis() {
+		return crashMillis;
+	}
+
+
+	void setCrashMillis(long crashMillis) {
+		this.crashMillis = crashMillis;
+	}
+
+
+	/**
+	 * Whether the child was killed after its stack trace was emitted, in which case no JaCoCo
+	 * coverage was recorded for the run
+	 * @return true if the child was killed early
+	 */
+	public boolean isKilledEarly() {
+		return killedEarly;
+	}
+
+
+	void setKilledEarly(boolean killedEarly) {
+		this.killedEarly = killedEarly;
+	}
+
+
+	/**
+	 * Getter for the exit code of the child
+	 * @return exit code, -1 if it isn't known, such as for outputs reused from the run cache
+	 */
+	public int getExitCode() {
+		return exitCode;
+	}
+
+
+	void setExitCode(int exitCode) {
+		this.exitCode = exitCode;
+	}
+
 }
@@ -0,0 +1,142 @@
+package contest.winter2017;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.Charset;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Thread that drains an output stream of a child process as it arrives. Lines are scanned for
+ * crash signatures such as "Exception in thread", so that a crash is noticed while the child is
+ * still running, and the end of the stack trace that follows can be detected.
+ */
+class OutputScanner extends Thread {
+	/**
+	 * a stack trace is considered complete after this long without output
+	 */
+	private static final long TRACE_QUIET_MILLIS = 100;
+
+	private final Reader reader;
+	private final List<String> signatures;
+	private final Runnable onCrash;
+	private final long startTime;
+	private final StringBuilder text = new StringBuilder();
+
+	/** start of the line that is currently being received */
+	private int lineStart = 0;
+
+	private volatile long crashMillis = -1;
+	private volatile boolean traceEnded = false;
+	private volatile long lastOutputTime;
+
+	/**
+	 * @param in - stream to drain
+	 * @param signatures - line contents that mark a crash, empty to only collect the output
+	 * @param onCrash - called from the scanner thread when a crash is detected, may be null
+	 */
+	public OutputScanner(InputStream in, List<String> signatures, Runnable onCrash) {
+		this.reader = new InputStreamReader(in, Charset.defaultCharset());
+		this.signatures = signatures;
+		this.onCrash = onCrash;
+		this.startTime = System.nanoTime();
+		this.lastOutputTime = startTime;
+		setDaemon(true);
+	}
+
+	@Override
+	public void run() {
+		char[] buffer = new char[4096];
+		try {
+			int read;
+			while ((read = reader.read(buffer)) >= 0) {
+				lastOutputTime = System.nanoTime();
+				synchronized (text) {
+					text.append(buffer, 0, read);
+				}
+				if (!signatures.isEmpty()) {
+					scanLines();
+				}
+			}
+		}
+		catch (IOException e) {
+			// the stream was closed because the child was killed
+		}
+		if (!signatures.isEmpty() && lineStart < text.length()) {
+			// the last line wasn't terminated
+			scanLine(text.substring(lineStart));
+		}
+	}
+
+	private void scanLines() {
+		int end;
+		while ((end = text.indexOf("\n", lineStart)) >= 0) {
+			String line = text.substring(lineStart, end);
+			lineStart = end + 1;
+			scanLine(line);
+		}
+	}
+
+	private void scanLine(String line) {
+		if (crashMillis < 0) {
+			for (String signature : signatures) {
+				if (line.contains(signature)) {
+					crashMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime);
+					if (onCrash != null) {
+						onCrash.run();
+					}
+					break;
+				}
+			}
+		}
+		else if (!traceEnded && !isTraceLine(line)) {
+			traceEnded = true;
+		}
+	}
+
+	private static boolean isTraceLine(String line) {
+		String trimmed = line.trim();
+		return trimmed.startsWith("at ") || trimmed.startsWith("Caused by:")
+				|| trimmed.startsWith("Suppressed:") || trimmed.startsWith("...");
+	}
+
+	/**
+	 * Whether a crash signature was seen
+	 * @return true if a crash was detected
+	 */
+	public boolean isCrashDetected() {
+		return crashMillis >= 0;
+	}
+
+	/**
+	 * Getter for the time the crash was detected
+	 * @return milliseconds after the scanner was created, -1 if no crash was detected
+	 */
+	public long getCrashMillis() {
+		return crashMillis;
+	}
+
+	/**
+	 * Whether the stack trace of a detected crash has been fully emitted, which is assumed once
+	 * a line that doesn't belong to the trace is seen, or the child stays quiet for a moment.
+	 * @return true if the child may be killed without losing the trace
+	 */
+	public boolean isTraceComplete() {
+		return isCrashDetected() && (traceEnded
+				|| System.nanoTime() - lastOutputTime > TimeUnit.MILLISECONDS.toNanos(TRACE_QUIET_MILLIS));
+	}
+
+	/**
+	 * Waits until the stream is closed and returns everything that was read.
+	 * @return String with the output
+	 * @throws InterruptedException
+	 */
+	public String getText() throws InterruptedException {
+		join();
+		synchronized (text) {
+			return text.toString();
+		}
+	}
+}
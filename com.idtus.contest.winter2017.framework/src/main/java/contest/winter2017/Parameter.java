@@ -21,11 +21,17 @@ public class Parameter {
 	private final String format;
 	private final boolean optional;
 
+	/**
+	 * pattern matching strings built from the format, with one group per placeholder
+	 */
+	private final Pattern formatPattern;
+
 	/**
 	 * Ctr for Parameter
 	 */
 	public Parameter(ParameterType<?> type, boolean optional) {
 		this.format = null;
+		this.formatPattern = null;
 		this.optional = optional;
 		this.typeList = new ArrayList<>();
 		typeList.add(type);
@@ -37,19 +43,27 @@ public class Parameter {
 		this.optional = optional;
 		this.typeList = new ArrayList<>();
 
+		StringBuilder regex = new StringBuilder();
+		int literalStart = 0;
 		Matcher m = REPLACE_PATTERN.matcher(format);
 		while (m.find()) {
+			regex.append(Pattern.quote(format.substring(literalStart, m.start())));
+			literalStart = m.end();
 			switch (m.group()) {
 			case STRING_REPLACE:
 				typeList.add(new ParameterType.StringType());
+				regex.append("(.*?)");
 				break;
 			case INTEGER_REPLACE:
 				typeList.add(new ParameterType.IntegerType());
+				regex.append("(-?[0-9]+)");
 				break;
 			default:
 				throw new IllegalStateException();
 			}
 		}
+		regex.append(Pattern.quote(format.substring(literalStart)));
+		this.formatPattern = Pattern.compile(regex.toString(), Pattern.DOTALL);
 	}
 
 
@@ -113,6 +127,27 @@ public class Parameter {
 		return formatParameterFromStrings(stringValues);
 	}
 
+	/**
+	 * Utility method that reverses formatParameterFromStrings, extracting the values of the
+	 * <<REPLACE_ME_...>> placeholders from a parameter string built from the format
+	 * @param parameterString - the parameter string to parse
+	 * @return List<String> containing the placeholder values, or null if the string doesn't match the format
+	 */
+	public List<String> parseFormattedValues(String parameterString) {
+		if (formatPattern == null) {
+			return null;
+		}
+		Matcher m = formatPattern.matcher(parameterString);
+		if (!m.matches()) {
+			return null;
+		}
+		List<String> values = new ArrayList<>(m.groupCount());
+		for (int i = 1; i <= m.groupCount(); i++) {
+			values.add(m.group(i));
+		}
+		return values;
+	}
+
 	public String formatParameterFromStrings(List<String> formatVariableValues) {
 		if (formatVariableValues.size() != typeList.size()) {
 			throw new IllegalArgumentException("wrong number of values");
@@ -0,0 +1,129 @@
+package contest.winter2017;
+
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Histograms of the time spent in each phase of a test, in microseconds, to show whether the time
+ * of a run goes to starting children, running the jar under test, collecting the output or
+ * analyzing it. The histograms are created up front and updated without locks, so any thread can
+ * record into them.
+ */
+public class PhaseTimings {
+	/**
+	 * Phases of a test, in the order they happen.
+	 */
+	public enum Phase {
+		/** starting the child process */
+		SPAWN("spawn"),
+		/** from the return of the spawn until the premain hook runs, right before main */
+		STARTUP("startup"),
+		/** from main until the child starts to shut down */
+		MAIN("main"),
+		/** shutdown hooks, mostly the JaCoCo dump, until the child has exited */
+		SHUTDOWN("shutdown"),
+		/** reading the remaining standard output and error after the child exited */
+		DRAIN("drain"),
+		/** checking the output in the basic and security testers */
+		PROCESSING("processing");
+
+		private final String label;
+
+		Phase(String label) {
+			this.label = label;
+		}
+
+		public String getLabel() {
+			return label;
+		}
+	}
+
+	/**
+	 * Summary of the histogram of one phase.
+	 */
+	public static class Summary {
+		private final Phase phase;
+		private final long count;
+		private final long p50Micros;
+		private final long p99Micros;
+
+		private Summary(Phase phase, LatencyHistogram histogram) {
+			this.phase = phase;
+			this.count = histogram.getCount();
+			this.p50Micros = histogram.getPercentile(50);
+			this.p99Micros = histogram.getPercentile(99);
+		}
+
+		public String getName() {
+			return phase.getLabel();
+		}
+
+		public long getCount() {
+			return count;
+		}
+
+		public long getP50Micros() {
+			return p50Micros;
+		}
+
+		public long getP99Micros() {
+			return p99Micros;
+		}
+	}
+
+	private final Map<Phase, LatencyHistogram> histograms = new EnumMap<>(Phase.class);
+
+	public PhaseTimings() {
+		for (Phase phase : Phase.values()) {
+			histograms.put(phase, new LatencyHistogram());
+		}
+	}
+
+
+	/**
+	 * Records the duration of a phase.
+	 * @param phase - the phase
+	 * @param micros - duration in microseconds
+	 */
+	public void record(Phase phase, long micros) {
+		histograms.get(phase).record(micros);
+	}
+
+	public LatencyHistogram getHistogram(Phase phase) {
+		return histograms.get(phase);
+	}
+
+	/**
+	 * Getter for the summaries of the phases that were recorded at least once
+	 * @return List of summaries, in the order the phases happen
+	 */
+	public List<Summary> getSummaries() {
+		List<Summary> summaries = new ArrayList<>();
+		for (Phase phase : Phase.values()) {
+			Summary summary = new Summary(phase, histograms.get(phase));
+			if (summary.getCount() > 0) {
+				summaries.add(summary);
+			}
+		}
+		return summaries;
+	}
+
+
+	public String getYaml() {
+		List<Summary> summaries = getSummaries();
+		if (summaries.isEmpty()) {
+			return "Phase timings: []\n";
+		}
+		StringBuilder sb = new StringBuilder("Phase timings:\n");
+		for (Summary summary : summaries) {
+			sb.append("  - phase: " + summary.getName() + "\n");
+			sb.append("    count: " + summary.getCount() + "\n");
+			sb.append(String.format(Locale.ROOT, "    p50 ms: %.3f%n", summary.getP50Micros() / 1000.0));
+			sb.append(String.format(Locale.ROOT, "    p99 ms: %.3f%n", summary.getP99Micros() / 1000.0));
+		}
+		return sb.toString();
+	}
+}
@@ -0,0 +1,103 @@
+package contest.winter2017;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Emits JDK Flight Recorder events around the expensive operations of the harness, so that the
+ * time spent in the harness can be told apart from the time spent in children with the standard
+ * JFR tools. Events are recorded by a recording started with -profile, or by any other recording
+ * of the harness JVM, and cost next to nothing while no recording is running.
+ *
+ * The JFR classes are only loaded if the JVM has Flight Recorder. On older JVMs every operation
+ * gets a span that does nothing.
+ */
+public final class Profiler {
+	/**
+	 * Operations that are recorded, each as an event type of its own.
+	 */
+	public enum Operation {
+		/** one execution of the jar under test */
+		EXECUTION,
+		/** loading and analyzing the JaCoCo output */
+		COVERAGE_LOAD,
+		/** looking up the possible next parameters in the TestBounds map */
+		PARAMETER_LOOKUP,
+		/** one call of a security test generator */
+		GENERATOR,
+		/** rendering a report */
+		REPORT
+	}
+
+	/**
+	 * An operation that is in progress.
+	 */
+	public interface Span {
+		/**
+		 * Ends the operation, and commits its event if the event type is enabled.
+		 * @param argumentCount - number of arguments the operation worked on
+		 * @param outputSize - size of the result, in bytes or items depending on the operation
+		 * @param outcome - short description of how the operation ended
+		 */
+		void end(int argumentCount, long outputSize, String outcome);
+	}
+
+	private static final Span NO_SPAN = (argumentCount, outputSize, outcome) -> { };
+
+	private static final boolean AVAILABLE = isFlightRecorderAvailable();
+
+	private Profiler() {
+	}
+
+
+	/**
+	 * Whether the JVM has Flight Recorder
+	 * @return true if events can be recorded
+	 */
+	public static boolean isAvailable() {
+		return AVAILABLE;
+	}
+
+	/**
+	 * Starts an operation.
+	 * @param operation - the operation
+	 * @param detail - what the operation works on, like the name of a generator, or null
+	 * @return Span to end once the operation is done
+	 */
+	public static Span begin(Operation operation, String detail) {
+		return AVAILABLE ? FlightRecorderEvents.begin(operation, detail) : NO_SPAN;
+	}
+
+	/**
+	 * Starts a recording of the events of the harness and of the JVM's default profiling events,
+	 * which is written to a file when it is stopped or the JVM exits.
+	 * @param file - file to write the recording to
+	 * @throws IOException if the recording can't be created
+	 * @throws UnsupportedOperationException if the JVM doesn't have Flight Recorder
+	 */
+	public static void startRecording(File file) throws IOException {
+		if (!AVAILABLE) {
+			throw new UnsupportedOperationException("Flight Recorder is not available");
+		}
+		FlightRecorderEvents.startRecording(file);
+	}
+
+	/**
+	 * Stops the recording started by startRecording and writes it to its file, if there is one.
+	 */
+	public static void stopRecording() {
+		if (AVAILABLE) {
+			FlightRecorderEvents.stopRecording();
+		}
+	}
+
+	private static boolean isFlightRecorderAvailable() {
+		try {
+			Class.forName("jdk.jfr.FlightRecorder");
+			return FlightRecorderEvents.isAvailable();
+		}
+		catch (ClassNotFoundException | LinkageError e) {
+			return false;
+		}
+	}
+}
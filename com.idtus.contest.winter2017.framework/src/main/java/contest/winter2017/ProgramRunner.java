@@ -1,44 +1,145 @@
 package contest.winter2017;
 
+import java.io.File;
 import java.io.IOException;
-import java.io.InputStream;
-import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Timer;
 import java.util.TimerTask;
 import java.util.concurrent.Callable;
 import java.util.concurrent.CancellationException;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
-
-import org.apache.commons.io.IOUtils;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import contest.winter2017.Tester.TesterOptions;
+import contest.winter2017.PhaseTimings.Phase;
+import contest.winter2017.agent.Agent;
+import contest.winter2017.agent.PhaseClock;
 
 public class ProgramRunner {
+	/**
+	 * milliseconds between samples of a child's resource usage in performance fuzzing mode,
+	 * and between checks for a complete stack trace in early kill mode
+	 */
+	private static final long RESOURCE_SAMPLE_INTERVAL = 10;
+
+	/**
+	 * stderr line content that always marks a crash
+	 */
+	public static final String DEFAULT_CRASH_SIGNATURE = "Exception in thread";
+
 	private final String jarToTestPath;
 	private final String jacocoAgentJarPath;
 	private final String jacocoOutputFilePath;
+	private final String agentJarPath;
 	private final int numThreads;
+	private final CoverageBitmap coverageBitmap;
+	private final List<String> crashSignatures;
+	private final boolean earlyKill;
+	private final boolean disableCoverage;
+	private final boolean phaseClock;
+	private final AtomicInteger crashesDetected = new AtomicInteger();
+	private final Metrics metrics = new Metrics();
+	private final ExecutionPool.Share share;
+	private final Executor executor;
+	/** workers of this runner, null in a campaign where the executor is shared by all jars */
+	private final ExecutorService ownExecutor;
+	private final OfflineInstrumentation offlineInstrumentation;
 	private final boolean yamlOnly;
 	private final boolean printDebug;
 
 	public final int securityTestTime;
 	public final int securityTestIterations;
+	public final boolean comparisonFeedback;
+	public final boolean sampleResources;
 
-	public ProgramRunner(TesterOptions options) {
+	public ProgramRunner(TesterOptions options) throws IOException {
 		this.jarToTestPath = options.jarToTestPath;
 		this.jacocoAgentJarPath = options.jacocoAgentJarPath;
 		this.jacocoOutputFilePath = options.jacocoOutputFilePath;
+		this.agentJarPath = options.agentJarPath;
 		this.numThreads = options.numThreads;
 		this.yamlOnly = options.yamlOnly;
 		this.printDebug = options.verbose && !options.yamlOnly;
 
 		this.securityTestTime = options.securityTestTime;
 		this.securityTestIterations = options.securityTestIterations;
+		this.comparisonFeedback = options.comparisonFeedback && options.agentJarPath != null;
+		this.sampleResources = options.performanceFuzzing;
+		this.earlyKill = options.earlyKill;
+		this.disableCoverage = options.disableCoverage;
+		this.phaseClock = options.phaseTiming && options.agentJarPath != null;
+		this.crashSignatures = new ArrayList<>();
+		this.crashSignatures.add(DEFAULT_CRASH_SIGNATURE);
+		if (options.crashSignatures != null) {
+			this.crashSignatures.addAll(options.crashSignatures);
+		}
+		this.coverageBitmap = options.fastCoverage && options.agentJarPath != null
+				? new CoverageBitmap(options.numThreads) : null;
+		this.offlineInstrumentation = options.offlineCacheDirPath != null
+				? OfflineInstrumentation.prepare(new File(jarToTestPath), new File(options.offlineCacheDirPath),
+						jacocoAgentJarPath)
+				: null;
+		// a jar has plateaued once two rounds of security tests made no progress
+		this.share = options.executionPool != null
+				? options.executionPool.register(new File(jarToTestPath).getName(), metrics,
+						2L * options.securityTestIterations)
+				: null;
+		// one set of workers for every test of the run, so that tests queued one at a time, or one
+		// round after another, never wait for a pool to start up or for the previous batch to finish
+		if (options.executor != null) {
+			this.ownExecutor = null;
+			this.executor = new BoundedExecutor(options.executor, numThreads);
+		}
+		else {
+			this.ownExecutor = Executors.newFixedThreadPool(numThreads, runnable -> {
+				Thread thread = new Thread(runnable, "runner-" + new File(jarToTestPath).getName());
+				thread.setDaemon(true);
+				return thread;
+			});
+			this.executor = ownExecutor;
+		}
+	}
+
+	public String getJarToTestPath() {
+		return jarToTestPath;
+	}
+
+	public int getNumThreads() {
+		return numThreads;
+	}
+
+	/**
+	 * Stops the workers of the runner, once no more tests will be run. An executor shared by the
+	 * jars of a campaign is left running; only the tests of this runner that are still queued on
+	 * it are cancelled.
+	 */
+	public void close() {
+		if (ownExecutor != null) {
+			ownExecutor.shutdownNow();
+		}
+		else {
+			((BoundedExecutor) executor).close();
+		}
+	}
+
+	/**
+	 * Whether outputs report new edge coverage from the fast coverage bitmap
+	 * @return true if the bitmap is in use
+	 */
+	public boolean hasCoverageFeedback() {
+		return coverageBitmap != null;
 	}
 
 	public List<Output> runTests(List<List<String>> testParametersList)
@@ -48,32 +149,146 @@ public class ProgramRunner {
 
 	public List<Output> runTests(List<List<String>> testParametersList, int timeout)
 			throws InterruptedException, ExecutionException {
+		return runTests(testParametersList, timeout, false, false);
+	}
 
-		ExecutorService executor = Executors.newFixedThreadPool(numThreads);
-		Timer t = new Timer();
+	/**
+	 * Runs tests that each write their JaCoCo coverage to a separate file instead of the shared one.
+	 * @param testParametersList - parameters of each test
+	 * @param execFiles - JaCoCo output file of each test
+	 */
+	public List<Output> runTestsWithCoverageFiles(List<List<String>> testParametersList, List<File> execFiles)
+			throws InterruptedException, ExecutionException {
+		assert testParametersList.size() == execFiles.size();
+		List<TestCallable> callables = new ArrayList<>();
+		for (int i = 0; i < testParametersList.size(); i++) {
+			callables.add(new TestCallable(testParametersList.get(i), false, false, execFiles.get(i)));
+		}
+		return runCallables(callables, -1);
+	}
 
-		List<Future<Output>> futures = new ArrayList<>();
-		if (timeout > 0) {
-			t.schedule(new CancelFuturesTask(executor, futures), timeout * 1000);
+	/**
+	 * Queues a test on the workers of the runner, for callers that hand out tests one at a time.
+	 * @param parameters - parameters of the test
+	 * @param execFile - JaCoCo output file of the test, or null for the shared one
+	 * @return Future of the output of the test
+	 */
+	public Future<Output> submitTest(List<String> parameters, File execFile) {
+		metrics.testsQueued(1);
+		return submit(new TestCallable(parameters, false, false, execFile));
+	}
+
+	private Future<Output> submit(TestCallable callable) {
+		FutureTask<Output> future = new FutureTask<>(callable);
+		executor.execute(future);
+		return future;
+	}
+
+	/**
+	 * Runs security tests, which kill children as soon as they crash if early kill is enabled.
+	 * Coverage of killed children is lost, since JaCoCo only dumps it on a normal exit.
+	 */
+	public List<Output> runSecurityTests(List<List<String>> testParametersList, int timeout)
+			throws InterruptedException, ExecutionException {
+		return runTests(testParametersList, timeout, false, earlyKill);
+	}
+
+	/**
+	 * Runs security tests on the jar under test and on another version of it. The two executions
+	 * of each test are queued next to each other, so that they run at the same time on the same
+	 * workers and each input is only held until both are done.
+	 * @param testParametersList - parameters of each test
+	 * @param other - runner of the other version
+	 * @param timeout - seconds after which the remaining tests are cancelled, -1 for none
+	 * @return pairs of the output of this runner and of the other runner for each test
+	 */
+	public List<Output[]> runDifferentialSecurityTests(List<List<String>> testParametersList, ProgramRunner other,
+			int timeout) throws InterruptedException, ExecutionException {
+		List<TestCallable> callables = new ArrayList<>();
+		for (List<String> parameters : testParametersList) {
+			callables.add(new TestCallable(parameters, false, earlyKill, null));
+			callables.add(other.new TestCallable(parameters, false, other.earlyKill, null));
+		}
+		List<Output> results = runCallables(callables, timeout);
+
+		List<Output[]> pairs = new ArrayList<>();
+		for (int i = 0; i < results.size(); i += 2) {
+			pairs.add(new Output[] { results.get(i), results.get(i + 1) });
+		}
+		return pairs;
+	}
+
+	/**
+	 * Runs tests with the comparison operand feedback agent attached, so that the returned
+	 * outputs carry the comparisons observed during each run.
+	 */
+	public List<Output> runTestsWithComparisonLog(List<List<String>> testParametersList, int timeout)
+			throws InterruptedException, ExecutionException {
+		assert comparisonFeedback;
+		return runTests(testParametersList, timeout, true, false);
+	}
+
+	/**
+	 * Getter for the number of crashes detected so far, updated as soon as a crash signature is
+	 * seen on the stderr of a running child
+	 * @return number of crashes detected
+	 */
+	public int getCrashesDetected() {
+		return crashesDetected.get();
+	}
+
+	/**
+	 * Getter for the progress counters, which are updated as children start and finish
+	 * @return Metrics of this runner
+	 */
+	public Metrics getMetrics() {
+		return metrics;
+	}
+
+	private List<Output> runTests(List<List<String>> testParametersList, int timeout, boolean comparisonLog,
+			boolean earlyKill) throws InterruptedException, ExecutionException {
+		List<TestCallable> callables = new ArrayList<>();
+		for (List<String> parameters : testParametersList) {
+			callables.add(new TestCallable(parameters, comparisonLog, earlyKill, null));
 		}
+		return runCallables(callables, timeout);
+	}
+
+	private List<Output> runCallables(List<TestCallable> callables, int timeout)
+			throws InterruptedException, ExecutionException {
 
-		// execute tests
-		testParametersList.stream()
-			.map(parameters -> new TestCallable(parameters))
-			.map(callable -> executor.submit(callable))
+		// execute tests, counted by the runner each test belongs to
+		for (TestCallable callable : callables) {
+			callable.getMetrics().testsQueued(1);
+		}
+		List<Future<Output>> futures = new ArrayList<>();
+		callables.stream()
+			.map(this::submit)
 			.forEachOrdered(futures::add);
 
-		// collect results in list
+		Timer t = new Timer();
+		if (timeout > 0) {
+			t.schedule(new CancelFuturesTask(futures), timeout * 1000);
+		}
+
+		// collect results in list, with null for tests that were cancelled so that results line up with tests
 		List<Output> results = new ArrayList<Output>();
 		for (Future<Output> future : futures) {
 			try {
 				results.add(future.get());
 			}
-			catch (CancellationException e) { }
+			catch (CancellationException e) {
+				results.add(null);
+			}
 		}
 
 		t.cancel();
-		executor.shutdownNow();
+
+		for (TestCallable callable : callables) {
+			if (!callable.started) {
+				callable.getMetrics().testsDropped(1);
+			}
+		}
 		return results;
 	}
 
@@ -90,37 +305,126 @@ public class ProgramRunner {
 	 * @return Output representation of the standard out and standard error associated with the run
 	 */
 	public Output instrumentAndExecuteCode(List<String> parameters) {
+		return instrumentAndExecuteCode(parameters, false, false, null);
+	}
+
+	private Output instrumentAndExecuteCode(List<String> parameters, boolean comparisonLog, boolean earlyKill,
+			File execFile) {
 		// we are building up a command line statement that will use java -jar to execute the jar
 		// and uses jacoco to instrument that jar and collect code coverage metrics
 		List<String> command = new ArrayList<String>();
 		command.add("java");
-		command.add("-javaagent:" + jacocoAgentJarPath + "=destfile=" + jacocoOutputFilePath);
-		command.add("-jar");
-		command.add(this.jarToTestPath);
+		String destFile = execFile != null ? execFile.getAbsolutePath() : jacocoOutputFilePath;
+		if (offlineInstrumentation != null) {
+			// the classes were instrumented ahead of time, only the runtime has to know the output file
+			command.add(offlineInstrumentation.getDestFileArgument(destFile));
+		}
+		else if (!disableCoverage) {
+			command.add("-javaagent:" + jacocoAgentJarPath + "=destfile=" + destFile);
+		}
 
-		// add parameters for jar
-		command.addAll(parameters);
+		File comparisonLogFile = null;
+		File timingFile = null;
+		CoverageBitmap.Slot bitmapSlot = null;
+		Process process = null;
+		Profiler.Span span = Profiler.begin(Profiler.Operation.EXECUTION, null);
+		long outputSize = 0;
+		String outcome = "error";
+		try {
+			// our own agent has to come after jacoco, so that jacoco instruments the original classes
+			Map<String, String> agentOptions = new LinkedHashMap<>();
+			if (comparisonLog) {
+				comparisonLogFile = File.createTempFile("cmplog", ".txt");
+				agentOptions.put(Agent.CMPLOG_OPTION, comparisonLogFile.getAbsolutePath());
+			}
+			if (coverageBitmap != null) {
+				bitmapSlot = coverageBitmap.acquire();
+				agentOptions.put(Agent.EDGES_OPTION, bitmapSlot.getPath());
+			}
+			if (phaseClock) {
+				timingFile = File.createTempFile("timing", ".txt");
+				agentOptions.put(Agent.TIMING_OPTION, timingFile.getAbsolutePath());
+			}
+			if (!agentOptions.isEmpty()) {
+				command.add(Agent.getJavaAgentArgument(agentJarPath, agentOptions));
+			}
 
-		// show the user the command to run and prepare the process using the command
-		if (printDebug) {
-			System.out.println("command to run: " + command);
-		}
+			if (offlineInstrumentation != null) {
+				command.addAll(offlineInstrumentation.getLaunchArguments());
+			}
+			else {
+				command.add("-jar");
+				command.add(this.jarToTestPath);
+			}
 
-		ProcessBuilder pb = new ProcessBuilder(command);
-		String stdOutString;
-		String stdErrString;
+			// add parameters for jar
+			command.addAll(parameters);
 
-		// stdout and stderr should be read in separate threads, but whatever
-		try {
-			Process process = pb.start();
-			InputStream isOut = process.getInputStream();
-			InputStream isErr = process.getErrorStream();
+			// show the user the command to run and prepare the process using the command
+			if (printDebug) {
+				System.out.println("command to run: " + command);
+			}
+
+			ProcessBuilder pb = new ProcessBuilder(command);
+
+			// stdout and stderr are drained in separate threads, and stderr is scanned for crashes
+			ResourceUsage usage = new ResourceUsage();
+			long startTime = System.nanoTime();
+			process = pb.start();
+			long spawnedMicros = PhaseClock.epochMicros();
+			metrics.getPhases().record(Phase.SPAWN, TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - startTime));
+			OutputScanner stdOut = new OutputScanner(process.getInputStream(), Collections.<String>emptyList(), null);
+			OutputScanner stdErr = new OutputScanner(process.getErrorStream(), crashSignatures,
+					crashesDetected::incrementAndGet);
+			stdOut.start();
+			stdErr.start();
+
+			// await completion, sampling resource usage and checking for crashes while the process runs
+			boolean killed = false;
+			if (sampleResources || earlyKill) {
+				long pid = sampleResources ? ResourceUsage.getPid(process) : -1;
+				while (!process.waitFor(RESOURCE_SAMPLE_INTERVAL, TimeUnit.MILLISECONDS)) {
+					if (sampleResources) {
+						usage.sample(pid);
+					}
+					if (earlyKill && stdErr.isTraceComplete()) {
+						process.destroyForcibly().waitFor();
+						killed = true;
+						break;
+					}
+				}
+			}
+			else {
+				process.waitFor();
+			}
+			long exitMicros = PhaseClock.epochMicros();
+			long exitTime = System.nanoTime();
+			usage.setWallMillis(TimeUnit.NANOSECONDS.toMillis(exitTime - startTime));
 
-			// await completion
-			process.waitFor();
+			String stdOutString = stdOut.getText();
+			String stdErrString = stdErr.getText();
+			metrics.getPhases().record(Phase.DRAIN, TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - exitTime));
+			if (timingFile != null && !killed) {
+				recordChildPhases(timingFile, spawnedMicros, exitMicros, usage);
+			}
 
-			stdOutString = IOUtils.toString(isOut, Charset.defaultCharset());
-			stdErrString = IOUtils.toString(isErr, Charset.defaultCharset());
+			// we now have the output as an object from the run of the black-box jar
+			// this output object contains both the standard output and the standard error
+			Output output = new Output(parameters, stdOutString, stdErrString);
+			output.setResourceUsage(usage);
+			output.setCrashMillis(stdErr.getCrashMillis());
+			output.setKilledEarly(killed);
+			output.setExitCode(process.exitValue());
+			if (comparisonLogFile != null) {
+				output.setComparisons(Comparison.readLog(comparisonLogFile));
+			}
+			if (bitmapSlot != null) {
+				output.setNewCoverage(coverageBitmap.merge(bitmapSlot));
+				output.setEnteredMethods(coverageBitmap.getEnteredMethods(bitmapSlot));
+			}
+			outputSize = stdOutString.length() + stdErrString.length();
+			outcome = killed ? "killed" : output.isCrashDetected() ? "crash" : "exit " + output.getExitCode();
+			return output;
 		}
 		catch (IOException e) {
 			if (!yamlOnly) {
@@ -131,49 +435,119 @@ public class ProgramRunner {
 		}
 		catch (InterruptedException e) {
 			// this occurs when the task is terminated due to a timeout
+			outcome = "cancelled";
 			return null;
 		}
+		finally {
+			// a child whose test was cancelled would otherwise keep running
+			if (process != null && process.isAlive()) {
+				process.destroyForcibly();
+			}
+			if (comparisonLogFile != null) {
+				comparisonLogFile.delete();
+			}
+			if (timingFile != null) {
+				timingFile.delete();
+			}
+			if (bitmapSlot != null) {
+				coverageBitmap.release(bitmapSlot);
+			}
+			span.end(parameters.size(), outputSize, outcome);
+		}
+	}
 
-		// we now have the output as an object from the run of the black-box jar
-		// this output object contains both the standard output and the standard error
-		return new Output(stdOutString, stdErrString);
+	/**
+	 * Splits the lifetime of a child into startup, main and shutdown, using the times written by
+	 * the agent. Children that didn't get to write them, like children that were killed, are skipped.
+	 * The main phase is also kept in the resource usage of the child.
+	 */
+	private void recordChildPhases(File timingFile, long spawnedMicros, long exitMicros, ResourceUsage usage) {
+		String[] times;
+		try {
+			times = new String(Files.readAllBytes(timingFile.toPath()), StandardCharsets.US_ASCII).trim().split("\t");
+		}
+		catch (IOException e) {
+			return;
+		}
+		if (times.length != 2) {
+			return;
+		}
+		long premainMicros;
+		long shutdownMicros;
+		try {
+			premainMicros = Long.parseLong(times[0]);
+			shutdownMicros = Long.parseLong(times[1]);
+		}
+		catch (NumberFormatException e) {
+			return;
+		}
+		PhaseTimings phases = metrics.getPhases();
+		phases.record(Phase.STARTUP, premainMicros - spawnedMicros);
+		phases.record(Phase.MAIN, shutdownMicros - premainMicros);
+		phases.record(Phase.SHUTDOWN, exitMicros - shutdownMicros);
+		usage.setMainMillis(TimeUnit.MICROSECONDS.toMillis(shutdownMicros - premainMicros));
 	}
 
 	private class TestCallable implements Callable<Output> {
 		private final List<String> parameters;
+		private final boolean comparisonLog;
+		private final boolean earlyKill;
+		private final File execFile;
+		private volatile boolean started = false;
 
-		public TestCallable(List<String> parameters) {
+		public TestCallable(List<String> parameters, boolean comparisonLog, boolean earlyKill, File execFile) {
 			this.parameters = parameters;
+			this.comparisonLog = comparisonLog;
+			this.earlyKill = earlyKill;
+			this.execFile = execFile;
+		}
+
+		Metrics getMetrics() {
+			return metrics;
 		}
 
 		@Override
 		public Output call() {
-			return instrumentAndExecuteCode(parameters);
+			// in a campaign, wait for a slot of the shared pool; interrupted when the time is up
+			if (share != null && !share.acquire()) {
+				return null;
+			}
+			started = true;
+			metrics.executionStarted();
+			Output output = null;
+			try {
+				output = instrumentAndExecuteCode(parameters, comparisonLog, earlyKill, execFile);
+				return output;
+			}
+			finally {
+				long wallMillis = output != null ? output.getResourceUsage().getWallMillis() : -1;
+				metrics.executionFinished(wallMillis);
+				if (share != null) {
+					share.release(wallMillis);
+				}
+			}
 		}
 	}
 
 	private class CancelFuturesTask extends TimerTask {
-		private ExecutorService executor;
 		private List<Future<Output>> futures;
 
-		public CancelFuturesTask(ExecutorService executor, List<Future<Output>> futures) {
-			this.executor = executor;
+		public CancelFuturesTask(List<Future<Output>> futures) {
 			this.futures = futures;
 		}
 
 		@Override
 		public void run() {
-			if (!executor.isShutdown()) {
-				if (!yamlOnly) {
-					System.out.println("Time limit exceeded, terminating remaining tasks...");
-				}
-				executor.shutdownNow();
-				for (Future<Output> future : futures) {
-					if (!future.isDone()) {
-						future.cancel(true);
-					}
+			// the workers outlive the tests, so only the tests of this call are cancelled
+			boolean cancelled = false;
+			for (Future<Output> future : futures) {
+				if (!future.isDone()) {
+					cancelled |= future.cancel(true);
 				}
 			}
+			if (cancelled && !yamlOnly) {
+				System.out.println("Time limit exceeded, terminating remaining tasks...");
+			}
 		}
 	}
 }
@@ -0,0 +1,273 @@
+package contest.winter2017;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+
+import org.apache.commons.io.FileUtils;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+import com.google.gson.reflect.TypeToken;
+
+/**
+ * Replays the inputs saved in the checkpoint directory of a security test campaign against a
+ * build of the jar, without generating any new ones: the first input of every error bucket and
+ * every input of the corpus, all at once on the runner's workers.
+ *
+ * Each error bucket is reproduced if its input still crashes with the same signature, fixed if it
+ * no longer crashes, and changed if it crashes with another signature. Inputs that crash with a
+ * signature of no saved bucket are new errors. The exit code, stdout hash and stderr signature of
+ * every input are kept in the directory, and inputs that behave differently than at the previous
+ * replay are reported as changed. Inputs that couldn't be run, e.g. because the child couldn't be
+ * started, are reported as not run along with the buckets of their errors, and keep the behavior
+ * recorded at the previous replay.
+ */
+public class Replay {
+	private static final String BEHAVIOR_FILE = "replay.json";
+
+	private static final Gson gson = new Gson();
+
+	/**
+	 * What an input did at a replay.
+	 */
+	private static class Behavior {
+		private final List<String> input;
+		private final int exitCode;
+		private final long stdOutHash;
+		private final String stdErrSignature;
+		private final boolean killedEarly;
+
+		private Behavior(Output output, String stdErrSignature) {
+			this.input = output.getParameters();
+			this.exitCode = output.getExitCode();
+			this.stdOutHash = ResultLog.hash(output.getStdOutString());
+			this.stdErrSignature = stdErrSignature;
+			this.killedEarly = output.isKilledEarly();
+		}
+
+		/**
+		 * Lists how this behavior differs from a previous one.
+		 * @return differences separated by commas, empty if there are none
+		 */
+		private String getChanges(Behavior previous) {
+			List<String> changes = new ArrayList<>();
+			if (!stdErrSignature.equals(previous.stdErrSignature)) {
+				changes.add("stderr");
+			}
+			// the exit code and output of a child that was killed once it crashed depend on timing
+			if (!killedEarly && !previous.killedEarly) {
+				if (exitCode != previous.exitCode) {
+					changes.add("exit code " + previous.exitCode + " became " + exitCode);
+				}
+				if (stdOutHash != previous.stdOutHash) {
+					changes.add("stdout");
+				}
+			}
+			return String.join(", ", changes);
+		}
+	}
+
+	private final ProgramRunner programRunner;
+	private final File directory;
+	private final ErrorBuckets newErrors;
+
+	private int inputCount = 0;
+	private final List<ErrorBuckets.Bucket> reproduced = new ArrayList<>();
+	private final List<ErrorBuckets.Bucket> fixed = new ArrayList<>();
+	private final Map<ErrorBuckets.Bucket, String> changedErrors = new LinkedHashMap<>();
+	private final Map<List<String>, String> changedInputs = new LinkedHashMap<>();
+	private final List<ErrorBuckets.Bucket> notRunErrors = new ArrayList<>();
+	private final List<List<String>> notRunInputs = new ArrayList<>();
+	private boolean firstReplay = false;
+
+
+	/**
+	 * @param programRunner - runner of the jar to replay the inputs against
+	 * @param directory - checkpoint directory of the campaign that found the inputs
+	 * @param errorLineNumbers - whether line numbers are part of error signatures
+	 */
+	public Replay(ProgramRunner programRunner, File directory, boolean errorLineNumbers) {
+		this.programRunner = programRunner;
+		this.directory = directory;
+		this.newErrors = new ErrorBuckets(errorLineNumbers);
+	}
+
+
+	/**
+	 * Replays all inputs, and records their behavior for the next replay.
+	 * @throws IOException if the directory can't be read or written
+	 */
+	public void run() throws IOException, InterruptedException, ExecutionException {
+		Checkpoint checkpoint = new Checkpoint(directory, null);
+		List<ErrorBuckets.Bucket> buckets = checkpoint.readErrors();
+		Set<String> knownSignatures = new HashSet<>();
+
+		// inputs of the buckets may be in the corpus as well, but only run once
+		Set<List<String>> inputSet = new LinkedHashSet<>();
+		for (ErrorBuckets.Bucket bucket : buckets) {
+			inputSet.add(bucket.getFirstInput());
+			knownSignatures.add(bucket.getSignature());
+		}
+		inputSet.addAll(checkpoint.readInputs());
+		List<List<String>> inputs = new ArrayList<>(inputSet);
+		inputCount = inputs.size();
+
+		Map<List<String>, Behavior> previous = readBehavior();
+		firstReplay = previous == null;
+
+		Map<List<String>, Behavior> behavior = new LinkedHashMap<>();
+		List<Output> outputs = programRunner.runSecurityTests(inputs, -1);
+		for (int i = 0; i < outputs.size(); i++) {
+			Output output = outputs.get(i);
+			if (output == null) {
+				notRunInputs.add(inputs.get(i));
+				continue;
+			}
+			String signature = "";
+			if (output.isCrashDetected()) {
+				signature = newErrors.getSignature(output.getParameters(), output.getStdErrString());
+				if (!knownSignatures.contains(signature)) {
+					newErrors.add(signature, output.getParameters(), output.getStdErrString());
+				}
+			}
+			behavior.put(output.getParameters(), new Behavior(output, signature));
+		}
+
+		for (ErrorBuckets.Bucket bucket : buckets) {
+			Behavior current = behavior.get(bucket.getFirstInput());
+			if (current == null) {
+				notRunErrors.add(bucket);
+				continue;
+			}
+			if (current.stdErrSignature.equals(bucket.getSignature())) {
+				reproduced.add(bucket);
+			}
+			else if (current.stdErrSignature.isEmpty()) {
+				fixed.add(bucket);
+			}
+			else {
+				changedErrors.put(bucket, current.stdErrSignature);
+			}
+		}
+
+		for (Behavior current : behavior.values()) {
+			Behavior last = previous != null ? previous.get(current.input) : null;
+			if (last != null) {
+				String changes = current.getChanges(last);
+				if (!changes.isEmpty()) {
+					changedInputs.put(current.input, changes);
+				}
+			}
+		}
+
+		// inputs that weren't run are compared with their last known behavior at the next replay
+		if (previous != null) {
+			for (List<String> input : notRunInputs) {
+				Behavior last = previous.get(input);
+				if (last != null) {
+					behavior.put(input, last);
+				}
+			}
+		}
+		writeBehavior(behavior.values());
+	}
+
+	private Map<List<String>, Behavior> readBehavior() throws IOException {
+		File file = new File(directory, BEHAVIOR_FILE);
+		if (!file.exists()) {
+			return null;
+		}
+		List<Behavior> list;
+		try {
+			list = gson.fromJson(FileUtils.readFileToString(file, StandardCharsets.UTF_8),
+					new TypeToken<List<Behavior>>(){}.getType());
+		}
+		catch (JsonParseException e) {
+			throw new IOException("unreadable replay results " + file, e);
+		}
+		Map<List<String>, Behavior> map = new HashMap<>();
+		for (Behavior behavior : list) {
+			map.put(behavior.input, behavior);
+		}
+		return map;
+	}
+
+	private void writeBehavior(Iterable<Behavior> behavior) throws IOException {
+		File file = new File(directory, BEHAVIOR_FILE);
+		File temp = new File(file.getPath() + ".tmp");
+		FileUtils.writeStringToFile(temp, gson.toJson(behavior), StandardCharsets.UTF_8);
+		Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	}
+
+
+	public int getInputCount() {
+		return inputCount;
+	}
+
+	public String getYaml() {
+		StringBuilder sb = new StringBuilder();
+		sb.append("Replayed input count: " + inputCount + "\n");
+		appendList(sb, "Reproduced error", getSignatures(reproduced));
+		appendList(sb, "Fixed error", getSignatures(fixed));
+		List<String> changed = new ArrayList<>();
+		for (Map.Entry<ErrorBuckets.Bucket, String> entry : changedErrors.entrySet()) {
+			changed.add(entry.getKey().getSignature() + "\nbecame " + entry.getValue());
+		}
+		appendList(sb, "Changed error", changed);
+		appendList(sb, "New error", getSignatures(newErrors.getBuckets()));
+		appendList(sb, "Not run error", getSignatures(notRunErrors));
+		List<String> notRun = new ArrayList<>();
+		for (List<String> input : notRunInputs) {
+			notRun.add(gson.toJson(input));
+		}
+		appendList(sb, "Not run input", notRun);
+
+		if (firstReplay) {
+			sb.append("Changed input count: 0\n");
+			sb.append("Changed inputs: [] # first replay, behavior recorded for the next one\n");
+		}
+		else {
+			List<String> inputs = new ArrayList<>();
+			for (Map.Entry<List<String>, String> entry : changedInputs.entrySet()) {
+				inputs.add(gson.toJson(entry.getKey()) + ": " + entry.getValue());
+			}
+			appendList(sb, "Changed input", inputs);
+		}
+		return sb.toString();
+	}
+
+	private static List<String> getSignatures(List<ErrorBuckets.Bucket> buckets) {
+		List<String> signatures = new ArrayList<>();
+		for (ErrorBuckets.Bucket bucket : buckets) {
+			signatures.add(bucket.getSignature());
+		}
+		return signatures;
+	}
+
+	private static void appendList(StringBuilder sb, String key, List<String> items) {
+		sb.append(key + " count: " + items.size() + "\n");
+		if (items.isEmpty()) {
+			sb.append(key + "s: []\n");
+			return;
+		}
+		sb.append(key + "s:\n");
+		for (String item : items) {
+			sb.append("  - |-\n");
+			for (String line : item.split("\n")) {
+				sb.append("    " + line + "\n");
+			}
+		}
+	}
+}
@@ -0,0 +1,145 @@
+package contest.winter2017;
+
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+
+/**
+ * Class to hold the resources used by a child process, sampled from /proc/&lt;pid&gt; on Linux.
+ *
+ * Since the process is reaped as soon as it exits, the values are those of the last sample taken
+ * while it was running, so CPU time may be short by up to one sampling interval.
+ */
+public class ResourceUsage {
+
+	/**
+	 * clock ticks per second used by /proc/&lt;pid&gt;/stat, which is 100 on all common Linux platforms
+	 */
+	private static final int CLOCK_TICKS_PER_SECOND = 100;
+
+	private static final Path PROC = Paths.get("/proc");
+
+	/**
+	 * user and system CPU time of the process in milliseconds, -1 if unknown
+	 */
+	private long cpuMillis = -1;
+
+	/**
+	 * wall clock time from start to exit in milliseconds
+	 */
+	private long wallMillis = 0;
+
+	/**
+	 * peak resident set size of the process in kilobytes, -1 if unknown
+	 */
+	private long peakRssKb = -1;
+
+	/**
+	 * time from the agent's premain hook until the child started to shut down in milliseconds,
+	 * -1 if unknown
+	 */
+	private long mainMillis = -1;
+
+
+	public long getCpuMillis() {
+		return cpuMillis;
+	}
+
+	public long getWallMillis() {
+		return wallMillis;
+	}
+
+	public long getPeakRssKb() {
+		return peakRssKb;
+	}
+
+	/**
+	 * Getter for the time spent in the main phase, without the startup and shutdown of the JVM
+	 * @return milliseconds, -1 unless phase timing was enabled and the child wrote its times
+	 */
+	public long getMainMillis() {
+		return mainMillis;
+	}
+
+	void setWallMillis(long wallMillis) {
+		this.wallMillis = wallMillis;
+	}
+
+	void setMainMillis(long mainMillis) {
+		this.mainMillis = mainMillis;
+	}
+
+
+	/**
+	 * Whether resource usage can be sampled on this system
+	 * @return true if /proc is available
+	 */
+	public static boolean isSupported() {
+		return Files.isDirectory(PROC.resolve("self"));
+	}
+
+
+	/**
+	 * Reads the current CPU time and peak memory of a running process. Values that can't be read,
+	 * e.g. because the process has already exited, are left unchanged.
+	 * @param pid - id of the process
+	 */
+	void sample(long pid) {
+		Path dir = PROC.resolve(String.valueOf(pid));
+		try {
+			String stat = new String(Files.readAllBytes(dir.resolve("stat")), StandardCharsets.US_ASCII);
+			// the command name in parentheses may contain spaces, so split after it
+			String[] fields = stat.substring(stat.lastIndexOf(')') + 2).split(" ");
+			// utime and stime are fields 14 and 15 of the whole line
+			long ticks = Long.parseLong(fields[11]) + Long.parseLong(fields[12]);
+			cpuMillis = ticks * 1000 / CLOCK_TICKS_PER_SECOND;
+
+			List<String> status = Files.readAllLines(dir.resolve("status"), StandardCharsets.US_ASCII);
+			for (String line : status) {
+				if (line.startsWith("VmHWM:")) {
+					peakRssKb = Long.parseLong(line.replaceAll("[^0-9]", ""));
+					break;
+				}
+			}
+		}
+		catch (IOException | RuntimeException e) {
+			// the process exited between samples
+		}
+	}
+
+
+	/**
+	 * Determines the id of a process, using Process.pid() where available (Java 9) and the
+	 * private pid field of the Java 8 implementation otherwise.
+	 * @param process - the process
+	 * @return process id, or -1 if it can't be determined
+	 */
+	static long getPid(Process process) {
+		try {
+			Method pidMethod = Process.class.getMethod("pid");
+			return (Long) pidMethod.invoke(process);
+		}
+		catch (ReflectiveOperationException e) {
+			// not available before Java 9
+		}
+		try {
+			Field pidField = process.getClass().getDeclaredField("pid");
+			pidField.setAccessible(true);
+			return pidField.getInt(process);
+		}
+		catch (ReflectiveOperationException | RuntimeException e) {
+			return -1;
+		}
+	}
+
+
+	@Override
+	public String toString() {
+		return String.format("cpu: %d ms, wall: %d ms, peak rss: %d KB", cpuMillis, wallMillis, peakRssKb);
+	}
+}
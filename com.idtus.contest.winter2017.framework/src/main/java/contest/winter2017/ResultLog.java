@@ -0,0 +1,231 @@
+package contest.winter2017;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+import com.google.gson.stream.JsonWriter;
+
+/**
+ * Log with one record per executed test, written while the campaign runs so that other tools can
+ * follow it. Records are queued by the testers and encoded and written by a background thread,
+ * which also computes the output hashes, so logging costs the testers one queue insertion. The
+ * queue is bounded, since records hold the whole output of their tests: a tester that gets too
+ * far ahead of the writer waits for it.
+ *
+ * In JSON Lines format, every line is an object with the keys time, generator, args, exitCode,
+ * durationMillis, stdOutHash, stdErrHash, errorSignature (only for crashes) and newCoverage.
+ * In binary format, every record is a big-endian int with the length of the rest of the record,
+ * followed by: long time, string generator, int argument count, string per argument, int exit code,
+ * long duration, long stdout hash, long stderr hash, string error signature and int new coverage.
+ * Strings are an int byte length, -1 for none, followed by UTF-8 bytes. Hashes are 64-bit FNV-1a
+ * hashes of the UTF-8 bytes of the output.
+ */
+public class ResultLog {
+	/**
+	 * Encodings of the log.
+	 */
+	public enum Format {
+		JSONL, BINARY
+	}
+
+	private static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+	private static final long FNV_PRIME = 0x100000001b3L;
+
+	private static class Record {
+		private final long time;
+		private final String generator;
+		private final Output output;
+		private final String errorSignature;
+
+		private Record(long time, String generator, Output output, String errorSignature) {
+			this.time = time;
+			this.generator = generator;
+			this.output = output;
+			this.errorSignature = errorSignature;
+		}
+	}
+
+	/** marks the end of the log in the queue */
+	private static final Record END = new Record(0, null, null, null);
+
+	/** records that may wait for the writer */
+	private static final int QUEUE_CAPACITY = 1024;
+
+	private final Format format;
+	private final OutputStream out;
+	private final BlockingQueue<Record> queue = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+	private final Thread writerThread;
+	private volatile IOException writeError;
+
+
+	/**
+	 * Opens a log file, replacing an existing one, and starts the writer thread.
+	 * @param file - file to write to
+	 * @param format - encoding of the records
+	 * @throws IOException
+	 */
+	public ResultLog(File file, Format format) throws IOException {
+		this.format = format;
+		this.out = new BufferedOutputStream(new FileOutputStream(file));
+		this.writerThread = new Thread(this::writeRecords, "result-log-writer");
+		writerThread.setDaemon(true);
+		writerThread.start();
+	}
+
+
+	/**
+	 * Queues a record for an executed test, waiting while the queue is full.
+	 * @param generator - name of the generator that created the test
+	 * @param output - output of the test
+	 * @param errorSignature - signature of the error the test crashed with, null if it didn't crash
+	 * @throws InterruptedException
+	 */
+	public void append(String generator, Output output, String errorSignature) throws InterruptedException {
+		queue.put(new Record(System.currentTimeMillis(), generator, output, errorSignature));
+	}
+
+	/**
+	 * Writes all queued records and closes the file.
+	 * @throws IOException if a record couldn't be written
+	 * @throws InterruptedException
+	 */
+	public void close() throws IOException, InterruptedException {
+		queue.put(END);
+		writerThread.join();
+		if (writeError != null) {
+			throw writeError;
+		}
+	}
+
+	private void writeRecords() {
+		try {
+			while (true) {
+				Record record = queue.take();
+				if (record == END) {
+					break;
+				}
+				if (writeError != null) {
+					// keep taking records, so that the testers don't wait on a full queue
+					continue;
+				}
+				try {
+					out.write(format == Format.BINARY ? encodeBinary(record) : encodeJson(record));
+					// flush whenever the writer catches up, so that readers see complete records promptly
+					if (queue.isEmpty()) {
+						out.flush();
+					}
+				}
+				catch (IOException e) {
+					writeError = e;
+				}
+			}
+		}
+		catch (InterruptedException e) {
+			// the log is abandoned
+		}
+		finally {
+			try {
+				out.close();
+			}
+			catch (IOException e) {
+				if (writeError == null) {
+					writeError = e;
+				}
+			}
+		}
+	}
+
+
+	private static byte[] encodeJson(Record record) throws IOException {
+		Output output = record.output;
+		StringWriter line = new StringWriter();
+		try (JsonWriter writer = new JsonWriter(line)) {
+			writer.beginObject();
+			writer.name("time").value(record.time);
+			writer.name("generator").value(record.generator);
+			writer.name("args");
+			writer.beginArray();
+			for (String argument : getParameters(output)) {
+				writer.value(argument);
+			}
+			writer.endArray();
+			writer.name("exitCode").value(output.getExitCode());
+			writer.name("durationMillis").value(output.getResourceUsage().getWallMillis());
+			// as strings, since JSON readers often can't represent 64-bit integers exactly
+			writer.name("stdOutHash").value(String.format("%016x", hash(output.getStdOutString())));
+			writer.name("stdErrHash").value(String.format("%016x", hash(output.getStdErrString())));
+			if (record.errorSignature != null) {
+				writer.name("errorSignature").value(record.errorSignature);
+			}
+			writer.name("newCoverage").value(output.getNewCoverage());
+			writer.endObject();
+		}
+		line.write('\n');
+		return line.toString().getBytes(StandardCharsets.UTF_8);
+	}
+
+	private static byte[] encodeBinary(Record record) throws IOException {
+		Output output = record.output;
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		DataOutputStream data = new DataOutputStream(bytes);
+		data.writeInt(0); // length, filled in below
+		data.writeLong(record.time);
+		writeString(data, record.generator);
+		List<String> parameters = getParameters(output);
+		data.writeInt(parameters.size());
+		for (String argument : parameters) {
+			writeString(data, argument);
+		}
+		data.writeInt(output.getExitCode());
+		data.writeLong(output.getResourceUsage().getWallMillis());
+		data.writeLong(hash(output.getStdOutString()));
+		data.writeLong(hash(output.getStdErrString()));
+		writeString(data, record.errorSignature);
+		data.writeInt(output.getNewCoverage());
+		data.flush();
+
+		byte[] encoded = bytes.toByteArray();
+		int length = encoded.length - 4;
+		encoded[0] = (byte) (length >>> 24);
+		encoded[1] = (byte) (length >>> 16);
+		encoded[2] = (byte) (length >>> 8);
+		encoded[3] = (byte) length;
+		return encoded;
+	}
+
+	private static List<String> getParameters(Output output) {
+		return output.getParameters() != null ? output.getParameters() : Collections.<String>emptyList();
+	}
+
+	private static void writeString(DataOutputStream data, String value) throws IOException {
+		if (value == null) {
+			data.writeInt(-1);
+			return;
+		}
+		byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+		data.writeInt(bytes.length);
+		data.write(bytes);
+	}
+
+	static long hash(String text) {
+		long hash = FNV_OFFSET_BASIS;
+		if (text != null) {
+			for (byte b : text.getBytes(StandardCharsets.UTF_8)) {
+				hash ^= b & 0xff;
+				hash *= FNV_PRIME;
+			}
+		}
+		return hash;
+	}
+}
@@ -0,0 +1,337 @@
+package contest.winter2017;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.FilenameUtils;
+import org.jacoco.core.data.ExecutionData;
+import org.jacoco.core.tools.ExecFileLoader;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonParseException;
+
+/**
+ * Persisted results of a previous run on an earlier build of the jar under test, used to skip
+ * basic tests that the changes in a new build cannot affect.
+ *
+ * Each basic test is run with its own JaCoCo output file, from which the classes it covered are
+ * recorded together with its output. On the next run, the CRCs of the classes in the jar are
+ * compared against the recorded ones, and a test whose covered classes are all unchanged is not
+ * executed again; its recorded output is checked against the expected regexes instead. Tests may
+ * read any other entry of the jar, such as its manifest or resources, so a change to one of those
+ * executes every test again. JaCoCo
+ * identifies classes by a hash of their bytes, so the probes recorded for unchanged classes are
+ * merged into the coverage of the new build as they are. The security test corpus is kept as
+ * well, so that security testing resumes from the inputs found by the previous run.
+ */
+public class RunCache {
+	private static final String CACHE_FILE_SUFFIX = ".runcache.json";
+	private static final String EXEC_DIRECTORY = "exec";
+
+	private static final Gson gson = new GsonBuilder().disableHtmlEscaping().create();
+
+	/**
+	 * Recorded result of one basic test.
+	 */
+	static class TestRecord {
+		List<String> parameters;
+		String stdOutExpectedResultRegex;
+		String stdErrExpectedResultRegex;
+		String stdOut;
+		String stdErr;
+		Set<String> coveredClasses;
+		String execFile;
+
+		private List<Object> getKey() {
+			return Arrays.<Object>asList(parameters, stdOutExpectedResultRegex, stdErrExpectedResultRegex);
+		}
+	}
+
+	/**
+	 * Contents of the cache file.
+	 */
+	private static class CacheData {
+		String jarHash;
+		Map<String, Long> classCrcs = new HashMap<>();
+		Map<String, Long> resourceCrcs = new HashMap<>();
+		List<TestRecord> tests = new ArrayList<>();
+		List<List<String>> corpus = new ArrayList<>();
+	}
+
+	private final File cacheFile;
+	private final File execDirectory;
+	private final CacheData previous;
+	private final CacheData current = new CacheData();
+
+	/**
+	 * records of the previous run by parameters and expected regexes of their tests
+	 */
+	private final Map<List<Object>, TestRecord> previousTests = new HashMap<>();
+
+	/**
+	 * classes added, removed or modified since the previous run, null if there was no previous run
+	 */
+	private final Set<String> changedClasses;
+
+
+	private RunCache(File directory, File jarFile) throws IOException {
+		String jarBaseName = FilenameUtils.getBaseName(jarFile.getName());
+		this.cacheFile = new File(directory, jarBaseName + CACHE_FILE_SUFFIX);
+		// the directory may hold the caches of several jars, each only prunes its own files
+		this.execDirectory = new File(new File(directory, EXEC_DIRECTORY), jarBaseName);
+		Files.createDirectories(execDirectory.toPath());
+
+		current.jarHash = hashFile(jarFile);
+		readCrcs(jarFile, current.classCrcs, current.resourceCrcs);
+		previous = load(cacheFile);
+
+		if (previous == null) {
+			changedClasses = null;
+		}
+		else {
+			// kept until this run replaces it, in case this run ends before security testing
+			current.corpus = previous.corpus;
+			if (previous.resourceCrcs.equals(current.resourceCrcs)) {
+				for (TestRecord record : previous.tests) {
+					// the first record of a test wins, like the first match of a scan
+					if (!previousTests.containsKey(record.getKey())) {
+						previousTests.put(record.getKey(), record);
+					}
+				}
+			}
+			changedClasses = new HashSet<>();
+			for (Map.Entry<String, Long> entry : current.classCrcs.entrySet()) {
+				if (!entry.getValue().equals(previous.classCrcs.get(entry.getKey()))) {
+					changedClasses.add(entry.getKey());
+				}
+			}
+			for (String className : previous.classCrcs.keySet()) {
+				if (!current.classCrcs.containsKey(className)) {
+					changedClasses.add(className);
+				}
+			}
+		}
+	}
+
+
+	/**
+	 * Opens the run cache for a jar, loading the results of the previous run if there was one.
+	 * @param directory - directory that holds the cache
+	 * @param jarFile - the jar under test
+	 * @return RunCache for the jar
+	 * @throws IOException
+	 */
+	public static RunCache open(File directory, File jarFile) throws IOException {
+		return new RunCache(directory, jarFile);
+	}
+
+	private static CacheData load(File cacheFile) {
+		if (!cacheFile.exists()) {
+			return null;
+		}
+		try (Reader reader = Files.newBufferedReader(cacheFile.toPath(), StandardCharsets.UTF_8)) {
+			return gson.fromJson(reader, CacheData.class);
+		}
+		catch (IOException | JsonParseException e) {
+			// an unreadable cache is the same as no cache
+			return null;
+		}
+	}
+
+	/**
+	 * Writes the results of this run to the cache, and deletes JaCoCo output files of the jar that
+	 * are no longer referenced.
+	 * @throws IOException
+	 */
+	public void save() throws IOException {
+		Set<String> execFiles = new HashSet<>();
+		for (TestRecord record : current.tests) {
+			execFiles.add(record.execFile);
+		}
+		File[] files = execDirectory.listFiles();
+		if (files != null) {
+			for (File file : files) {
+				if (!execFiles.contains(file.getName())) {
+					FileUtils.deleteQuietly(file);
+				}
+			}
+		}
+
+		try (Writer writer = Files.newBufferedWriter(cacheFile.toPath(), StandardCharsets.UTF_8)) {
+			gson.toJson(current, writer);
+		}
+	}
+
+
+	/**
+	 * Getter for the number of classes that changed since the previous run
+	 * @return number of changed classes, -1 if there was no previous run
+	 */
+	public int getChangedClassCount() {
+		return changedClasses == null ? -1 : changedClasses.size();
+	}
+
+	/**
+	 * Finds the recorded result of a basic test that the changes since the previous run cannot
+	 * affect, and keeps it for this run.
+	 * @param test - the basic test
+	 * @return Output recorded for the test, or null if the test needs to be executed
+	 */
+	public Output reuse(Test test) {
+		TestRecord record = previousTests.get(Arrays.<Object>asList(test.getParameters(),
+				test.getStdOutExpectedResultRegex(), test.getStdErrExpectedResultRegex()));
+		if (record == null || !new File(execDirectory, record.execFile).exists()
+				|| intersects(record.coveredClasses, changedClasses)) {
+			return null;
+		}
+		current.tests.add(record);
+		return new Output(test.getParameters(), record.stdOut, record.stdErr);
+	}
+
+	/**
+	 * Creates the JaCoCo output file for a basic test that needs to be executed.
+	 * @param test - the basic test
+	 * @param index - index of the test, to tell apart tests with the same parameters
+	 * @return File the test's coverage is written to, which must not exist yet
+	 */
+	public File getExecFile(Test test, int index) {
+		int identity = Arrays.asList(test.getParameters(), test.getStdOutExpectedResultRegex(),
+				test.getStdErrExpectedResultRegex()).hashCode();
+		String name = String.format("test-%08x-%d.exec", identity, index);
+		File file = new File(execDirectory, name);
+		FileUtils.deleteQuietly(file);
+		return file;
+	}
+
+	/**
+	 * Records the result of a basic test that was executed.
+	 * @param test - the basic test
+	 * @param output - output of the test
+	 * @param execFile - file the test's coverage was written to
+	 * @throws IOException
+	 */
+	public void record(Test test, Output output, File execFile) throws IOException {
+		TestRecord record = new TestRecord();
+		record.parameters = test.getParameters();
+		record.stdOutExpectedResultRegex = test.getStdOutExpectedResultRegex();
+		record.stdErrExpectedResultRegex = test.getStdErrExpectedResultRegex();
+		record.stdOut = output.getStdOutString();
+		record.stdErr = output.getStdErrString();
+		record.execFile = execFile.getName();
+		record.coveredClasses = new TreeSet<>();
+
+		if (execFile.exists()) {
+			ExecFileLoader loader = new ExecFileLoader();
+			loader.load(execFile);
+			for (ExecutionData data : loader.getExecutionDataStore().getContents()) {
+				if (data.hasHits()) {
+					record.coveredClasses.add(data.getName());
+				}
+			}
+		}
+		current.tests.add(record);
+	}
+
+	/**
+	 * Merges the coverage of all basic tests of this run, executed or reused, into a JaCoCo output file.
+	 * @param jacocoOutputFile - file to append the coverage to
+	 * @throws IOException
+	 */
+	public void mergeCoverage(File jacocoOutputFile) throws IOException {
+		ExecFileLoader loader = new ExecFileLoader();
+		for (TestRecord record : current.tests) {
+			File execFile = new File(execDirectory, record.execFile);
+			if (execFile.exists()) {
+				loader.load(execFile);
+			}
+		}
+		loader.save(jacocoOutputFile, true);
+	}
+
+
+	/**
+	 * Getter for the security test corpus of the previous run
+	 * @return List of inputs, empty if there was no previous run
+	 */
+	public List<List<String>> getCorpus() {
+		return previous == null ? new ArrayList<List<String>>() : previous.corpus;
+	}
+
+	/**
+	 * Records the security test corpus of this run.
+	 * @param corpus - inputs of the corpus
+	 */
+	public void setCorpus(List<List<String>> corpus) {
+		current.corpus = corpus;
+	}
+
+
+	private static boolean intersects(Set<String> a, Set<String> b) {
+		for (String element : a) {
+			if (b.contains(element)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private static void readCrcs(File jarFile, Map<String, Long> classCrcs, Map<String, Long> resourceCrcs)
+			throws IOException {
+		// the CRCs are stored in the jar's central directory, so no entry has to be read
+		try (JarFile jar = new JarFile(jarFile)) {
+			Enumeration<JarEntry> entries = jar.entries();
+			while (entries.hasMoreElements()) {
+				JarEntry entry = entries.nextElement();
+				String name = entry.getName();
+				if (name.endsWith(".class")) {
+					classCrcs.put(name.substring(0, name.length() - ".class".length()), entry.getCrc());
+				}
+				else if (!entry.isDirectory()) {
+					resourceCrcs.put(name, entry.getCrc());
+				}
+			}
+		}
+	}
+
+	static String hashFile(File file) throws IOException {
+		MessageDigest digest;
+		try {
+			digest = MessageDigest.getInstance("SHA-256");
+		}
+		catch (NoSuchAlgorithmException e) {
+			throw new IOException(e);
+		}
+		byte[] buffer = new byte[65536];
+		try (InputStream in = Files.newInputStream(file.toPath())) {
+			int read;
+			while ((read = in.read(buffer)) >= 0) {
+				digest.update(buffer, 0, read);
+			}
+		}
+		StringBuilder sb = new StringBuilder();
+		for (byte b : digest.digest()) {
+			sb.append(String.format("%02x", b));
+		}
+		return sb.toString();
+	}
+}
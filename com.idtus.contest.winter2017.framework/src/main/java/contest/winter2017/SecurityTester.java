@@ -1,86 +1,375 @@
 package contest.winter2017;
 
+import java.io.IOException;
 import java.security.SecureRandom;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Random;
 import java.util.Set;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
 
+import contest.winter2017.agent.EdgeMap;
 import securitytests.ArgumentAmountTest;
 import securitytests.CorruptedInputTest;
+import securitytests.InputToStateTest;
 import securitytests.RandomParameterTest;
+import securitytests.RegexSelector;
+import securitytests.SecurityTest;
 
 /**
  * Exploratory security vulnerability testing is implemented here.
  */
 public class SecurityTester {
+	/**
+	 * number of executions per round that are repeated with comparison logging enabled
+	 */
+	private static final int COMPARISON_SAMPLES = 16;
+
 	private final ProgramRunner programRunner;
-	private final Random random;
+	private final JacocoCoverageAnalyzer coverage;
+	private final CallGraph callGraph;
+	private Random random;
+
+	private final boolean errorLineNumbers;
 
-	private Set<String> errorMessages;
+	private ErrorBuckets errors;
+	private Corpus corpus;
+	private List<List<String>> seedInputs = new ArrayList<>();
+	private WorstInputs worstInputs;
 	private List<Output> outputs = null;
 
+	private ProgramRunner diffRunner;
+	private Divergences divergences;
+
+	private Checkpoint checkpoint;
+	private boolean resume;
+	private ResultLog resultLog;
+	private boolean coverageHistory = false;
+
 	@SuppressWarnings("unused")
 	private int passCount;
 	@SuppressWarnings("unused")
 	private int failCount;
 
-	public SecurityTester(ProgramRunner programRunner) {
+	/**
+	 * @param programRunner - runner used to execute the tests
+	 * @param coverage - coverage of the jar under test
+	 * @param callGraph - call graph of the jar under test, null unless in directed mode
+	 * @param errorLineNumbers - whether line numbers are part of error signatures
+	 */
+	public SecurityTester(ProgramRunner programRunner, JacocoCoverageAnalyzer coverage, CallGraph callGraph,
+			boolean errorLineNumbers) {
 		this.programRunner = programRunner;
-		this.random = new SecureRandom();
+		this.coverage = coverage;
+		this.callGraph = callGraph;
+		this.errorLineNumbers = errorLineNumbers;
+		// the state of a seeded generator can be saved in checkpoints, unlike that of SecureRandom
+		this.random = new Random(new SecureRandom().nextLong());
 	}
 
 	public void runTests(ParameterFactory parameterFactory, List<Test> basicTests)
-			throws InterruptedException, ExecutionException {
+			throws InterruptedException, ExecutionException, IOException {
 		passCount = 0;
 		failCount = 0;
-		errorMessages = new HashSet<>();
+		errors = new ErrorBuckets(errorLineNumbers);
+		worstInputs = programRunner.sampleResources ? new WorstInputs() : null;
+		divergences = diffRunner != null
+				? new Divergences(diffRunner.getJarToTestPath(), programRunner.getJarToTestPath(), errorLineNumbers) : null;
 
-		List<List<String>> tests = new ArrayList<>();
 		int iterations = programRunner.securityTestIterations;
 
 		boolean noTime = programRunner.securityTestTime < 0;
 		
 		int remainingTime = programRunner.securityTestTime;
+		int rounds = 0;
+
+		Checkpoint.State resumedState = checkpoint != null && resume ? checkpoint.load() : null;
+		if (resumedState != null) {
+			random = resumedState.getRandom();
+			passCount = resumedState.getPassCount();
+			failCount = resumedState.getFailCount();
+			rounds = resumedState.getRounds();
+			remainingTime = resumedState.getRemainingTime();
+		}
+
+		// security tests are derived from the basic tests, and from inputs that found new behavior
+		corpus = new Corpus(random);
+		for (Test test : basicTests) {
+			corpus.add(test.getParameters());
+		}
+		for (List<String> input : seedInputs) {
+			corpus.add(input);
+		}
+
+		if (checkpoint != null) {
+			if (resumedState != null) {
+				checkpoint.restore(resumedState, corpus, errors);
+			}
+			else {
+				checkpoint.reset();
+			}
+			corpus.startJournal();
+		}
+
+		// the resumed campaign had already used up its budget
+		if (resumedState != null && (noTime || remainingTime <= 0)) {
+			outputs = new ArrayList<>();
+			checkpoint.close();
+			return;
+		}
+
+		// comparison feedback carries over between rounds
+		final InputToStateTest inputToStateTest = new InputToStateTest(random);
+		final RegexSelector regexSelector = RegexSelector.fromTestBounds(parameterFactory, basicTests, random);
 		
+		// coverage is analyzed once per round, at the end of the round if its history is recorded
+		// and otherwise before the next round for directed testing
+		JacocoCoverageAnalyzer.Analysis analysis = null;
 		do {
+			if (callGraph != null) {
+				if (analysis == null) {
+					analysis = analyzeCoverage();
+				}
+				if (analysis != null) {
+					updateDirection(analysis.getMethodCoverage());
+				}
+			}
+			analysis = null;
+
+			List<List<String>> tests = new ArrayList<>();
 			final ArgumentAmountTest argumentAmountTest = new ArgumentAmountTest(random);
-			final CorruptedInputTest corruptedInputTest = new CorruptedInputTest(basicTests, random);
-			final RandomParameterTest randomParameterTest = new RandomParameterTest(parameterFactory, random);
+			final CorruptedInputTest corruptedInputTest = new CorruptedInputTest(corpus, parameterFactory, random);
+			final RandomParameterTest randomParameterTest = new RandomParameterTest(parameterFactory, regexSelector, random);
 	
-			// create test cases
-			argumentAmountTest.generateTests(tests, -1);
-			corruptedInputTest.generateTests(tests, (iterations - tests.size()) / 3);
-			randomParameterTest.generateTests(tests, iterations - tests.size());
+			// create test cases, remembering which generator created each
+			List<String> generators = new ArrayList<>();
+			generateTests(argumentAmountTest, "argumentAmount", tests, -1, generators);
+			generateTests(inputToStateTest, "inputToState", tests, -1, generators);
+			// with coverage feedback the corpus keeps improving, so derive more tests from it
+			int corruptedCount = (iterations - tests.size()) / (programRunner.hasCoverageFeedback() ? 2 : 3);
+			generateTests(corruptedInputTest, "corrupted", tests, corruptedCount, generators);
+			generateTests(randomParameterTest, "random", tests, iterations - tests.size(), generators);
 			assert tests.size() >= iterations;
 	
 			// run tests
 			
 			long startTime = System.currentTimeMillis();
-			outputs = programRunner.runTests(tests, remainingTime);
+			List<Output> diffOutputs = null;
+			if (diffRunner != null) {
+				outputs = new ArrayList<>();
+				diffOutputs = new ArrayList<>();
+				for (Output[] pair : programRunner.runDifferentialSecurityTests(tests, diffRunner, remainingTime)) {
+					outputs.add(pair[0]);
+					diffOutputs.add(pair[1]);
+				}
+			}
+			else {
+				outputs = programRunner.runSecurityTests(tests, remainingTime);
+			}
+			if (programRunner.comparisonFeedback) {
+				runComparisonSamples(inputToStateTest, remainingTime);
+			}
 			long endTime = System.currentTimeMillis();
 			remainingTime -= (endTime - startTime)/1000;
-			for (Output output : outputs) {
+			for (int i = 0; i < outputs.size(); i++) {
+				Output output = outputs.get(i);
 				if (output != null) {
-					String stdErrString = output.getStdErrString();
-					if (stdErrString != null && isStdErrExceptional(stdErrString)) {
-						errorMessages.add(stdErrString.trim());
+					long processingStart = System.nanoTime();
+					// in performance fuzzing mode, new worst cases are kept as well
+					boolean worst = worstInputs != null && worstInputs.offer(output);
+					boolean added = output.getNewCoverage() > 0 || worst;
+					if (added) {
+						corpus.add(output.getParameters(), output.getEnteredMethods(),
+								output.getResourceUsage().getCpuMillis());
+					}
+
+					// crashes are detected by scanning stderr while the child runs
+					String errorSignature = null;
+					boolean newError = false;
+					if (output.isCrashDetected()) {
+						ErrorBuckets.Bucket bucket = errors.add(output.getParameters(), output.getStdErrString());
+						errorSignature = bucket.getSignature();
+						newError = bucket.getCount() == 1;
+						programRunner.getMetrics().setUniqueErrors(errors.size());
 						failCount++;
 					}
 					else {
 						passCount++;
 					}
+					if (diffOutputs != null && diffOutputs.get(i) != null) {
+						divergences.compare(diffOutputs.get(i), output);
+					}
+					programRunner.getMetrics().recordYield(generators.get(i), added, output.isCrashDetected(), newError);
+					if (resultLog != null) {
+						resultLog.append(generators.get(i), output, errorSignature);
+					}
+					programRunner.getMetrics().getPhases().record(PhaseTimings.Phase.PROCESSING,
+							TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - processingStart));
 				}
 			}
+
+			if (coverageHistory) {
+				analysis = analyzeCoverage();
+				programRunner.getMetrics().recordCoverage(analysis != null ? analysis.getPercentCovered() : 0.0);
+			}
+
+			rounds++;
+			if (checkpoint != null) {
+				checkpoint.save(new Checkpoint.State(random, passCount, failCount, rounds, remainingTime),
+						corpus.drainJournal(), errors);
+			}
 		}
 		while (!noTime && remainingTime > 0);
+
+		if (checkpoint != null) {
+			checkpoint.close();
+		}
+	}
+
+	/**
+	 * Sets the log that a record of every executed test is written to.
+	 * @param resultLog - the log, or null for none
+	 */
+	public void setResultLog(ResultLog resultLog) {
+		this.resultLog = resultLog;
+	}
+
+	/**
+	 * Runs every security test on another version of the jar under test as well, and compares
+	 * the outputs of both versions.
+	 * @param diffRunner - runner of the other version, or null to only test the jar under test
+	 */
+	public void setDiffRunner(ProgramRunner diffRunner) {
+		this.diffRunner = diffRunner;
+	}
+
+	/**
+	 * Records the code coverage after every round in the metrics of the program runner, which
+	 * analyzes the JaCoCo output once per round.
+	 * @param coverageHistory - whether to record the coverage
+	 */
+	public void setCoverageHistory(boolean coverageHistory) {
+		this.coverageHistory = coverageHistory;
+	}
+
+	/**
+	 * Runs a generator, and records its name for each test it created.
+	 */
+	private static void generateTests(SecurityTest generator, String name, List<List<String>> tests, int maxCount,
+			List<String> generators) {
+		Profiler.Span span = Profiler.begin(Profiler.Operation.GENERATOR, name);
+		int firstIndex = tests.size();
+		generator.generateTests(tests, maxCount);
+		int argumentCount = 0;
+		for (int i = firstIndex; i < tests.size(); i++) {
+			argumentCount += tests.get(i).size();
+			generators.add(name);
+		}
+		span.end(argumentCount, tests.size() - firstIndex, tests.size() > firstIndex ? "ok" : "no tests");
+	}
+
+	/**
+	 * Sets the seed of the random number generator, so that a campaign can be repeated.
+	 * @param seed - the seed
+	 */
+	public void setSeed(long seed) {
+		random.setSeed(seed);
+	}
+
+	/**
+	 * Saves the campaign state after every round.
+	 * @param checkpoint - where to save the state
+	 * @param resume - whether to continue from the state saved by a previous campaign, if any
+	 */
+	public void setCheckpoint(Checkpoint checkpoint, boolean resume) {
+		this.checkpoint = checkpoint;
+		this.resume = resume;
+	}
+
+	/**
+	 * Sets additional inputs the corpus starts out with, such as the corpus of a previous run.
+	 * @param seedInputs - inputs to add to the corpus
+	 */
+	public void setSeedInputs(List<List<String>> seedInputs) {
+		this.seedInputs = seedInputs;
+	}
+
+	/**
+	 * Getter for the corpus built by the last run
+	 * @return Corpus, or null if no tests were run
+	 */
+	public Corpus getCorpus() {
+		return corpus;
+	}
+
+	/**
+	 * Analyzes the coverage collected so far.
+	 * @return Analysis of the coverage, or null if it couldn't be read
+	 */
+	private JacocoCoverageAnalyzer.Analysis analyzeCoverage() {
+		try {
+			return coverage.analyze(null);
+		}
+		catch (IOException e) {
+			e.printStackTrace();
+			return null;
+		}
 	}
 
-	private static boolean isStdErrExceptional(String stdErrString) {
-		assert stdErrString != null;
-		return stdErrString.startsWith("Exception in");
+	/**
+	 * Points the corpus at the methods that are still uncovered: each method slot is assigned the
+	 * number of calls from the closest method in that slot to an uncovered method.
+	 * @param methodCoverage - whether each method was entered
+	 */
+	private void updateDirection(Map<String, Boolean> methodCoverage) {
+		Set<String> targets = new HashSet<>();
+		for (Map.Entry<String, Boolean> entry : methodCoverage.entrySet()) {
+			if (!entry.getValue()) {
+				targets.add(entry.getKey());
+			}
+		}
+
+		int[] methodDistances = new int[EdgeMap.METHOD_MAP_SIZE];
+		Arrays.fill(methodDistances, Integer.MAX_VALUE);
+		for (Map.Entry<String, Integer> entry : callGraph.getDistancesTo(targets).entrySet()) {
+			int slot = CallGraph.getMethodSlot(entry.getKey());
+			methodDistances[slot] = Math.min(methodDistances[slot], entry.getValue());
+		}
+		corpus.setMethodDistances(methodDistances);
+	}
+
+	/**
+	 * Repeats a random sample of the last round with comparison logging enabled,
+	 * and feeds the observed operands to the input-to-state generator.
+	 */
+	private void runComparisonSamples(InputToStateTest inputToStateTest, int timeout)
+			throws InterruptedException, ExecutionException {
+		List<List<String>> samples = new ArrayList<>();
+		for (Output output : outputs) {
+			if (output == null) {
+				continue;
+			}
+			// reservoir sampling keeps the choice uniform over all outputs
+			if (samples.size() < COMPARISON_SAMPLES) {
+				samples.add(output.getParameters());
+			}
+			else {
+				int index = random.nextInt(samples.size() + 1);
+				if (index < COMPARISON_SAMPLES) {
+					samples.set(index, output.getParameters());
+				}
+			}
+		}
+
+		for (Output output : programRunner.runTestsWithComparisonLog(samples, timeout)) {
+			if (output != null) {
+				inputToStateTest.addObservation(output);
+			}
+		}
 	}
 
 
@@ -96,16 +385,43 @@ public class SecurityTester {
 	}
 
 
+	/**
+	 * Getter for the most expensive inputs found in performance fuzzing mode
+	 * @return WorstInputs, or null if performance fuzzing is disabled
+	 */
+	public WorstInputs getWorstInputs() {
+		return worstInputs;
+	}
+
+
+	/**
+	 * Getter for the errors seen, grouped by stack trace signature
+	 * @return ErrorBuckets of the last run
+	 */
+	public ErrorBuckets getErrors() {
+		return errors;
+	}
+
+
+	/**
+	 * Getter for the differences found between the jar under test and the other version
+	 * @return Divergences of the last run, or null if no other version was tested
+	 */
+	public Divergences getDivergences() {
+		return divergences;
+	}
+
+
 	public String getYaml() {
 		StringBuilder sb = new StringBuilder();
-		sb.append("Unique error count: " + this.errorMessages.size() + "\n");
-		if (this.errorMessages.isEmpty()) {
+		sb.append("Unique error count: " + this.errors.size() + "\n");
+		if (this.errors.size() == 0) {
 			sb.append("Errors seen: []");
 		}
 		else {
 			sb.append("Errors seen:\n");
-			for (String errorString : this.errorMessages) {
-				errorString = errorString.trim();
+			for (ErrorBuckets.Bucket bucket : this.errors.getBuckets()) {
+				String errorString = bucket.getSampleTrace();
 				if (errorString.contains("\n")) {
 					sb.append("  - |-\n");
 					for (String line : errorString.split("\n")) {
@@ -117,6 +433,24 @@ public class SecurityTester {
 				}
 			}
 		}
+		if (divergences != null) {
+			if (sb.charAt(sb.length() - 1) != '\n') {
+				sb.append("\n");
+			}
+			sb.append("Divergence count: " + divergences.size() + "\n");
+			if (divergences.size() == 0) {
+				sb.append("Divergences seen: []");
+			}
+			else {
+				sb.append("Divergences seen:\n");
+				for (ErrorBuckets.Bucket bucket : divergences.getBuckets()) {
+					sb.append("  - |-\n");
+					for (String line : (bucket.getSignature() + "\n" + bucket.getSampleTrace()).split("\n")) {
+						sb.append("    " + line + "\n");
+					}
+				}
+			}
+		}
 		return sb.toString();
 	}
 }
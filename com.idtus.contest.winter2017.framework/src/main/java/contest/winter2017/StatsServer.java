@@ -0,0 +1,197 @@
+package contest.winter2017;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.StringWriter;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.ToLongFunction;
+
+import com.google.gson.stream.JsonWriter;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * HTTP server on the loopback interface that reports the progress of a run. /stats serves the
+ * metrics as JSON, and /metrics serves them in the Prometheus text format. Requests are handled
+ * by a single thread of its own, which only reads the lock-free counters in Metrics.
+ */
+public class StatsServer {
+	private static final String PROMETHEUS_PREFIX = "blackbox_";
+	private static final double[] PERCENTILES = { 50, 99 };
+
+	private final HttpServer server;
+	private final ExecutorService executor;
+
+	/**
+	 * Starts the server.
+	 * @param port - port to listen on, 0 to pick a free one
+	 * @param metrics - metrics to report
+	 * @throws IOException if the port can't be bound
+	 */
+	public StatsServer(int port, Metrics metrics) throws IOException {
+		this.server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+		this.executor = Executors.newSingleThreadExecutor(runnable -> {
+			Thread thread = new Thread(runnable, "stats-server");
+			thread.setDaemon(true);
+			return thread;
+		});
+		server.setExecutor(executor);
+		server.createContext("/stats", exchange -> respond(exchange, "application/json", getJson(metrics)));
+		server.createContext("/metrics", exchange -> respond(exchange, "text/plain; version=0.0.4",
+				getPrometheusText(metrics)));
+		// the dispatcher thread inherits the daemon status of the thread that starts the server, so
+		// starting it from the daemon handler thread keeps it from holding the JVM open
+		try {
+			executor.submit(server::start).get();
+		}
+		catch (InterruptedException | ExecutionException e) {
+			server.stop(0);
+			executor.shutdownNow();
+			throw new IOException("couldn't start the stats server", e);
+		}
+	}
+
+	/**
+	 * Getter for the port the server listens on
+	 * @return port
+	 */
+	public int getPort() {
+		return server.getAddress().getPort();
+	}
+
+	public void stop() {
+		server.stop(0);
+		executor.shutdownNow();
+	}
+
+	private static void respond(HttpExchange exchange, String contentType, String body) throws IOException {
+		byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+		exchange.getResponseHeaders().set("Content-Type", contentType + "; charset=utf-8");
+		exchange.sendResponseHeaders(200, bytes.length);
+		try (OutputStream out = exchange.getResponseBody()) {
+			out.write(bytes);
+		}
+	}
+
+
+	/**
+	 * Renders the metrics in the format served on /stats.
+	 * @param metrics - metrics to render
+	 * @return JSON object
+	 * @throws IOException
+	 */
+	static String getJson(Metrics metrics) throws IOException {
+		StringWriter json = new StringWriter();
+		try (JsonWriter writer = new JsonWriter(json)) {
+			writer.setIndent("  ");
+			writer.beginObject();
+			writer.name("elapsedMillis").value(metrics.getElapsedMillis());
+			writer.name("executions").value(metrics.getExecutions());
+			writer.name("executionsPerSecond").value(metrics.getExecutionsPerSecond());
+			writer.name("inFlight").value(metrics.getInFlight());
+			writer.name("queueDepth").value(metrics.getQueueDepth());
+			writer.name("uniqueErrors").value(metrics.getUniqueErrors());
+			writer.name("firstErrorMillis");
+			if (metrics.getFirstErrorMillis() >= 0) {
+				writer.value(metrics.getFirstErrorMillis());
+			}
+			else {
+				writer.nullValue();
+			}
+
+			writer.name("latencyMillis").beginObject();
+			for (double percentile : PERCENTILES) {
+				writer.name(String.format(Locale.ROOT, "p%.0f", percentile))
+					.value(metrics.getLatency().getPercentile(percentile));
+			}
+			writer.endObject();
+
+			writer.name("coverage").beginArray();
+			for (Metrics.CoverageSample sample : metrics.getCoverageHistory()) {
+				writer.beginObject();
+				writer.name("elapsedMillis").value(sample.getElapsedMillis());
+				writer.name("percentCovered").value(sample.getPercentCovered());
+				writer.endObject();
+			}
+			writer.endArray();
+
+			writer.name("generators").beginObject();
+			for (Map.Entry<String, Metrics.GeneratorStats> entry : metrics.getGenerators().entrySet()) {
+				Metrics.GeneratorStats stats = entry.getValue();
+				writer.name(entry.getKey()).beginObject();
+				writer.name("executions").value(stats.getExecutions());
+				writer.name("corpusAdditions").value(stats.getCorpusAdditions());
+				writer.name("crashes").value(stats.getCrashes());
+				writer.name("newErrors").value(stats.getNewErrors());
+				writer.endObject();
+			}
+			writer.endObject();
+			writer.endObject();
+		}
+		return json.toString();
+	}
+
+	static String getPrometheusText(Metrics metrics) {
+		StringBuilder sb = new StringBuilder();
+		appendMetric(sb, "executions_total", "counter", "Executions of the jar under test.",
+				metrics.getExecutions());
+		appendMetric(sb, "executions_in_flight", "gauge", "Children currently running.",
+				metrics.getInFlight());
+		appendMetric(sb, "queue_depth", "gauge", "Tests waiting for a worker.",
+				metrics.getQueueDepth());
+		appendMetric(sb, "unique_errors", "gauge", "Unique error signatures seen by the security tests.",
+				metrics.getUniqueErrors());
+
+		sb.append("# HELP ").append(PROMETHEUS_PREFIX).append("execution_latency_milliseconds Wall clock time of executions.\n");
+		sb.append("# TYPE ").append(PROMETHEUS_PREFIX).append("execution_latency_milliseconds summary\n");
+		for (double percentile : PERCENTILES) {
+			sb.append(PROMETHEUS_PREFIX).append("execution_latency_milliseconds{quantile=\"")
+				.append(percentile / 100).append("\"} ")
+				.append(metrics.getLatency().getPercentile(percentile)).append('\n');
+		}
+		sb.append(PROMETHEUS_PREFIX).append("execution_latency_milliseconds_count ")
+			.append(metrics.getLatency().getCount()).append('\n');
+
+		if (!metrics.getCoverageHistory().isEmpty()) {
+			Metrics.CoverageSample latest = metrics.getCoverageHistory().get(metrics.getCoverageHistory().size() - 1);
+			appendMetric(sb, "coverage_percent", "gauge", "JaCoCo coverage after the last round.",
+					latest.getPercentCovered());
+		}
+
+		Map<String, Metrics.GeneratorStats> generators = metrics.getGenerators();
+		if (!generators.isEmpty()) {
+			appendGeneratorMetric(sb, generators, "generator_executions_total", "Executions per generator.",
+					Metrics.GeneratorStats::getExecutions);
+			appendGeneratorMetric(sb, generators, "generator_corpus_additions_total",
+					"Inputs added to the corpus per generator.", Metrics.GeneratorStats::getCorpusAdditions);
+			appendGeneratorMetric(sb, generators, "generator_crashes_total", "Crashes per generator.",
+					Metrics.GeneratorStats::getCrashes);
+			appendGeneratorMetric(sb, generators, "generator_new_errors_total", "New error signatures per generator.",
+					Metrics.GeneratorStats::getNewErrors);
+		}
+		return sb.toString();
+	}
+
+	private static void appendMetric(StringBuilder sb, String name, String type, String help, Number value) {
+		sb.append("# HELP ").append(PROMETHEUS_PREFIX).append(name).append(' ').append(help).append('\n');
+		sb.append("# TYPE ").append(PROMETHEUS_PREFIX).append(name).append(' ').append(type).append('\n');
+		sb.append(PROMETHEUS_PREFIX).append(name).append(' ').append(value).append('\n');
+	}
+
+	private static void appendGeneratorMetric(StringBuilder sb, Map<String, Metrics.GeneratorStats> generators,
+			String name, String help, ToLongFunction<Metrics.GeneratorStats> field) {
+		sb.append("# HELP ").append(PROMETHEUS_PREFIX).append(name).append(' ').append(help).append('\n');
+		sb.append("# TYPE ").append(PROMETHEUS_PREFIX).append(name).append(" counter\n");
+		for (Map.Entry<String, Metrics.GeneratorStats> entry : generators.entrySet()) {
+			sb.append(PROMETHEUS_PREFIX).append(name).append("{generator=\"").append(entry.getKey()).append("\"} ")
+				.append(field.applyAsLong(entry.getValue())).append('\n');
+		}
+	}
+}
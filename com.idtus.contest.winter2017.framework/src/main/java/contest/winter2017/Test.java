@@ -1,6 +1,7 @@
 package contest.winter2017;
 
 import java.util.List;
+import java.util.regex.Pattern;
 
 /**
  * Class that represents a basic test that is extracted from the executable jar and then run against the executable jar
@@ -26,6 +27,12 @@ public class Test {
 	 */
 	private String stdErrExpectedResultRegex;
 
+	/**
+	 * The expected result regexes, compiled once when the test is loaded
+	 */
+	private Pattern stdOutExpectedResultPattern;
+	private Pattern stdErrExpectedResultPattern;
+
 
 	/**
 	 * Ctr for Test object
@@ -36,6 +43,8 @@ public class Test {
 		this.parameters = parameters;
 		this.stdOutExpectedResultRegex = stdOutExpectedResultRegex;
 		this.stdErrExpectedResultRegex = stdErrExpectedResultRegex;
+		this.stdOutExpectedResultPattern = Pattern.compile(stdOutExpectedResultRegex);
+		this.stdErrExpectedResultPattern = Pattern.compile(stdErrExpectedResultRegex);
 	}
 
 
@@ -65,4 +74,22 @@ public class Test {
 		return stdErrExpectedResultRegex;
 	}
 
+
+	/**
+	 * Getter for the compiled Standard Out expected results regex
+	 * @return
+	 */
+	public Pattern getStdOutExpectedResultPattern() {
+		return stdOutExpectedResultPattern;
+	}
+
+
+	/**
+	 * Getter for the compiled Standard Error expected results regex
+	 * @return
+	 */
+	public Pattern getStdErrExpectedResultPattern() {
+		return stdErrExpectedResultPattern;
+	}
+
 }
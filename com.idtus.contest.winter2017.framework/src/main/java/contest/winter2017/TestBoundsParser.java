@@ -1,28 +1,40 @@
 package contest.winter2017;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.FileReader;
 import java.io.FileWriter;
 import java.io.IOException;
 import java.lang.reflect.Method;
 import java.lang.reflect.Type;
-import java.net.JarURLConnection;
 import java.net.URL;
 import java.net.URLClassLoader;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.function.Consumer;
 import java.util.jar.Attributes;
+import java.util.jar.JarFile;
+import java.util.jar.Manifest;
 
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
 import com.google.gson.JsonElement;
+import com.google.gson.JsonParseException;
 import com.google.gson.JsonPrimitive;
 import com.google.gson.JsonSerializationContext;
 import com.google.gson.JsonSerializer;
-import com.google.gson.reflect.TypeToken;
 import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
 import com.google.gson.stream.JsonWriter;
 
 public class TestBoundsParser {
@@ -30,6 +42,7 @@ public class TestBoundsParser {
 	private static final String TESTS_KEY = "tests";
 	private static final String FIXED_PARAMETER_KEY = "fixed parameter list";
 	private static final String DEPENDENT_PARAMETER_KEY = "dependent parameters";
+	private static final String JAR_HASH_KEY = "jar hash";
 
 	// keys for parsing Test
 	private static final String TEST_PARAMETERS_KEY = "parameters";
@@ -48,8 +61,17 @@ public class TestBoundsParser {
 	private static final String TESTBOUNDS_CLASS_FORMAT = "%sTestBounds";
 	private static final String TESTBOUNDS_METHOD_NAME = "testBounds";
 
+	// values for the binary cache
+	private static final int CACHE_MAGIC = 0x54424E44;
+	private static final int CACHE_VERSION = 1;
+	private static final byte CACHE_NO_FACTORY = 0;
+	private static final byte CACHE_FIXED_FACTORY = 1;
+	private static final byte CACHE_DEPENDENT_FACTORY = 2;
+	private static final byte CACHE_STRING_TYPE = 'S';
+	private static final byte CACHE_INTEGER_TYPE = 'I';
+	private static final byte CACHE_DOUBLE_TYPE = 'D';
+
 	// Utility values for JSON parsing
-	private static final Type STRING_OBJECT_MAP = new TypeToken<HashMap<String, Object>>(){}.getType();
 	private static final JsonSerializer<Class<?>> JSON_SERIALIZER = new JsonSerializer<Class<?>>() {
 		@Override
 		public JsonElement serialize(Class<?> src, Type typeOfSrc, JsonSerializationContext context) {
@@ -100,6 +122,17 @@ public class TestBoundsParser {
 	}
 
 
+	/**
+	 * Create a TestBoundsParser from values that were already parsed.
+	 * @param tests
+	 * @param parameterFactory
+	 */
+	private TestBoundsParser(List<Test> tests, ParameterFactory parameterFactory) {
+		this.tests = tests;
+		this.parameterFactory = parameterFactory;
+	}
+
+
 	/**
 	 * Read test bounds from a JSON file.
 	 * @param testFile The JSON file to read from
@@ -107,9 +140,66 @@ public class TestBoundsParser {
 	 * @throws IOException
 	 */
 	public static TestBoundsParser fromJson(File testFile) throws IOException {
-		JsonReader reader = gson.newJsonReader(new FileReader(testFile));
-		Map<String, Object> map = gson.fromJson(reader, STRING_OBJECT_MAP);
-		return new TestBoundsParser(map);
+		return fromJson(testFile, null);
+	}
+
+
+	/**
+	 * Read test bounds from a JSON file, token by token. Tests are built as they are read and
+	 * handed to the consumer right away, so they can be executed before the rest of the file
+	 * has been read, and the document is never held in memory as a map of boxed values.
+	 * @param testFile The JSON file to read from
+	 * @param testConsumer Consumer of each test as it is parsed, which then owns the tests, may be null
+	 * @return Parsed test bounds, without tests if they were handed to a consumer
+	 * @throws IOException
+	 */
+	public static TestBoundsParser fromJson(File testFile, Consumer<Test> testConsumer) throws IOException {
+		List<Test> tests = new ArrayList<>();
+		ParameterFactory parameterFactory = null;
+
+		try (JsonReader reader = gson.newJsonReader(new BufferedReader(new FileReader(testFile)))) {
+			reader.beginObject();
+			while (reader.hasNext()) {
+				switch (reader.nextName()) {
+				case TESTS_KEY:
+					reader.beginArray();
+					while (reader.hasNext()) {
+						Test test = readTest(reader);
+						if (testConsumer != null) {
+							testConsumer.accept(test);
+						}
+						else {
+							tests.add(test);
+						}
+					}
+					reader.endArray();
+					break;
+				case FIXED_PARAMETER_KEY:
+					parameterFactory = new FixedParameterFactory(parseRawParamList(castRawList(readRawValue(reader))));
+					break;
+				case DEPENDENT_PARAMETER_KEY:
+					parameterFactory = new DependentParameterFactory(parseRawParamMap(castRawMap(readRawValue(reader))));
+					break;
+				default:
+					reader.skipValue();
+				}
+			}
+			reader.endObject();
+		}
+		catch (IllegalStateException | ClassCastException | NumberFormatException e) {
+			throw new JsonParseException("malformed test bounds in " + testFile, e);
+		}
+		return new TestBoundsParser(tests, parameterFactory);
+	}
+
+
+	/**
+	 * Creates test bounds with the parameters of these ones and other tests.
+	 * @param tests The tests
+	 * @return Test bounds with the tests
+	 */
+	public TestBoundsParser withTests(List<Test> tests) {
+		return new TestBoundsParser(tests, parameterFactory);
 	}
 
 
@@ -124,26 +214,31 @@ public class TestBoundsParser {
 			throws IOException, ReflectiveOperationException {
 
 		// figuring out where the entry-point (main class) is in the jar under test
-		URL jarURL = new URL("jar:" + jarFile.toURI().toString() + "!/");
-		JarURLConnection jarURLconn = (JarURLConnection) jarURL.openConnection();
-
-		Attributes attr = jarURLconn.getMainAttributes();
-		String mainClassName = attr.getValue(Attributes.Name.MAIN_CLASS);
+		String mainClassName;
+		try (JarFile jar = new JarFile(jarFile)) {
+			Manifest manifest = jar.getManifest();
+			if (manifest == null) {
+				throw new IOException("jar has no manifest: " + jarFile);
+			}
+			mainClassName = manifest.getMainAttributes().getValue(Attributes.Name.MAIN_CLASS);
+		}
 
-		// loading the TestBounds class from the jar under test
+		// loading the TestBounds class from the jar under test, and closing the class loader once
+		// the map was built, so that its classes and the open jar don't pile up over many jars
+		Map<String, Object> mainClassTestBoundsMap;
 		URL fileURL = jarFile.toURI().toURL();
-		URLClassLoader cl = URLClassLoader.newInstance(new URL[]{fileURL});
-
-		String mainClassTestBoundsName = String.format(TESTBOUNDS_CLASS_FORMAT, mainClassName);
-		Class<?> mainClassTestBounds = cl.loadClass(mainClassTestBoundsName);
+		try (URLClassLoader cl = URLClassLoader.newInstance(new URL[]{fileURL})) {
+			String mainClassTestBoundsName = String.format(TESTBOUNDS_CLASS_FORMAT, mainClassName);
+			Class<?> mainClassTestBounds = cl.loadClass(mainClassTestBoundsName);
 
-		// use reflection to invoke the TestBounds class to get the usage information from the jar
-		Method testBoundsMethod = mainClassTestBounds.getMethod(TESTBOUNDS_METHOD_NAME);
-		Object mainClassTestBoundsInstance = mainClassTestBounds.newInstance();
+			// use reflection to invoke the TestBounds class to get the usage information from the jar
+			Method testBoundsMethod = mainClassTestBounds.getMethod(TESTBOUNDS_METHOD_NAME);
+			Object mainClassTestBoundsInstance = mainClassTestBounds.newInstance();
 
-		@SuppressWarnings("unchecked")
-		Map<String, Object> mainClassTestBoundsMap =
-			(Map<String, Object>) testBoundsMethod.invoke(mainClassTestBoundsInstance);
+			@SuppressWarnings("unchecked")
+			Map<String, Object> map = (Map<String, Object>) testBoundsMethod.invoke(mainClassTestBoundsInstance);
+			mainClassTestBoundsMap = map;
+		}
 
 		fixTestBoundsMap(mainClassTestBoundsMap);
 		return new TestBoundsParser(mainClassTestBoundsMap);
@@ -178,6 +273,59 @@ public class TestBoundsParser {
 	}
 
 
+	/**
+	 * Read test bounds from a binary cache file written by writeCache. The cache is only used if
+	 * it was written for the same JAR, so a changed JAR invalidates it.
+	 * @param cacheFile The cache file to read from
+	 * @param jarHash SHA-256 hash of the JAR under test
+	 * @return Parsed test bounds, or null if the cache is missing, stale or unreadable
+	 */
+	public static TestBoundsParser fromCache(File cacheFile, String jarHash) {
+		if (!cacheFile.exists()) {
+			return null;
+		}
+		try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(cacheFile)))) {
+			if (in.readInt() != CACHE_MAGIC || in.readInt() != CACHE_VERSION
+					|| !jarHash.equals(readCacheString(in))) {
+				return null;
+			}
+
+			int testCount = in.readInt();
+			List<Test> tests = new ArrayList<>(testCount);
+			for (int i = 0; i < testCount; i++) {
+				int parameterCount = in.readInt();
+				List<String> parameters = new ArrayList<>(parameterCount);
+				for (int j = 0; j < parameterCount; j++) {
+					parameters.add(readCacheString(in));
+				}
+				String stdOutExpectedResultRegex = readCacheString(in);
+				String stdErrExpectedResultRegex = readCacheString(in);
+				tests.add(new Test(parameters, stdOutExpectedResultRegex, stdErrExpectedResultRegex));
+			}
+
+			ParameterFactory parameterFactory = null;
+			byte factoryType = in.readByte();
+			if (factoryType == CACHE_FIXED_FACTORY) {
+				parameterFactory = new FixedParameterFactory(readCacheParamList(in));
+			}
+			else if (factoryType == CACHE_DEPENDENT_FACTORY) {
+				int keyCount = in.readInt();
+				Map<String, List<Parameter>> paramMap = new HashMap<>();
+				for (int i = 0; i < keyCount; i++) {
+					String key = readCacheString(in);
+					paramMap.put(key, readCacheParamList(in));
+				}
+				parameterFactory = new DependentParameterFactory(paramMap);
+			}
+			return new TestBoundsParser(tests, parameterFactory);
+		}
+		catch (IOException | IllegalArgumentException e) {
+			// a truncated or corrupt cache is the same as no cache
+			return null;
+		}
+	}
+
+
 	public Map<String, Object> getOriginalMap() {
 		return originalMap;
 	}
@@ -191,15 +339,304 @@ public class TestBoundsParser {
 	}
 
 	/**
-	 * Write test bounds to a JSON file.
+	 * Write test bounds to a JSON file. Tests are written one at a time from the parsed list, and
+	 * the other keys of the original map are written as they are.
 	 * @param testFile The JSON file to write to
 	 * @throws IOException
 	 */
 	public void writeJson(File testFile) throws IOException {
-		// convert all arguments into strings
-		JsonWriter writer = gson.newJsonWriter(new FileWriter(testFile));
-		gson.toJson(this.originalMap, STRING_OBJECT_MAP, writer);
-		writer.close();
+		writeJson(testFile, null);
+	}
+
+
+	/**
+	 * Write test bounds to a JSON file, starting with the hash of the JAR they were read from, so
+	 * that readJarHash can tell whether the file is still up to date without parsing all of it.
+	 * @param testFile The JSON file to write to
+	 * @param jarHash SHA-256 hash of the JAR under test, or null to leave it out
+	 * @throws IOException
+	 */
+	public void writeJson(File testFile, String jarHash) throws IOException {
+		assert originalMap != null;
+		try (JsonWriter writer = gson.newJsonWriter(new BufferedWriter(new FileWriter(testFile)))) {
+			writer.beginObject();
+			if (jarHash != null) {
+				writer.name(JAR_HASH_KEY).value(jarHash);
+			}
+			for (Map.Entry<String, Object> entry : originalMap.entrySet()) {
+				writer.name(entry.getKey());
+				if (TESTS_KEY.equals(entry.getKey())) {
+					writer.beginArray();
+					for (Test test : tests) {
+						writeTest(writer, test);
+					}
+					writer.endArray();
+				}
+				else if (entry.getValue() == null) {
+					writer.nullValue();
+				}
+				else {
+					gson.toJson(entry.getValue(), entry.getValue().getClass(), writer);
+				}
+			}
+			writer.endObject();
+		}
+	}
+
+
+	/**
+	 * Reads the hash of the JAR that a JSON file was written for, which writeJson puts first.
+	 * @param testFile The JSON file to read from
+	 * @return SHA-256 hash of the JAR, or null if the file has none or can't be read
+	 */
+	public static String readJarHash(File testFile) {
+		try (JsonReader reader = gson.newJsonReader(new BufferedReader(new FileReader(testFile)))) {
+			reader.beginObject();
+			if (reader.hasNext() && JAR_HASH_KEY.equals(reader.nextName()) && reader.peek() == JsonToken.STRING) {
+				return reader.nextString();
+			}
+		}
+		catch (IOException | IllegalStateException e) {
+			// the file is parsed again, and reports the error, if it is used at all
+		}
+		return null;
+	}
+
+
+	/**
+	 * Write the parsed test bounds to a binary cache file, which can be loaded without reflection
+	 * or JSON parsing.
+	 * @param cacheFile The cache file to write to
+	 * @param jarHash SHA-256 hash of the JAR under test
+	 * @throws IOException
+	 */
+	public void writeCache(File cacheFile, String jarHash) throws IOException {
+		try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(cacheFile)))) {
+			out.writeInt(CACHE_MAGIC);
+			out.writeInt(CACHE_VERSION);
+			writeCacheString(out, jarHash);
+
+			out.writeInt(tests.size());
+			for (Test test : tests) {
+				out.writeInt(test.getParameters().size());
+				for (String parameter : test.getParameters()) {
+					writeCacheString(out, parameter);
+				}
+				writeCacheString(out, test.getStdOutExpectedResultRegex());
+				writeCacheString(out, test.getStdErrExpectedResultRegex());
+			}
+
+			if (parameterFactory instanceof FixedParameterFactory) {
+				out.writeByte(CACHE_FIXED_FACTORY);
+				writeCacheParamList(out, ((FixedParameterFactory) parameterFactory).getParameterList());
+			}
+			else if (parameterFactory instanceof DependentParameterFactory) {
+				Map<String, List<Parameter>> paramMap = ((DependentParameterFactory) parameterFactory).getParameterMap();
+				out.writeByte(CACHE_DEPENDENT_FACTORY);
+				out.writeInt(paramMap.size());
+				for (Map.Entry<String, List<Parameter>> entry : paramMap.entrySet()) {
+					writeCacheString(out, entry.getKey());
+					writeCacheParamList(out, entry.getValue());
+				}
+			}
+			else {
+				out.writeByte(CACHE_NO_FACTORY);
+			}
+		}
+	}
+
+
+	// writeUTF is limited to 64 KiB, which long regexes can exceed
+	private static void writeCacheString(DataOutputStream out, String value) throws IOException {
+		if (value == null) {
+			out.writeInt(-1);
+			return;
+		}
+		byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+		out.writeInt(bytes.length);
+		out.write(bytes);
+	}
+
+	private static String readCacheString(DataInputStream in) throws IOException {
+		int length = in.readInt();
+		if (length < 0) {
+			return null;
+		}
+		byte[] bytes = new byte[length];
+		in.readFully(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	private static void writeCacheParamList(DataOutputStream out, List<Parameter> parameters) throws IOException {
+		out.writeInt(parameters.size());
+		for (Parameter parameter : parameters) {
+			out.writeBoolean(parameter.isOptional());
+			out.writeBoolean(parameter.isFormatted());
+			if (parameter.isFormatted()) {
+				writeCacheString(out, parameter.getFormat());
+				continue;
+			}
+
+			ParameterType<?> type = parameter.getTypeList().get(0);
+			if (type instanceof ParameterType.IntegerType) {
+				ParameterType.IntegerType intType = (ParameterType.IntegerType) type;
+				out.writeByte(CACHE_INTEGER_TYPE);
+				writeCacheBound(out, intType.getMin());
+				writeCacheBound(out, intType.getMax());
+			}
+			else if (type instanceof ParameterType.DoubleType) {
+				ParameterType.DoubleType doubleType = (ParameterType.DoubleType) type;
+				out.writeByte(CACHE_DOUBLE_TYPE);
+				writeCacheBound(out, doubleType.getMin());
+				writeCacheBound(out, doubleType.getMax());
+			}
+			else {
+				out.writeByte(CACHE_STRING_TYPE);
+			}
+		}
+	}
+
+	private static void writeCacheBound(DataOutputStream out, Number bound) throws IOException {
+		out.writeBoolean(bound != null);
+		if (bound instanceof Integer) {
+			out.writeInt((Integer) bound);
+		}
+		else if (bound instanceof Double) {
+			out.writeDouble((Double) bound);
+		}
+	}
+
+	private static List<Parameter> readCacheParamList(DataInputStream in) throws IOException {
+		int count = in.readInt();
+		List<Parameter> parameters = new ArrayList<>(count);
+		for (int i = 0; i < count; i++) {
+			boolean optional = in.readBoolean();
+			if (in.readBoolean()) {
+				parameters.add(new Parameter(readCacheString(in), optional));
+				continue;
+			}
+
+			ParameterType<?> paramType;
+			byte type = in.readByte();
+			if (type == CACHE_INTEGER_TYPE) {
+				Integer min = in.readBoolean() ? in.readInt() : null;
+				Integer max = in.readBoolean() ? in.readInt() : null;
+				paramType = new ParameterType.IntegerType(min, max);
+			}
+			else if (type == CACHE_DOUBLE_TYPE) {
+				Double min = in.readBoolean() ? in.readDouble() : null;
+				Double max = in.readBoolean() ? in.readDouble() : null;
+				paramType = new ParameterType.DoubleType(min, max);
+			}
+			else if (type == CACHE_STRING_TYPE) {
+				paramType = new ParameterType.StringType();
+			}
+			else {
+				throw new IllegalArgumentException("unknown parameter type in cache: " + type);
+			}
+			parameters.add(new Parameter(paramType, optional));
+		}
+		return parameters;
+	}
+
+
+	private static Test readTest(JsonReader reader) throws IOException {
+		List<String> parameters = new ArrayList<>();
+		String stdOutExpectedResultRegex = null;
+		String stdErrExpectedResultRegex = null;
+
+		reader.beginObject();
+		while (reader.hasNext()) {
+			String name = reader.nextName();
+			if (reader.peek() == JsonToken.NULL) {
+				reader.nextNull();
+				continue;
+			}
+			switch (name) {
+			case TEST_PARAMETERS_KEY:
+				reader.beginArray();
+				while (reader.hasNext()) {
+					// numbers and booleans are read as their literal text
+					parameters.add(reader.peek() == JsonToken.BOOLEAN
+							? String.valueOf(reader.nextBoolean()) : reader.nextString());
+				}
+				reader.endArray();
+				break;
+			case TEST_STDOUT_KEY:
+				stdOutExpectedResultRegex = reader.nextString();
+				break;
+			case TEST_STDERR_KEY:
+				stdErrExpectedResultRegex = reader.nextString();
+				break;
+			default:
+				reader.skipValue();
+			}
+		}
+		reader.endObject();
+		return new Test(parameters, stdOutExpectedResultRegex, stdErrExpectedResultRegex);
+	}
+
+	private static void writeTest(JsonWriter writer, Test test) throws IOException {
+		writer.beginObject();
+		writer.name(TEST_PARAMETERS_KEY);
+		writer.beginArray();
+		for (String parameter : test.getParameters()) {
+			writer.value(parameter);
+		}
+		writer.endArray();
+		writer.name(TEST_STDOUT_KEY).value(test.getStdOutExpectedResultRegex());
+		writer.name(TEST_STDERR_KEY).value(test.getStdErrExpectedResultRegex());
+		writer.endObject();
+	}
+
+	// reads the small parameter sections into the same structure as a map read from a JAR
+	private static Object readRawValue(JsonReader reader) throws IOException {
+		switch (reader.peek()) {
+		case BEGIN_ARRAY:
+			List<Object> list = new ArrayList<>();
+			reader.beginArray();
+			while (reader.hasNext()) {
+				list.add(readRawValue(reader));
+			}
+			reader.endArray();
+			return list;
+		case BEGIN_OBJECT:
+			Map<String, Object> map = new HashMap<>();
+			reader.beginObject();
+			while (reader.hasNext()) {
+				map.put(reader.nextName(), readRawValue(reader));
+			}
+			reader.endObject();
+			return map;
+		case NUMBER:
+			return reader.nextDouble();
+		case BOOLEAN:
+			return reader.nextBoolean();
+		case NULL:
+			reader.nextNull();
+			return null;
+		default:
+			return reader.nextString();
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	private static List<Map<String, Object>> castRawList(Object value) {
+		return (List<Map<String, Object>>) value;
+	}
+
+	@SuppressWarnings("unchecked")
+	private static Map<String, Object> castRawMap(Object value) {
+		return (Map<String, Object>) value;
+	}
+
+	// numbers read from JSON are doubles, while numbers read from a JAR have the parameter's type
+	private static Integer toInteger(Object value) {
+		return value == null ? null : ((Number) value).intValue();
+	}
+
+	private static Double toDouble(Object value) {
+		return value == null ? null : ((Number) value).doubleValue();
 	}
 
 
@@ -288,9 +725,9 @@ public class TestBoundsParser {
 		else if (inputMap.containsKey(TYPE_KEY)) {
 			ParameterType<?> paramType;
 			if (className.equals(Integer.class.getName())) {
-				paramType = new ParameterType.IntegerType((Integer) min, (Integer) max);
+				paramType = new ParameterType.IntegerType(toInteger(min), toInteger(max));
 			} else if (className.equals(Double.class.getName())) {
-				paramType = new ParameterType.DoubleType((Double) min, (Double) max);
+				paramType = new ParameterType.DoubleType(toDouble(min), toDouble(max));
 			} else if (className.equals(String.class.getName())) {
 				paramType = new ParameterType.StringType();
 			} else {
@@ -0,0 +1,150 @@
+package contest.winter2017;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.function.Consumer;
+
+/**
+ * Basic tests that become available while the TestBounds map is still being read. A JSON file is
+ * parsed on a separate thread, and the basic tester takes the tests one at a time as they are
+ * parsed, so that the first tests are running while the rest of a large file is read. The queue
+ * between the two is bounded, so the parser never gets far ahead of the tests being run.
+ */
+class TestStream implements Consumer<Test> {
+	/** marks the end of the stream in the queue */
+	private static final Test END = new Test(new ArrayList<String>(), "", "");
+
+	/** tests the parser may get ahead of the basic tester */
+	private static final int QUEUE_CAPACITY = 1024;
+
+	private final BlockingQueue<Test> queue = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+	private Iterator<Test> parsedTests;
+	private Thread parserThread;
+
+	private volatile TestBoundsParser parser;
+	private volatile Exception error;
+	private boolean ended = false;
+
+	/** tests taken from a JSON file, which the parser hands out without keeping them */
+	private final List<Test> taken = new ArrayList<>();
+
+
+	/**
+	 * Creates a stream of tests that were already parsed.
+	 * @param parser - the parsed test bounds
+	 * @return TestStream that holds all tests
+	 */
+	public static TestStream of(TestBoundsParser parser) {
+		TestStream stream = of(parser.getTests());
+		stream.parser = parser;
+		return stream;
+	}
+
+	/**
+	 * Creates a stream of tests that were already parsed.
+	 * @param tests - the tests
+	 * @return TestStream that holds all tests
+	 */
+	public static TestStream of(List<Test> tests) {
+		TestStream stream = new TestStream();
+		stream.parsedTests = tests.iterator();
+		return stream;
+	}
+
+	/**
+	 * Starts parsing a JSON file on a separate thread.
+	 * @param testFile - the JSON file to read from
+	 * @return TestStream that receives the tests as they are parsed
+	 */
+	public static TestStream fromJson(File testFile) {
+		TestStream stream = new TestStream();
+		stream.parserThread = new Thread(() -> stream.parse(testFile));
+		stream.parserThread.setDaemon(true);
+		stream.parserThread.start();
+		return stream;
+	}
+
+	private void parse(File testFile) {
+		try {
+			parser = TestBoundsParser.fromJson(testFile, this);
+		}
+		catch (Exception e) {
+			error = e;
+		}
+		finally {
+			try {
+				queue.put(END);
+			}
+			catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+
+
+	@Override
+	public void accept(Test test) {
+		try {
+			queue.put(test);
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new CancellationException("parsing was interrupted");
+		}
+	}
+
+	/**
+	 * Waits for the next test.
+	 * @return the next test, null once every test has been taken
+	 * @throws InterruptedException
+	 */
+	public Test take() throws InterruptedException {
+		if (ended) {
+			return null;
+		}
+		if (parsedTests != null) {
+			if (parsedTests.hasNext()) {
+				return parsedTests.next();
+			}
+			ended = true;
+			return null;
+		}
+		Test test = queue.take();
+		if (test == END) {
+			ended = true;
+			return null;
+		}
+		taken.add(test);
+		return test;
+	}
+
+	/**
+	 * Waits until the whole file has been parsed. Tests that haven't been taken yet are taken
+	 * first, so that the parser isn't left waiting for room in the queue.
+	 * @return TestBoundsParser with all tests and the parameter factory
+	 * @throws IOException if the file couldn't be parsed
+	 * @throws InterruptedException
+	 */
+	public TestBoundsParser getParser() throws IOException, InterruptedException {
+		if (parserThread == null) {
+			return parser;
+		}
+		while (take() != null) {
+			// the tests are kept in the list of taken tests
+		}
+		parserThread.join();
+		if (error instanceof IOException) {
+			throw (IOException) error;
+		}
+		if (error != null) {
+			throw new IOException(error);
+		}
+		return parser.withTests(taken);
+	}
+}
@@ -1,12 +1,25 @@
 package contest.winter2017;
 
+import java.io.BufferedWriter;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
 import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.stream.Collectors;
 
+import org.apache.commons.io.FileUtils;
 import org.apache.commons.io.FilenameUtils;
 import org.jtwig.JtwigModel;
 import org.jtwig.JtwigTemplate;
@@ -33,7 +46,7 @@ public class Tester {
 	 * A class to store options for testing.
 	 * Used to aid in parsing options from the command line.
 	 */
-	public static class TesterOptions {
+	public static class TesterOptions implements Cloneable {
 		/** path of the jar to test */
 		public String jarToTestPath;
 
@@ -43,12 +56,18 @@ public class Tester {
 		/** path of the directory that jacoco will use for output */
 		public String jacocoOutputDirPath;
 
+		/** path of the jar containing the framework's instrumentation agent, null if unavailable */
+		public String agentJarPath;
+
 		/** path of the jacoco output file */
 		public String jacocoOutputFilePath;
 
 		/** path to the json file to load or save test bounds */
 		public String jsonFilePath;
 
+		/** path to the binary cache of the parsed test bounds */
+		public String testBoundsCachePath;
+
 		/** path to the detailed html output file */
 		public String htmlFilePath;
 
@@ -69,6 +88,91 @@ public class Tester {
 
 		/** when to stop security testing */
 		public int securityTestTime;
+
+		/** use comparison operand feedback to generate security tests */
+		public boolean comparisonFeedback;
+
+		/** use the edge coverage bitmap to guide security tests */
+		public boolean fastCoverage;
+
+		/** direct security tests toward uncovered methods, requires fastCoverage */
+		public boolean directed;
+
+		/** evolve security tests toward inputs that use the most resources */
+		public boolean performanceFuzzing;
+
+		/** summarize the time spent in each phase of a test, and time the children with the agent */
+		public boolean phaseTiming;
+
+		/** include line numbers in error signatures */
+		public boolean errorLineNumbers;
+
+		/** additional stderr line contents that mark a crash */
+		public List<String> crashSignatures;
+
+		/** kill security test children once their stack trace was emitted */
+		public boolean earlyKill;
+
+		/** path of the directory that holds results for incremental re-testing, null to disable */
+		public String runCacheDirPath;
+
+		/** path of the directory that security test campaigns are checkpointed to, null to disable */
+		public String checkpointDirPath;
+
+		/** continue the campaign saved in the checkpoint directory */
+		public boolean resume;
+
+		/** seed of the security tests' random number generator, null for a random seed */
+		public Long seed;
+
+		/** path of the log with a record of every executed test, null to disable */
+		public String resultLogPath;
+
+		/** port of the HTTP server that reports progress, null to disable */
+		public Integer statsPort;
+
+		/** path of the file the final progress metrics are written to, null to disable */
+		public String statsFilePath;
+
+		/** run children without the JaCoCo agent, when no coverage is needed */
+		public boolean disableCoverage;
+
+		/** directory of jars instrumented by JaCoCo ahead of time, null to instrument in every child */
+		public String offlineCacheDirPath;
+
+		/** classes analyzed for coverage as JaCoCo wildcards separated by :, null for all classes */
+		public String coverageIncludes;
+
+		/** classes left out of the coverage as JaCoCo wildcards separated by :, null for none */
+		public String coverageExcludes;
+
+		/** path of another version of the jar that security tests are also run on, null to disable */
+		public String diffJarPath;
+
+		/** execution slots shared with the other jars of a campaign, null to use numThreads of its own */
+		public ExecutionPool executionPool;
+
+		/** workers shared with the other jars of a campaign, null for workers of its own */
+		public ExecutorService executor;
+
+		/** path of the Flight Recorder recording of the run, null to disable */
+		public String profilePath;
+
+		/** encoding of the result log */
+		public ResultLog.Format resultLogFormat = ResultLog.Format.JSONL;
+
+		/**
+		 * Copies the options, e.g. to test another jar of a campaign with the same settings.
+		 * @return shallow copy
+		 */
+		public TesterOptions copy() {
+			try {
+				return (TesterOptions) clone();
+			}
+			catch (CloneNotSupportedException e) {
+				throw new AssertionError(e);
+			}
+		}
 	}
 
 	/**
@@ -82,14 +186,33 @@ public class Tester {
 	private ParameterFactory parameterFactory = null;
 
 	private ProgramRunner programRunner;
+	private ProgramRunner diffRunner;
 	private JacocoCoverageAnalyzer coverage;
+	private CallGraph callGraph;
+	private RunCache runCache;
+	private ResultLog resultLog;
+	private StatsServer statsServer;
+	private String statsFilePath;
+	private boolean campaign;
+
+	// test bounds that may still be loading while the basic tests run
+	private TestStream testStream;
+	private File pendingCacheFile;
+	private String jarHash;
 	private BasicTester basicTester;
 	private SecurityTester securityTester;
 
 	private String jarName;
+	private String jacocoOutputFilePath;
+	private String checkpointDirPath;
+	private boolean optionResume;
+	private Long seed;
 
 	private boolean optionYamlOnly;
 	private boolean optionVerbose;
+	private boolean optionErrorLineNumbers;
+	private boolean optionPhaseTiming;
+	private String profilePath;
 
 	//////////////////////////////////////////
 	// PUBLIC METHODS
@@ -104,30 +227,105 @@ public class Tester {
 
 		this.optionYamlOnly = options.yamlOnly;
 		this.optionVerbose = options.verbose;
+		this.optionErrorLineNumbers = options.errorLineNumbers;
+		this.optionPhaseTiming = options.phaseTiming;
+
+		// first, so that the recording covers loading the test bounds
+		if (options.profilePath != null) {
+			Profiler.startRecording(new File(options.profilePath));
+			this.profilePath = options.profilePath;
+		}
 
 		this.programRunner = new ProgramRunner(options);
 		this.coverage = new JacocoCoverageAnalyzer(options);
 
 		// parse TestBounds file
-		TestBoundsParser testBoundsParser;
+		TestBoundsParser testBoundsParser = null;
+		File jarFileToTest = new File(options.jarToTestPath);
 		File testFile = new File(options.jsonFilePath);
-		if (!options.disableJsonConversion && testFile.exists()) {
-			// test cases are already converted to json, load them
-			testBoundsParser = TestBoundsParser.fromJson(testFile);
+		File cacheFile = new File(options.testBoundsCachePath);
+		String jarHash = RunCache.hashFile(jarFileToTest);
+
+		// a json file modified after the cache was written was edited by hand and takes precedence
+		boolean jsonEdited = testFile.exists() && cacheFile.exists()
+				&& testFile.lastModified() > cacheFile.lastModified();
+		if (!options.disableJsonConversion && !jsonEdited) {
+			// null if the cache is missing or was written for a different jar
+			testBoundsParser = TestBoundsParser.fromCache(cacheFile, jarHash);
 		}
-		else {
-			// instantiating a new Parameter Factory using the Test Bounds map
-			File jarFileToTest = new File(options.jarToTestPath);
-			testBoundsParser = TestBoundsParser.fromJar(jarFileToTest);
-			if (!options.disableJsonConversion) {
-				testBoundsParser.writeJson(testFile);
+
+		if (testBoundsParser == null) {
+			// a json file without a cache is used unless it was generated from another version of
+			// the jar; files without a hash were written by hand or before hashes were recorded
+			String jsonJarHash = testFile.exists() ? TestBoundsParser.readJarHash(testFile) : null;
+			if (!options.disableJsonConversion && testFile.exists()
+					&& (jsonEdited || jsonJarHash == null || jsonJarHash.equals(jarHash))) {
+				// test cases are already converted to json, stream them to the basic tester as they
+				// are parsed, and cache them once the whole file has been read
+				this.testStream = TestStream.fromJson(testFile);
+				this.pendingCacheFile = cacheFile;
+				this.jarHash = jarHash;
+			}
+			else {
+				// instantiating a new Parameter Factory using the Test Bounds map, which also
+				// replaces a json file that was generated from an earlier version of the jar
+				testBoundsParser = TestBoundsParser.fromJar(jarFileToTest);
+				if (!options.disableJsonConversion) {
+					testBoundsParser.writeJson(testFile, jarHash);
+				}
+			}
+			if (testStream == null && !options.disableJsonConversion) {
+				testBoundsParser.writeCache(cacheFile, jarHash);
 			}
 		}
-
-		this.parameterFactory = testBoundsParser.getParameterFactory();
-		this.tests = testBoundsParser.getTests();
+		if (testStream == null) {
+			this.testStream = TestStream.of(testBoundsParser);
+		}
 
 		this.jarName = FilenameUtils.getName(options.jarToTestPath);
+		this.jacocoOutputFilePath = options.jacocoOutputFilePath;
+		this.checkpointDirPath = options.checkpointDirPath;
+		this.optionResume = options.resume;
+		this.seed = options.seed;
+
+		if (options.diffJarPath != null) {
+			// the other version only runs the same inputs, feedback comes from the jar under test, but
+			// both versions run with the same agents so that their timings can be compared
+			TesterOptions diffOptions = options.copy();
+			diffOptions.jarToTestPath = options.diffJarPath;
+			diffOptions.jacocoOutputFilePath = FilenameUtils.removeExtension(options.jacocoOutputFilePath)
+					+ "_diff." + FilenameUtils.getExtension(options.jacocoOutputFilePath);
+			new File(diffOptions.jacocoOutputFilePath).delete();
+			diffOptions.executionPool = null;
+			diffOptions.executor = null;
+			this.diffRunner = new ProgramRunner(diffOptions);
+		}
+
+		if (options.directed) {
+			this.callGraph = CallGraph.fromJar(new File(options.jarToTestPath));
+		}
+
+		if (options.resultLogPath != null) {
+			this.resultLog = new ResultLog(new File(options.resultLogPath), options.resultLogFormat);
+		}
+
+		if (options.runCacheDirPath != null) {
+			this.runCache = RunCache.open(new File(options.runCacheDirPath), new File(options.jarToTestPath));
+			if (!optionYamlOnly && runCache.getChangedClassCount() >= 0) {
+				System.out.println("Run cache: " + runCache.getChangedClassCount()
+						+ " classes changed since the previous run");
+			}
+		}
+
+		this.statsFilePath = options.statsFilePath;
+		this.campaign = options.executionPool != null;
+		if (options.statsPort != null) {
+			this.statsServer = new StatsServer(options.statsPort, programRunner.getMetrics());
+			if (!optionYamlOnly) {
+				System.out.printf("Serving progress at http://localhost:%d/stats and /metrics%n",
+						statsServer.getPort());
+			}
+		}
 	}
 
 
@@ -139,6 +337,12 @@ public class Tester {
 		System.out.println("Total code coverage percentage: " +
 				coverage.generateSummaryCodeCoverageResults());
 		System.out.println(securityTester.getYaml());
+		if (securityTester.getWorstInputs() != null) {
+			System.out.println(securityTester.getWorstInputs().getYaml());
+		}
+		if (optionPhaseTiming) {
+			System.out.println(programRunner.getMetrics().getPhases().getYaml());
+		}
 	}
 
 
@@ -146,10 +350,18 @@ public class Tester {
 	 * Execute basic tests, and print information.
 	 */
 	public void executeBasicTests() {
-		basicTester = new BasicTester(programRunner);
+		basicTester = new BasicTester(programRunner, runCache);
+		basicTester.setResultLog(resultLog);
 
 		try {
-			basicTester.runTests(this.tests);
+			basicTester.runTests(this.testStream);
+			finishLoadingTestBounds();
+			if (runCache != null) {
+				// executed and reused tests wrote their coverage to the cache, not the shared file
+				runCache.mergeCoverage(new File(jacocoOutputFilePath));
+				// so that the results of the basic tests are kept even if security testing fails
+				runCache.save();
+			}
 		}
 		catch (Exception e) {
 			if (!optionYamlOnly) {
@@ -161,6 +373,7 @@ public class Tester {
 
 		// print the basic test results and the code coverage associated with the basic tests
 		double percentCovered = coverage.generateSummaryCodeCoverageResults();
+		programRunner.getMetrics().recordCoverage(percentCovered);
 
 		if (!optionYamlOnly) {
 			basicTester.printInfo(optionVerbose);
@@ -174,10 +387,29 @@ public class Tester {
 	 * Execute security tests, and print information.
 	 */
 	public void executeSecurityTests() {
-		securityTester = new SecurityTester(programRunner);
+		securityTester = new SecurityTester(programRunner, coverage, callGraph, optionErrorLineNumbers);
+		if (runCache != null) {
+			securityTester.setSeedInputs(runCache.getCorpus());
+		}
+		if (seed != null) {
+			securityTester.setSeed(seed);
+		}
+		securityTester.setResultLog(resultLog);
+		securityTester.setDiffRunner(diffRunner);
+		// a campaign tells the progress of a jar by its coverage
+		securityTester.setCoverageHistory(statsServer != null || statsFilePath != null || campaign);
 
 		try {
+			if (checkpointDirPath != null) {
+				securityTester.setCheckpoint(new Checkpoint(new File(checkpointDirPath), new File(jacocoOutputFilePath)),
+						optionResume);
+			}
+			finishLoadingTestBounds();
 			securityTester.runTests(parameterFactory, this.tests);
+			if (runCache != null) {
+				runCache.setCorpus(securityTester.getCorpus().getEntries());
+				runCache.save();
+			}
 		}
 		catch (Exception e) {
 			if (!optionYamlOnly) {
@@ -201,6 +433,66 @@ public class Tester {
 	//////////////////////////////////////////
 
 
+	/**
+	 * Stops the services that run alongside the tests, and writes the rest of the result log.
+	 */
+	public void close() {
+		if (resultLog != null) {
+			try {
+				resultLog.close();
+			}
+			catch (IOException | InterruptedException e) {
+				if (!optionYamlOnly) {
+					System.out.println("Error writing the result log: " + e);
+				}
+			}
+		}
+		if (programRunner != null) {
+			programRunner.close();
+		}
+		if (diffRunner != null) {
+			diffRunner.close();
+		}
+		if (statsFilePath != null && programRunner != null) {
+			try {
+				FileUtils.writeStringToFile(new File(statsFilePath),
+						StatsServer.getJson(programRunner.getMetrics()), StandardCharsets.UTF_8);
+			}
+			catch (IOException e) {
+				if (!optionYamlOnly) {
+					System.out.println("Error writing the stats file: " + e);
+				}
+			}
+		}
+		if (statsServer != null) {
+			statsServer.stop();
+		}
+		if (profilePath != null) {
+			Profiler.stopRecording();
+			if (!optionYamlOnly) {
+				System.out.println("Flight Recorder profile was written to " + profilePath + ".");
+			}
+		}
+	}
+
+
+	/**
+	 * Waits until the TestBounds map has been read completely, which may still be in progress
+	 * when basic tests start, and writes the binary cache if the map came from a JSON file.
+	 */
+	private void finishLoadingTestBounds() throws IOException, InterruptedException {
+		if (this.tests != null) {
+			return;
+		}
+		TestBoundsParser testBoundsParser = testStream.getParser();
+		this.parameterFactory = testBoundsParser.getParameterFactory();
+		this.tests = testBoundsParser.getTests();
+		if (pendingCacheFile != null) {
+			testBoundsParser.writeCache(pendingCacheFile, jarHash);
+		}
+	}
+
+
 	/**
 	 * Method used to print the basic test output (std out/err)
 	 * @param output - Output object containing std out/err to print 
@@ -212,12 +504,11 @@ public class Tester {
 
 
 	public void generateHtmlOutput(String path) {
-		EnvironmentConfiguration env = EnvironmentConfigurationBuilder.configuration().functions().add(new JtwigClassFunction()).and().build();
+		EnvironmentConfiguration env = EnvironmentConfigurationBuilder.configuration().build();
 		JtwigTemplate template = JtwigTemplate.classpathTemplate("/output.twig", env);
 		JtwigModel model = JtwigModel.newModel();
 		model.with("jarName", jarName);
-		model.with("coverage", coverage.generateDetailedCodeCoverageResults());
-		model.with("summary", coverage.generateSummaryCodeCoverageResults());
+		model.with("phases", optionPhaseTiming ? programRunner.getMetrics().getPhases().getSummaries() : null);
 
 		model.with("basic", basicTester);
 		model.with("security", securityTester);
@@ -225,20 +516,61 @@ public class Tester {
 		model.with("timestamp", new SimpleDateFormat("MM/dd/yyyy HH:mm:ss").format(new Date()));
 
 		File htmlFile = new File(path);
-		try {
-			FileOutputStream out = new FileOutputStream(htmlFile);
-			template.render(model, out);
-			out.close();
-
-			if (!optionYamlOnly) {
-				System.out.println("Detailed HTML output was generated to " + path + ".");
-				System.out.println();
+		Profiler.Span span = Profiler.begin(Profiler.Operation.REPORT, "html");
+		try (Writer out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(htmlFile), StandardCharsets.UTF_8))) {
+			// the template renders the page up to the classes, which are written one at a time while
+			// the coverage is analyzed, and then the end of the page with the totals of the analysis
+			out.write(template.render(model.with("part", "start")));
+			JacocoCoverageAnalyzer.Analysis analysis;
+			try {
+				analysis = coverage.analyze(new CoverageReportWriter(out));
+			}
+			catch (UncheckedIOException e) {
+				throw e.getCause();
 			}
+			model.with("summary", analysis.getPercentCovered());
+			model.with("uncoveredMethods", getUncoveredMethods(analysis.getMethodCoverage()));
+			out.write(template.render(model.with("part", "end")));
 		}
 		catch (Exception ex) {
+			span.end(0, 0, "error");
 			ex.printStackTrace();
+			return;
+		}
+		span.end(0, htmlFile.length(), "ok");
+
+		if (!optionYamlOnly) {
+			System.out.println("Detailed HTML output was generated to " + path + ".");
+			System.out.println();
+		}
+	}
+
+
+	/**
+	 * Lists the methods that were never entered, with the number of calls needed to reach them
+	 * from covered code if the call graph is available.
+	 * @param methodCoverage - whether each method was entered
+	 * @return List of maps with the keys "name" and "distance" (null if unknown or unreachable)
+	 */
+	private List<Map<String, Object>> getUncoveredMethods(Map<String, Boolean> methodCoverage) {
+		List<Map<String, Object>> uncovered = new ArrayList<>();
+
+		Map<String, Integer> distances = Collections.emptyMap();
+		if (callGraph != null) {
+			Set<String> covered = methodCoverage.keySet().stream()
+					.filter(methodCoverage::get).collect(Collectors.toSet());
+			distances = callGraph.getDistancesFrom(covered);
 		}
 
+		for (Map.Entry<String, Boolean> entry : methodCoverage.entrySet()) {
+			if (!entry.getValue()) {
+				Map<String, Object> method = new HashMap<>();
+				method.put("name", entry.getKey());
+				method.put("distance", distances.get(entry.getKey()));
+				uncovered.add(method);
+			}
+		}
+		return uncovered;
 	}
 
 }
@@ -0,0 +1,91 @@
+package contest.winter2017;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.function.ToLongFunction;
+
+/**
+ * Keeps the inputs with the highest CPU time and the highest peak memory seen during performance
+ * fuzzing, along with their resource profiles. An input that makes it into either list is a new
+ * worst case, and is added to the corpus so that later tests are derived from it.
+ */
+public class WorstInputs {
+	/**
+	 * number of inputs kept in each list
+	 */
+	private static final int MAX_ENTRIES = 10;
+
+	private final List<Output> slowest = new ArrayList<>();
+	private final List<Output> largest = new ArrayList<>();
+
+
+	/**
+	 * Records the resource usage of a finished run.
+	 * @param output - output of the run
+	 * @return true if the run is among the worst seen so far in CPU time or memory
+	 */
+	public synchronized boolean offer(Output output) {
+		ResourceUsage usage = output.getResourceUsage();
+		boolean worst = false;
+		if (usage.getCpuMillis() > 0) {
+			worst |= insert(slowest, output, o -> o.getResourceUsage().getCpuMillis());
+		}
+		if (usage.getPeakRssKb() > 0) {
+			worst |= insert(largest, output, o -> o.getResourceUsage().getPeakRssKb());
+		}
+		return worst;
+	}
+
+	private static boolean insert(List<Output> list, Output output, ToLongFunction<Output> cost) {
+		if (list.size() == MAX_ENTRIES && cost.applyAsLong(output) <= cost.applyAsLong(list.get(list.size() - 1))) {
+			return false;
+		}
+		list.add(output);
+		list.sort(Comparator.comparingLong(cost).reversed());
+		if (list.size() > MAX_ENTRIES) {
+			list.remove(list.size() - 1);
+		}
+		return true;
+	}
+
+
+	/**
+	 * Getter for the inputs that used the most CPU time
+	 * @return List of outputs, most expensive first
+	 */
+	public synchronized List<Output> getSlowest() {
+		return new ArrayList<>(slowest);
+	}
+
+	/**
+	 * Getter for the inputs that reached the highest peak resident set size
+	 * @return List of outputs, most expensive first
+	 */
+	public synchronized List<Output> getLargest() {
+		return new ArrayList<>(largest);
+	}
+
+
+	public String getYaml() {
+		StringBuilder sb = new StringBuilder();
+		appendYaml(sb, "Slowest inputs", getSlowest());
+		appendYaml(sb, "Largest inputs", getLargest());
+		return sb.toString();
+	}
+
+	private static void appendYaml(StringBuilder sb, String title, List<Output> outputs) {
+		if (outputs.isEmpty()) {
+			sb.append(title + ": []\n");
+			return;
+		}
+		sb.append(title + ":\n");
+		for (Output output : outputs) {
+			ResourceUsage usage = output.getResourceUsage();
+			sb.append("  - parameters: " + output.getParameters() + "\n");
+			sb.append("    cpu ms: " + usage.getCpuMillis() + "\n");
+			sb.append("    wall ms: " + usage.getWallMillis() + "\n");
+			sb.append("    peak rss kb: " + usage.getPeakRssKb() + "\n");
+		}
+	}
+}
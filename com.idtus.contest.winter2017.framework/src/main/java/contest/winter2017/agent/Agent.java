@@ -0,0 +1,102 @@
+package contest.winter2017.agent;
+
+import java.lang.instrument.Instrumentation;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Entry-point of the lightweight instrumentation agent bundled with the framework.
+ *
+ * The framework jar doubles as the agent jar: the harness launches the jar under test with
+ * -javaagent:&lt;framework jar&gt;=&lt;options&gt; in addition to the jacoco agent. Options are given
+ * as comma-separated key=value pairs, in the same style as the jacoco agent.
+ *
+ * The agent must be specified after the jacoco agent on the command line, so that jacoco sees
+ * the original class bytes and computes class ids that match the jar under test.
+ */
+public class Agent {
+
+	/**
+	 * agent option for the file that receives the comparison operand log
+	 */
+	public static final String CMPLOG_OPTION = "cmplog";
+
+	/**
+	 * agent option for the memory-mapped edge coverage bitmap
+	 */
+	public static final String EDGES_OPTION = "edges";
+
+	/**
+	 * agent option for the file that receives the phase timing of the child
+	 */
+	public static final String TIMING_OPTION = "timing";
+
+	/**
+	 * class name prefixes that are never instrumented
+	 */
+	private static final String[] EXCLUDED_PREFIXES = new String[] {
+		"java/", "javax/", "jdk/", "sun/", "com/sun/",
+		"contest/winter2017/", "org/objectweb/asm/", "org/jacoco/"
+	};
+
+	public static void premain(String args, Instrumentation inst) {
+		Map<String, String> options = parseOptions(args);
+
+		String cmpLogPath = options.get(CMPLOG_OPTION);
+		if (cmpLogPath != null) {
+			ComparisonLog.init(cmpLogPath);
+			inst.addTransformer(new ComparisonTransformer());
+		}
+
+		String edgesPath = options.get(EDGES_OPTION);
+		if (edgesPath != null) {
+			EdgeMap.init(edgesPath);
+			inst.addTransformer(new EdgeTransformer());
+		}
+
+		// last, so that the setup of the other options counts as startup
+		String timingPath = options.get(TIMING_OPTION);
+		if (timingPath != null) {
+			PhaseClock.init(timingPath);
+		}
+	}
+
+	/**
+	 * Builds the -javaagent argument used to launch a child with this agent.
+	 * @param agentJarPath - path to the jar containing this class
+	 * @param options - agent options
+	 * @return String to pass on the java command line
+	 */
+	public static String getJavaAgentArgument(String agentJarPath, Map<String, String> options) {
+		StringBuilder sb = new StringBuilder("-javaagent:").append(agentJarPath);
+		char sep = '=';
+		for (Map.Entry<String, String> option : options.entrySet()) {
+			sb.append(sep).append(option.getKey()).append('=').append(option.getValue());
+			sep = ',';
+		}
+		return sb.toString();
+	}
+
+	static boolean isExcluded(String className) {
+		for (String prefix : EXCLUDED_PREFIXES) {
+			if (className.startsWith(prefix)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private static Map<String, String> parseOptions(String args) {
+		Map<String, String> options = new HashMap<>();
+		if (args == null || args.isEmpty()) {
+			return options;
+		}
+		for (String option : args.split(",")) {
+			int sep = option.indexOf('=');
+			if (sep > 0) {
+				options.put(option.substring(0, sep), option.substring(sep + 1));
+			}
+		}
+		return options;
+	}
+}
@@ -0,0 +1,154 @@
+package contest.winter2017.agent;
+
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Runtime half of the comparison operand feedback. Instrumented code in the jar under test
+ * calls these methods in place of the original comparisons; the operands are recorded and
+ * written to the log file when the child exits.
+ *
+ * Each line of the log is a kind character followed by the two tab-separated operands:
+ * S for string comparisons, I for integer comparisons and P for strings passed to parseInt
+ * (which have no second operand).
+ */
+public class ComparisonLog {
+
+	public static final char STRING_KIND = 'S';
+	public static final char INTEGER_KIND = 'I';
+	public static final char PARSE_INT_KIND = 'P';
+
+	/**
+	 * maximum number of distinct comparisons recorded by a single execution
+	 */
+	private static final int MAX_ENTRIES = 4096;
+
+	/**
+	 * maximum length of a recorded string operand
+	 */
+	private static final int MAX_OPERAND_LENGTH = 256;
+
+	private static final Map<String, Boolean> entries = new ConcurrentHashMap<>();
+	private static volatile boolean enabled = false;
+
+	private ComparisonLog() {
+	}
+
+	static void init(final String path) {
+		enabled = true;
+		Runtime.getRuntime().addShutdownHook(new Thread(() -> write(path)));
+	}
+
+	public static boolean stringEquals(String left, Object right) {
+		boolean result = left.equals(right);
+		if (!result && right instanceof String) {
+			record(STRING_KIND, left, (String) right);
+		}
+		return result;
+	}
+
+	public static int stringCompareTo(String left, String right) {
+		int result = left.compareTo(right);
+		if (result != 0) {
+			record(STRING_KIND, left, right);
+		}
+		return result;
+	}
+
+	public static int parseInt(String value) {
+		try {
+			return Integer.parseInt(value);
+		}
+		catch (NumberFormatException e) {
+			record(PARSE_INT_KIND, value, "");
+			throw e;
+		}
+	}
+
+	public static void compareInts(int left, int right) {
+		if (left != right) {
+			record(INTEGER_KIND, String.valueOf(left), String.valueOf(right));
+		}
+	}
+
+	private static void record(char kind, String left, String right) {
+		if (!enabled || left == null || entries.size() >= MAX_ENTRIES
+				|| left.length() > MAX_OPERAND_LENGTH || right.length() > MAX_OPERAND_LENGTH) {
+			return;
+		}
+		entries.put(kind + escape(left) + '\t' + escape(right), Boolean.TRUE);
+	}
+
+	private static void write(String path) {
+		try (Writer writer = new OutputStreamWriter(new FileOutputStream(path), StandardCharsets.UTF_8)) {
+			for (String entry : entries.keySet()) {
+				writer.write(entry);
+				writer.write('\n');
+			}
+		}
+		catch (IOException e) {
+			// nothing sensible to do inside the jar under test
+		}
+	}
+
+	private static String escape(String value) {
+		StringBuilder sb = new StringBuilder(value.length());
+		for (int i = 0; i < value.length(); i++) {
+			char c = value.charAt(i);
+			switch (c) {
+			case '\\':
+				sb.append("\\\\");
+				break;
+			case '\t':
+				sb.append("\\t");
+				break;
+			case '\n':
+				sb.append("\\n");
+				break;
+			case '\r':
+				sb.append("\\r");
+				break;
+			default:
+				sb.append(c);
+			}
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * Reverses the escaping applied to operands in the log file.
+	 * @param value - escaped operand
+	 * @return original operand
+	 */
+	public static String unescape(String value) {
+		StringBuilder sb = new StringBuilder(value.length());
+		for (int i = 0; i < value.length(); i++) {
+			char c = value.charAt(i);
+			if (c == '\\' && i + 1 < value.length()) {
+				char next = value.charAt(++i);
+				switch (next) {
+				case 't':
+					sb.append('\t');
+					break;
+				case 'n':
+					sb.append('\n');
+					break;
+				case 'r':
+					sb.append('\r');
+					break;
+				default:
+					sb.append(next);
+				}
+			}
+			else {
+				sb.append(c);
+			}
+		}
+		return sb.toString();
+	}
+}
@@ -0,0 +1,87 @@
+package contest.winter2017.agent;
+
+import java.lang.instrument.ClassFileTransformer;
+import java.security.ProtectionDomain;
+
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.ClassVisitor;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.Label;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+
+/**
+ * Rewrites String.equals, String.compareTo and Integer.parseInt call sites and if_icmp
+ * instructions so that their operands are reported to {@link ComparisonLog}.
+ *
+ * No branches are added, so existing stack map frames remain valid and only the maximum
+ * stack size needs to be recomputed.
+ */
+class ComparisonTransformer implements ClassFileTransformer {
+
+	private static final String RUNTIME = "contest/winter2017/agent/ComparisonLog";
+
+	@Override
+	public byte[] transform(ClassLoader loader, String className, Class<?> classBeingRedefined,
+			ProtectionDomain protectionDomain, byte[] classfileBuffer) {
+		if (loader == null || className == null || Agent.isExcluded(className)) {
+			return null;
+		}
+
+		try {
+			ClassReader reader = new ClassReader(classfileBuffer);
+			ClassWriter writer = new ClassWriter(reader, ClassWriter.COMPUTE_MAXS);
+			reader.accept(new ClassVisitor(Opcodes.ASM5, writer) {
+				@Override
+				public MethodVisitor visitMethod(int access, String name, String desc,
+						String signature, String[] exceptions) {
+					MethodVisitor mv = super.visitMethod(access, name, desc, signature, exceptions);
+					return mv == null ? null : new ComparisonMethodAdapter(mv);
+				}
+			}, 0);
+			return writer.toByteArray();
+		}
+		catch (Throwable t) {
+			// leave classes we can't handle (e.g. newer class file versions) untouched
+			return null;
+		}
+	}
+
+	private static class ComparisonMethodAdapter extends MethodVisitor {
+
+		public ComparisonMethodAdapter(MethodVisitor mv) {
+			super(Opcodes.ASM5, mv);
+		}
+
+		@Override
+		public void visitJumpInsn(int opcode, Label label) {
+			if (opcode >= Opcodes.IF_ICMPEQ && opcode <= Opcodes.IF_ICMPLE) {
+				super.visitInsn(Opcodes.DUP2);
+				super.visitMethodInsn(Opcodes.INVOKESTATIC, RUNTIME, "compareInts", "(II)V", false);
+			}
+			super.visitJumpInsn(opcode, label);
+		}
+
+		@Override
+		public void visitMethodInsn(int opcode, String owner, String name, String desc, boolean itf) {
+			if (opcode == Opcodes.INVOKEVIRTUAL && owner.equals("java/lang/String")) {
+				if (name.equals("equals") && desc.equals("(Ljava/lang/Object;)Z")) {
+					super.visitMethodInsn(Opcodes.INVOKESTATIC, RUNTIME, "stringEquals",
+							"(Ljava/lang/String;Ljava/lang/Object;)Z", false);
+					return;
+				}
+				if (name.equals("compareTo") && desc.equals("(Ljava/lang/String;)I")) {
+					super.visitMethodInsn(Opcodes.INVOKESTATIC, RUNTIME, "stringCompareTo",
+							"(Ljava/lang/String;Ljava/lang/String;)I", false);
+					return;
+				}
+			}
+			else if (opcode == Opcodes.INVOKESTATIC && owner.equals("java/lang/Integer")
+					&& name.equals("parseInt") && desc.equals("(Ljava/lang/String;)I")) {
+				super.visitMethodInsn(Opcodes.INVOKESTATIC, RUNTIME, "parseInt", desc, false);
+				return;
+			}
+			super.visitMethodInsn(opcode, owner, name, desc, itf);
+		}
+	}
+}
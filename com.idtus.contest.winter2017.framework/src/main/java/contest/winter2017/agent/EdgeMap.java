@@ -0,0 +1,109 @@
+package contest.winter2017.agent;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Runtime half of the edge coverage bitmap. Instrumented code calls {@link #hit(int)} at the
+ * start of every basic block; the edge between the previous and the current block is counted
+ * in a memory-mapped file shared with the harness, in the style of AFL.
+ *
+ * Since the counts are written straight into the page cache, the harness can read them as soon
+ * as the child exits, without any dump at shutdown.
+ *
+ * The edge counts are followed by a region that marks the methods that were entered, which is
+ * used to direct black box tests toward methods that have not been covered yet.
+ */
+public class EdgeMap {
+
+	/**
+	 * size of the bitmap in bytes, must be a power of two
+	 */
+	public static final int MAP_SIZE = 1 << 16;
+
+	/**
+	 * size of the method entry region in bytes, must be a power of two
+	 */
+	public static final int METHOD_MAP_SIZE = 1 << 14;
+
+	/**
+	 * size of the whole file shared with the harness
+	 */
+	public static final int FILE_SIZE = MAP_SIZE + METHOD_MAP_SIZE;
+
+	private static volatile MappedByteBuffer map = null;
+
+	/**
+	 * previous block of each thread, so that edges are only counted between blocks that ran one
+	 * after the other
+	 */
+	private static final ThreadLocal<int[]> previous = new ThreadLocal<int[]>() {
+		@Override
+		protected int[] initialValue() {
+			return new int[1];
+		}
+	};
+
+	private EdgeMap() {
+	}
+
+	static void init(String path) {
+		try (RandomAccessFile file = new RandomAccessFile(path, "rw")) {
+			// the mapping stays valid after the channel is closed
+			map = file.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, FILE_SIZE);
+		}
+		catch (IOException e) {
+			// coverage feedback is best effort, the jar under test must still run
+		}
+	}
+
+	public static void hit(int block) {
+		MappedByteBuffer m = map;
+		if (m == null) {
+			return;
+		}
+		int[] last = previous.get();
+		int index = (block ^ last[0]) & (MAP_SIZE - 1);
+		byte count = m.get(index);
+		if (count != (byte) 0xff) {
+			m.put(index, (byte) (count + 1));
+		}
+		last[0] = block >>> 1;
+	}
+
+	public static void enter(int method) {
+		MappedByteBuffer m = map;
+		if (m != null) {
+			m.put(MAP_SIZE + method, (byte) 1);
+		}
+	}
+
+	/**
+	 * Computes the slot of a method in the method entry region.
+	 * @param className - internal name of the class
+	 * @param method - name and descriptor of the method
+	 * @return index into the method entry region
+	 */
+	public static int methodSlot(String className, String method) {
+		return blockId(className, method, -1) & (METHOD_MAP_SIZE - 1);
+	}
+
+	/**
+	 * Computes the id of a basic block. The id only depends on the location of the block, so
+	 * that it is the same in every execution of the jar under test.
+	 * @param className - internal name of the class
+	 * @param method - name and descriptor of the method
+	 * @param index - index of the block within the method
+	 * @return block id
+	 */
+	public static int blockId(String className, String method, int index) {
+		int h = className.hashCode() * 31 + method.hashCode();
+		h = h * 0x9e3779b1 + index;
+		h ^= h >>> 16;
+		h *= 0x85ebca6b;
+		h ^= h >>> 13;
+		return h;
+	}
+}
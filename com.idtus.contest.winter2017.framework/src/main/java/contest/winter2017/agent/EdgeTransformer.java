@@ -0,0 +1,170 @@
+package contest.winter2017.agent;
+
+import java.lang.instrument.ClassFileTransformer;
+import java.security.ProtectionDomain;
+
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.ClassVisitor;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.Handle;
+import org.objectweb.asm.Label;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+
+/**
+ * Inserts a call to {@link EdgeMap#hit(int)} at the start of every method, at every label and
+ * after every conditional jump, and a call to {@link EdgeMap#enter(int)} at the start of every
+ * method. The calls are emitted lazily before the next instruction, so that they always follow
+ * the stack map frame of a label.
+ */
+class EdgeTransformer implements ClassFileTransformer {
+
+	private static final String RUNTIME = "contest/winter2017/agent/EdgeMap";
+
+	@Override
+	public byte[] transform(ClassLoader loader, final String className, Class<?> classBeingRedefined,
+			ProtectionDomain protectionDomain, byte[] classfileBuffer) {
+		if (loader == null || className == null || Agent.isExcluded(className)) {
+			return null;
+		}
+
+		try {
+			ClassReader reader = new ClassReader(classfileBuffer);
+			ClassWriter writer = new ClassWriter(reader, ClassWriter.COMPUTE_MAXS);
+			reader.accept(new ClassVisitor(Opcodes.ASM5, writer) {
+				@Override
+				public MethodVisitor visitMethod(int access, String name, String desc,
+						String signature, String[] exceptions) {
+					MethodVisitor mv = super.visitMethod(access, name, desc, signature, exceptions);
+					return mv == null ? null : new EdgeMethodAdapter(mv, className, name + desc);
+				}
+			}, 0);
+			return writer.toByteArray();
+		}
+		catch (Throwable t) {
+			// leave classes we can't handle (e.g. newer class file versions) untouched
+			return null;
+		}
+	}
+
+	private static class EdgeMethodAdapter extends MethodVisitor {
+		private final String className;
+		private final String method;
+		private int blockIndex = 0;
+		private boolean pending = false;
+		private boolean entered = false;
+
+		public EdgeMethodAdapter(MethodVisitor mv, String className, String method) {
+			super(Opcodes.ASM5, mv);
+			this.className = className;
+			this.method = method;
+		}
+
+		private void flush() {
+			if (!entered) {
+				entered = true;
+				super.visitLdcInsn(EdgeMap.methodSlot(className, method));
+				super.visitMethodInsn(Opcodes.INVOKESTATIC, RUNTIME, "enter", "(I)V", false);
+			}
+			if (pending) {
+				pending = false;
+				super.visitLdcInsn(EdgeMap.blockId(className, method, blockIndex++));
+				super.visitMethodInsn(Opcodes.INVOKESTATIC, RUNTIME, "hit", "(I)V", false);
+			}
+		}
+
+		@Override
+		public void visitCode() {
+			super.visitCode();
+			pending = true;
+		}
+
+		@Override
+		public void visitLabel(Label label) {
+			super.visitLabel(label);
+			pending = true;
+		}
+
+		@Override
+		public void visitInsn(int opcode) {
+			flush();
+			super.visitInsn(opcode);
+		}
+
+		@Override
+		public void visitIntInsn(int opcode, int operand) {
+			flush();
+			super.visitIntInsn(opcode, operand);
+		}
+
+		@Override
+		public void visitVarInsn(int opcode, int var) {
+			flush();
+			super.visitVarInsn(opcode, var);
+		}
+
+		@Override
+		public void visitTypeInsn(int opcode, String type) {
+			flush();
+			super.visitTypeInsn(opcode, type);
+		}
+
+		@Override
+		public void visitFieldInsn(int opcode, String owner, String name, String desc) {
+			flush();
+			super.visitFieldInsn(opcode, owner, name, desc);
+		}
+
+		@Override
+		public void visitMethodInsn(int opcode, String owner, String name, String desc, boolean itf) {
+			flush();
+			super.visitMethodInsn(opcode, owner, name, desc, itf);
+		}
+
+		@Override
+		public void visitInvokeDynamicInsn(String name, String desc, Handle bsm, Object... bsmArgs) {
+			flush();
+			super.visitInvokeDynamicInsn(name, desc, bsm, bsmArgs);
+		}
+
+		@Override
+		public void visitJumpInsn(int opcode, Label label) {
+			flush();
+			super.visitJumpInsn(opcode, label);
+			// the fall-through of a conditional jump starts a new block
+			if (opcode != Opcodes.GOTO && opcode != Opcodes.JSR) {
+				pending = true;
+			}
+		}
+
+		@Override
+		public void visitLdcInsn(Object cst) {
+			flush();
+			super.visitLdcInsn(cst);
+		}
+
+		@Override
+		public void visitIincInsn(int var, int increment) {
+			flush();
+			super.visitIincInsn(var, increment);
+		}
+
+		@Override
+		public void visitTableSwitchInsn(int min, int max, Label dflt, Label... labels) {
+			flush();
+			super.visitTableSwitchInsn(min, max, dflt, labels);
+		}
+
+		@Override
+		public void visitLookupSwitchInsn(Label dflt, int[] keys, Label[] labels) {
+			flush();
+			super.visitLookupSwitchInsn(dflt, keys, labels);
+		}
+
+		@Override
+		public void visitMultiANewArrayInsn(String desc, int dims) {
+			flush();
+			super.visitMultiANewArrayInsn(desc, dims);
+		}
+	}
+}
@@ -1,18 +1,45 @@
 package securitytests;
 
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Random;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
-import contest.winter2017.Test;
+import contest.winter2017.Corpus;
+import contest.winter2017.DependentParameterFactory;
+import contest.winter2017.FixedParameterFactory;
+import contest.winter2017.Parameter;
+import contest.winter2017.ParameterFactory;
+import contest.winter2017.ParameterType;
 
+/**
+ * Generates test inputs by corrupting inputs from the corpus, which holds the basic tests
+ * and any inputs that were found to exercise new behavior.
+ *
+ * Half of the corruptions are structure-aware: integers, doubles and values inside formatted
+ * parameters are perturbed arithmetically or swapped with boundary values, and parameters are
+ * spliced in from other inputs, so that the result usually still parses. The other half flip
+ * characters at random.
+ */
 public class CorruptedInputTest implements SecurityTest {
+	/**
+	 * largest amount added to or subtracted from a number, as in AFL's arithmetic stage
+	 */
+	private static final int ARITH_MAX = 35;
 
-	private final List<Test> basicTests;
+	private static final Pattern INTEGER_PATTERN = Pattern.compile("-?[0-9]+");
+	private static final Pattern DOUBLE_PATTERN = Pattern.compile("-?[0-9]*\\.[0-9]+([eE][-+]?[0-9]+)?");
+	private static final Pattern NUMBER_PATTERN = Pattern.compile("-?[0-9]+(\\.[0-9]+)?");
+
+	private final Corpus corpus;
 	private final Random random;
+	private final List<Parameter> formattedParameters;
 
-	public CorruptedInputTest(List<Test> basicTests, Random random) {
-		this.basicTests = basicTests;
+	public CorruptedInputTest(Corpus corpus, ParameterFactory parameterFactory, Random random) {
+		this.corpus = corpus;
 		this.random = random;
+		this.formattedParameters = getFormattedParameters(parameterFactory);
 	}
 
 	@Override
@@ -23,12 +50,11 @@ public class CorruptedInputTest implements SecurityTest {
 	}
 
 	public List<String> getNextInput() {
-		Test test = Util.pickRandomValue(basicTests, random);
-		List<String> startParams = test.getParameters();
+		List<String> startParams = corpus.pick(random);
 
 		// add an extra parameter
-		if (random.nextInt(8) == 0) {
-			startParams.add(random.nextInt(startParams.size()), BoundaryValues.pickRandomString(random));
+		if (random.nextInt(8) == 0 || startParams.isEmpty()) {
+			startParams.add(random.nextInt(startParams.size() + 1), BoundaryValues.pickRandomString(random));
 		}
 
 		// remove a parameter
@@ -38,11 +64,20 @@ public class CorruptedInputTest implements SecurityTest {
 
 		// corrupt a parameter
 		int paramPos = random.nextInt(startParams.size());
-		StringBuilder param = new StringBuilder(startParams.get(paramPos));
-		if (param.length() == 0) {
-			return startParams;
+		String param = startParams.get(paramPos);
+		if (random.nextBoolean()) {
+			param = mutateStructure(param);
+		}
+		else {
+			param = corruptCharacters(param);
 		}
 
+		startParams.set(paramPos, param);
+		return startParams;
+	}
+
+	private String corruptCharacters(String value) {
+		StringBuilder param = new StringBuilder(value);
 		int nextVal = param.length() / 2;
 
 		if (nextVal > 0) {
@@ -65,9 +100,158 @@ public class CorruptedInputTest implements SecurityTest {
 				}
 			}
 		}
+		return param.toString();
+	}
+
+	/**
+	 * Mutates a parameter according to what it looks like, keeping its structure intact.
+	 */
+	private String mutateStructure(String param) {
+		// splice in a parameter from another input
+		if (random.nextInt(4) == 0) {
+			List<String> other = corpus.pick(random);
+			if (!other.isEmpty()) {
+				return Util.pickRandomValue(other, random);
+			}
+		}
 
-		startParams.set(paramPos, param.toString());
-		return startParams;
+		if (INTEGER_PATTERN.matcher(param).matches()) {
+			return mutateInteger(param);
+		}
+		if (DOUBLE_PATTERN.matcher(param).matches()) {
+			return mutateDouble(param);
+		}
+
+		// a formatted parameter, mutate one of its values
+		List<Parameter> formats = new ArrayList<>();
+		for (Parameter parameter : formattedParameters) {
+			if (parameter.parseFormattedValues(param) != null) {
+				formats.add(parameter);
+			}
+		}
+		if (!formats.isEmpty()) {
+			return mutateFormatted(Util.pickRandomValue(formats, random), param);
+		}
+
+		// a number embedded in free text
+		List<int[]> numbers = new ArrayList<>();
+		Matcher m = NUMBER_PATTERN.matcher(param);
+		while (m.find()) {
+			numbers.add(new int[] { m.start(), m.end() });
+		}
+		if (!numbers.isEmpty()) {
+			int[] number = Util.pickRandomValue(numbers, random);
+			String value = param.substring(number[0], number[1]);
+			String mutated = value.contains(".") ? mutateDouble(value) : mutateInteger(value);
+			return param.substring(0, number[0]) + mutated + param.substring(number[1]);
+		}
+
+		return corruptCharacters(param);
+	}
+
+	private String mutateFormatted(Parameter parameter, String param) {
+		List<String> values = parameter.parseFormattedValues(param);
+		if (values.isEmpty()) {
+			return param;
+		}
+
+		int index = random.nextInt(values.size());
+		ParameterType<?> type = parameter.getTypeList().get(index);
+		String value = values.get(index);
+		if (type instanceof ParameterType.IntegerType) {
+			value = mutateInteger(value);
+		}
+		else {
+			value = mutateFormattedString(parameter, index, value);
+		}
+
+		values.set(index, value);
+		return parameter.formatParameterFromStrings(values);
+	}
+
+	/**
+	 * Replaces a string value of a formatted parameter with the value at the same position in
+	 * another input, a boundary value, or a corrupted copy.
+	 */
+	private String mutateFormattedString(Parameter parameter, int index, String value) {
+		switch (random.nextInt(3)) {
+		case 0:
+			for (String other : corpus.pick(random)) {
+				List<String> otherValues = parameter.parseFormattedValues(other);
+				if (otherValues != null) {
+					return otherValues.get(index);
+				}
+			}
+			// fall through when no other input uses this format
+		case 1:
+			return BoundaryValues.pickRandomString(random);
+		default:
+			return corruptCharacters(value);
+		}
+	}
+
+	private String mutateInteger(String value) {
+		long number;
+		try {
+			number = Long.parseLong(value);
+		}
+		catch (NumberFormatException e) {
+			// too long for a long, start over from a boundary value
+			return String.valueOf(BoundaryValues.pickRandomInteger(random));
+		}
+
+		switch (random.nextInt(6)) {
+		case 0:
+			return String.valueOf(number + 1 + random.nextInt(ARITH_MAX));
+		case 1:
+			return String.valueOf(number - 1 - random.nextInt(ARITH_MAX));
+		case 2:
+			return String.valueOf(-number);
+		case 3:
+			return String.valueOf(random.nextBoolean() ? number * 2 : number / 2);
+		case 4:
+			// flip a single bit of the 32 bit value
+			return String.valueOf((int) number ^ (1 << random.nextInt(32)));
+		default:
+			return String.valueOf(BoundaryValues.pickRandomInteger(random));
+		}
+	}
+
+	private String mutateDouble(String value) {
+		double number;
+		try {
+			number = Double.parseDouble(value);
+		}
+		catch (NumberFormatException e) {
+			return String.valueOf(BoundaryValues.pickRandomDouble(random));
+		}
+
+		switch (random.nextInt(5)) {
+		case 0:
+			return String.valueOf(number + (random.nextInt(2 * ARITH_MAX + 1) - ARITH_MAX));
+		case 1:
+			return String.valueOf(-number);
+		case 2:
+			return String.valueOf(random.nextBoolean() ? number * 10 : number / 10);
+		case 3:
+			// same value without a fractional part
+			return String.valueOf((long) number);
+		default:
+			return String.valueOf(BoundaryValues.pickRandomDouble(random));
+		}
 	}
 
+	private static List<Parameter> getFormattedParameters(ParameterFactory parameterFactory) {
+		List<Parameter> parameters = new ArrayList<>();
+		if (parameterFactory instanceof FixedParameterFactory) {
+			parameters.addAll(((FixedParameterFactory) parameterFactory).getParameterList());
+		}
+		else if (parameterFactory instanceof DependentParameterFactory) {
+			for (List<Parameter> list : ((DependentParameterFactory) parameterFactory).getParameterMap().values()) {
+				parameters.addAll(list);
+			}
+		}
+		parameters.removeIf(parameter -> !parameter.isFormatted());
+		return parameters;
+	}
 }
@@ -0,0 +1,109 @@
+package securitytests;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import contest.winter2017.Comparison;
+import contest.winter2017.Output;
+
+/**
+ * Generates test inputs from comparison operands logged at runtime (input-to-state correspondence).
+ * When an argument contains one operand of a failed comparison, the argument is rewritten to
+ * contain the other operand instead, which solves magic value comparisons in a single execution.
+ */
+public class InputToStateTest implements SecurityTest {
+	/**
+	 * maximum number of generated inputs waiting to be executed
+	 */
+	private static final int MAX_PENDING = 512;
+
+	/**
+	 * number of generated inputs remembered to avoid duplicates
+	 */
+	private static final int MAX_SEEN = 1 << 16;
+
+	private final Random random;
+	private final Deque<List<String>> pending = new ArrayDeque<>();
+	private final Set<List<String>> seen = new HashSet<>();
+
+	public InputToStateTest(Random random) {
+		this.random = random;
+	}
+
+	/**
+	 * Derives new inputs from the comparisons observed while running an input.
+	 * @param output - output of a run with comparison logging enabled
+	 */
+	public void addObservation(Output output) {
+		List<String> parameters = output.getParameters();
+		if (parameters == null) {
+			return;
+		}
+
+		for (Comparison comparison : output.getComparisons()) {
+			if (comparison.isStringComparison()) {
+				addReplacements(parameters, comparison.getLeft(), comparison.getRight(), false);
+				addReplacements(parameters, comparison.getRight(), comparison.getLeft(), false);
+			}
+			else if (comparison.isIntegerComparison()) {
+				addIntegerReplacements(parameters, comparison.getLeft(), comparison.getRight());
+				addIntegerReplacements(parameters, comparison.getRight(), comparison.getLeft());
+			}
+			else if (comparison.isFailedParseInt()) {
+				String value = String.valueOf(BoundaryValues.pickRandomInteger(random));
+				addReplacements(parameters, comparison.getLeft(), value, false);
+			}
+		}
+	}
+
+	@Override
+	public void generateTests(List<List<String>> list, int maxCount) {
+		int count = maxCount < 0 ? pending.size() : Math.min(maxCount, pending.size());
+		for (int i = 0; i < count; i++) {
+			list.add(pending.poll());
+		}
+	}
+
+	private void addIntegerReplacements(List<String> parameters, String from, String to) {
+		long value = Long.parseLong(to);
+		addReplacements(parameters, from, to, true);
+		addReplacements(parameters, from, String.valueOf(value + 1), true);
+		addReplacements(parameters, from, String.valueOf(value - 1), true);
+	}
+
+	private void addReplacements(List<String> parameters, String from, String to, boolean wholeNumber) {
+		if (from.isEmpty() || from.equals(to)) {
+			return;
+		}
+
+		// integers must match a whole number inside the argument, not a digit of a longer number
+		Pattern pattern = Pattern.compile(wholeNumber
+				? "(?<![0-9])" + Pattern.quote(from) + "(?![0-9])"
+				: Pattern.quote(from));
+
+		for (int i = 0; i < parameters.size(); i++) {
+			Matcher m = pattern.matcher(parameters.get(i));
+			if (m.find()) {
+				List<String> input = new ArrayList<>(parameters);
+				input.set(i, m.replaceFirst(Matcher.quoteReplacement(to)));
+				offer(input);
+			}
+		}
+	}
+
+	private void offer(List<String> input) {
+		if (seen.size() >= MAX_SEEN) {
+			seen.clear();
+		}
+		if (pending.size() < MAX_PENDING && seen.add(input)) {
+			pending.add(input);
+		}
+	}
+}
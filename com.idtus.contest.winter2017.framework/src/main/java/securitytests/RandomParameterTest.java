@@ -12,11 +12,15 @@ import contest.winter2017.ParameterType;
 /**
  * Generates random test inputs by randomly picking possible parameters, and using a 
  * SingleValueSelector to select necessary values for each ParameterType.
+ *
+ * If a RegexSelector is given, some inputs start with parameters generated from the dependent
+ * parameter keys, which reaches dependent parameters without waiting for random choices to line up.
  */
 public class RandomParameterTest implements SecurityTest {
 	private ParameterFactory parameterFactory;
 	private Random random;
 	private SingleValueSelector[] selectors;
+	private RegexSelector regexSelector;
 
 	public RandomParameterTest(ParameterFactory parameterFactory, Random random) {
 		this.parameterFactory = parameterFactory;
@@ -28,6 +32,18 @@ public class RandomParameterTest implements SecurityTest {
 		};
 	}
 
+	public RandomParameterTest(ParameterFactory parameterFactory, RegexSelector regexSelector, Random random) {
+		this.parameterFactory = parameterFactory;
+		this.random = random;
+		this.regexSelector = regexSelector;
+		this.selectors = new SingleValueSelector[] {
+				new DefaultSelector(random),
+				new MismatchedTypeSelector(random),
+				new RandomSelector(random),
+				regexSelector
+		};
+	}
+
 	@Override
 	public void generateTests(List<List<String>> list, int maxCount) {
 		for (int i = 0; i < maxCount; i++) {
@@ -37,6 +53,9 @@ public class RandomParameterTest implements SecurityTest {
 
 	public List<String> getNextInput() {
 		List<String> previousParameterStrings = new ArrayList<String>();
+		if (regexSelector != null && regexSelector.hasPrefixes() && random.nextInt(4) == 0) {
+			previousParameterStrings = regexSelector.getPrefix();
+		}
 		List<Parameter> potentialParameters = parameterFactory.getNext(previousParameterStrings);
 
 		while (!potentialParameters.isEmpty()) {
@@ -0,0 +1,668 @@
+package securitytests;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.regex.Pattern;
+
+/**
+ * Generates strings that just match or just fail to match a regex. The regex is parsed into a
+ * syntax tree of character sets, sequences, alternations and repetitions, which is walked to
+ * produce the minimal accepting string, random accepting strings, and strings with each
+ * repetition at or just past its bounds. Near misses are accepting strings with a single
+ * character changed, inserted or deleted. Every string is checked against java.util.regex, so
+ * a generated "match" always matches and a "near miss" never does.
+ *
+ * Only the common subset of the regex syntax is supported: no back references, lookaround,
+ * flags, unicode classes or possessive quantifiers, and no quantifiers that require more than
+ * MAX_BOUNDARY_REPEAT repetitions. compile returns null for anything else, and for regexes whose
+ * anchors the generated strings don't satisfy.
+ */
+public class RegexGenerator {
+	/**
+	 * extra repetitions chosen at random for unbounded quantifiers
+	 */
+	private static final int MAX_EXTRA_REPEAT = 4;
+
+	/**
+	 * bounded quantifiers with a larger maximum are generated like unbounded ones, and
+	 * quantifiers with a larger minimum are not supported
+	 */
+	private static final int MAX_BOUNDARY_REPEAT = 256;
+
+	/**
+	 * regexes whose shortest match is longer are not supported
+	 */
+	private static final int MAX_MINIMAL_LENGTH = 4096;
+
+	/**
+	 * number of mutations tried when looking for a near miss
+	 */
+	private static final int NEAR_MISS_TRIES = 8;
+
+	private static final char MIN_PRINTABLE = 0x20;
+	private static final char MAX_PRINTABLE = 0x7e;
+
+	private final Pattern pattern;
+	private final Node root;
+	private final List<Repeat> repeats = new ArrayList<>();
+
+	/**
+	 * strings with one repetition at or just past its bounds, generated once
+	 */
+	private final List<String> boundaries = new ArrayList<>();
+	private final String minimal;
+
+	private int pos;
+	private String regex;
+
+
+	private RegexGenerator(String regex) {
+		this.pattern = Pattern.compile(regex);
+		this.regex = regex;
+		this.root = parseAlternation();
+		if (pos != regex.length()) {
+			throw new IllegalArgumentException("unbalanced parenthesis at " + pos);
+		}
+		this.regex = null;
+		if (root.getMinLength() > MAX_MINIMAL_LENGTH) {
+			throw new IllegalArgumentException("shortest match is longer than " + MAX_MINIMAL_LENGTH);
+		}
+
+		this.minimal = generate(null, null, 0);
+		if (!matches(minimal)) {
+			// anchors aren't generated, so regexes like a\bb or a$b can't be satisfied
+			throw new IllegalArgumentException("generated \"" + minimal + "\" doesn't match " + pattern);
+		}
+		for (Repeat repeat : repeats) {
+			addBoundary(repeat, repeat.min);
+			if (repeat.min > 0) {
+				addBoundary(repeat, repeat.min - 1);
+			}
+			if (repeat.max >= 0 && repeat.max <= MAX_BOUNDARY_REPEAT) {
+				addBoundary(repeat, repeat.max);
+				addBoundary(repeat, repeat.max + 1);
+			}
+		}
+	}
+
+
+	/**
+	 * Parses a regex for input generation.
+	 * @param regex - the regex
+	 * @return RegexGenerator for the regex, or null if it uses unsupported syntax or no match
+	 *         could be generated
+	 */
+	public static RegexGenerator compile(String regex) {
+		try {
+			return new RegexGenerator(regex);
+		}
+		catch (IllegalArgumentException | IndexOutOfBoundsException e) {
+			// includes PatternSyntaxException for invalid regexes
+			return null;
+		}
+	}
+
+
+	/**
+	 * Getter for the shortest string that matches the regex
+	 * @return String that matches
+	 */
+	public String getMinimal() {
+		return minimal;
+	}
+
+	/**
+	 * Getter for the strings with a single repetition at its bounds, which may or may not match
+	 * @return List of strings
+	 */
+	public List<String> getBoundaries() {
+		return boundaries;
+	}
+
+	/**
+	 * Generates a random string that matches the regex.
+	 * @param random - random number generator to use
+	 * @return String that matches, or the minimal string if the random one didn't match
+	 */
+	public String generateMatch(Random random) {
+		String value = generate(random, null, 0);
+		return matches(value) ? value : minimal;
+	}
+
+	/**
+	 * Generates a string that is one edit away from matching the regex, but doesn't match.
+	 * @param random - random number generator to use
+	 * @return String that doesn't match, or null if none was found
+	 */
+	public String generateNearMiss(Random random) {
+		for (int i = 0; i < NEAR_MISS_TRIES; i++) {
+			StringBuilder sb = new StringBuilder(random.nextBoolean() ? minimal : generateMatch(random));
+			int index = random.nextInt(sb.length() + 1);
+			if (index == sb.length() || random.nextInt(3) == 0) {
+				sb.insert(index, Util.generateRandomChar(random));
+			}
+			else if (random.nextBoolean()) {
+				sb.deleteCharAt(index);
+			}
+			else {
+				sb.setCharAt(index, Util.generateRandomChar(random));
+			}
+			String value = sb.toString();
+			if (!matches(value)) {
+				return value;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Generates a string that just matches or just fails to match the regex.
+	 * @param random - random number generator to use
+	 * @return String picked from the minimal, random, boundary and near miss strings
+	 */
+	public String next(Random random) {
+		switch (random.nextInt(4)) {
+		case 0:
+			return minimal;
+		case 1:
+			if (!boundaries.isEmpty()) {
+				return Util.pickRandomValue(boundaries, random);
+			}
+			// fall through when there are no quantifiers
+		case 2:
+			String nearMiss = generateNearMiss(random);
+			if (nearMiss != null) {
+				return nearMiss;
+			}
+			// fall through when every edit still matches
+		default:
+			return generateMatch(random);
+		}
+	}
+
+	public boolean matches(String value) {
+		return pattern.matcher(value).matches();
+	}
+
+
+	private void addBoundary(Repeat repeat, int count) {
+		String value = generate(null, repeat, count);
+		if (!boundaries.contains(value)) {
+			boundaries.add(value);
+		}
+	}
+
+	/**
+	 * Walks the syntax tree.
+	 * @param random - random number generator, or null for the minimal choices
+	 * @param focus - repetition with a fixed count, or null
+	 * @param focusCount - count of the focused repetition
+	 */
+	private String generate(Random random, Repeat focus, int focusCount) {
+		StringBuilder sb = new StringBuilder();
+		root.generate(sb, new Generation(random, focus, focusCount));
+		return sb.toString();
+	}
+
+
+	//////////////////////////////////////////
+	// SYNTAX TREE
+	//////////////////////////////////////////
+
+	private static class Generation {
+		private final Random random;
+		private final Repeat focus;
+		private final int focusCount;
+
+		private Generation(Random random, Repeat focus, int focusCount) {
+			this.random = random;
+			this.focus = focus;
+			this.focusCount = focusCount;
+		}
+	}
+
+	private static abstract class Node {
+		abstract void generate(StringBuilder sb, Generation g);
+
+		abstract int getMinLength();
+	}
+
+	private static class Sequence extends Node {
+		private final List<Node> nodes = new ArrayList<>();
+
+		@Override
+		void generate(StringBuilder sb, Generation g) {
+			for (Node node : nodes) {
+				node.generate(sb, g);
+			}
+		}
+
+		@Override
+		int getMinLength() {
+			long length = 0;
+			for (Node node : nodes) {
+				length += node.getMinLength();
+			}
+			return (int) Math.min(length, Integer.MAX_VALUE);
+		}
+	}
+
+	private static class Alternation extends Node {
+		private final List<Node> alternatives = new ArrayList<>();
+
+		@Override
+		void generate(StringBuilder sb, Generation g) {
+			if (g.random != null) {
+				Util.pickRandomValue(alternatives, g.random).generate(sb, g);
+				return;
+			}
+			Node shortest = alternatives.get(0);
+			for (Node node : alternatives) {
+				if (node.getMinLength() < shortest.getMinLength()) {
+					shortest = node;
+				}
+			}
+			shortest.generate(sb, g);
+		}
+
+		@Override
+		int getMinLength() {
+			int length = Integer.MAX_VALUE;
+			for (Node node : alternatives) {
+				length = Math.min(length, node.getMinLength());
+			}
+			return length;
+		}
+	}
+
+	private static class Repeat extends Node {
+		private final Node node;
+		private final int min;
+		/** maximum count, -1 if unbounded */
+		private final int max;
+
+		private Repeat(Node node, int min, int max) {
+			this.node = node;
+			this.min = min;
+			this.max = max;
+		}
+
+		@Override
+		void generate(StringBuilder sb, Generation g) {
+			int count = min;
+			if (g.focus == this) {
+				count = g.focusCount;
+			}
+			else if (g.random != null) {
+				int span = max < 0 ? MAX_EXTRA_REPEAT : Math.min(max - min, MAX_EXTRA_REPEAT);
+				count = min + g.random.nextInt(span + 1);
+			}
+			for (int i = 0; i < count; i++) {
+				node.generate(sb, g);
+			}
+		}
+
+		@Override
+		int getMinLength() {
+			return (int) Math.min((long) min * node.getMinLength(), Integer.MAX_VALUE);
+		}
+	}
+
+	/**
+	 * A set of characters given as inclusive ranges, optionally negated. Negated sets only
+	 * generate printable ASCII characters.
+	 */
+	private static class CharSet extends Node {
+		private final List<char[]> ranges = new ArrayList<>();
+		private boolean negated;
+
+		private CharSet add(char from, char to) {
+			ranges.add(new char[] { from, to });
+			return this;
+		}
+
+		private CharSet addAll(CharSet other) {
+			ranges.addAll(other.ranges);
+			return this;
+		}
+
+		private boolean contains(char c) {
+			for (char[] range : ranges) {
+				if (c >= range[0] && c <= range[1]) {
+					return true;
+				}
+			}
+			return false;
+		}
+
+		@Override
+		void generate(StringBuilder sb, Generation g) {
+			if (!negated) {
+				if (g.random == null) {
+					sb.append(ranges.get(0)[0]);
+				}
+				else {
+					char[] range = Util.pickRandomValue(ranges, g.random);
+					sb.append((char) (range[0] + g.random.nextInt(range[1] - range[0] + 1)));
+				}
+				return;
+			}
+
+			// try a few random printable characters, then scan for the first one
+			if (g.random != null) {
+				for (int i = 0; i < 16; i++) {
+					char c = (char) (MIN_PRINTABLE + g.random.nextInt(MAX_PRINTABLE - MIN_PRINTABLE + 1));
+					if (!contains(c)) {
+						sb.append(c);
+						return;
+					}
+				}
+			}
+			for (char c = MIN_PRINTABLE; c <= MAX_PRINTABLE; c++) {
+				if (!contains(c)) {
+					sb.append(c);
+					return;
+				}
+			}
+			throw new IllegalArgumentException("character class excludes all printable characters");
+		}
+
+		@Override
+		int getMinLength() {
+			return 1;
+		}
+	}
+
+	private static CharSet literal(char c) {
+		return new CharSet().add(c, c);
+	}
+
+	private static CharSet digits() {
+		return new CharSet().add('0', '9');
+	}
+
+	private static CharSet whitespace() {
+		return new CharSet().add(' ', ' ').add('\t', '\r');
+	}
+
+	private static CharSet wordCharacters() {
+		return new CharSet().add('a', 'z').add('A', 'Z').add('0', '9').add('_', '_');
+	}
+
+	private static CharSet negate(CharSet set) {
+		set.negated = true;
+		return set;
+	}
+
+
+	//////////////////////////////////////////
+	// PARSER
+	//////////////////////////////////////////
+
+	private boolean atEnd() {
+		return pos >= regex.length();
+	}
+
+	private char peek() {
+		return regex.charAt(pos);
+	}
+
+	private char next() {
+		if (atEnd()) {
+			throw new IllegalArgumentException("unexpected end of regex");
+		}
+		return regex.charAt(pos++);
+	}
+
+	private Node parseAlternation() {
+		Alternation alternation = new Alternation();
+		alternation.alternatives.add(parseSequence());
+		while (!atEnd() && peek() == '|') {
+			pos++;
+			alternation.alternatives.add(parseSequence());
+		}
+		return alternation.alternatives.size() == 1 ? alternation.alternatives.get(0) : alternation;
+	}
+
+	private Node parseSequence() {
+		Sequence sequence = new Sequence();
+		while (!atEnd() && peek() != '|' && peek() != ')') {
+			Node atom = parseAtom();
+			if (atom != null) {
+				sequence.nodes.add(parseQuantifiers(atom));
+			}
+		}
+		return sequence;
+	}
+
+	/**
+	 * @return the parsed atom, or null for anchors that don't generate anything
+	 */
+	private Node parseAtom() {
+		char c = next();
+		switch (c) {
+		case '(':
+			if (!atEnd() && peek() == '?') {
+				pos++;
+				// only non-capturing groups are supported
+				if (next() != ':') {
+					throw new IllegalArgumentException("unsupported group at " + pos);
+				}
+			}
+			Node group = parseAlternation();
+			if (next() != ')') {
+				throw new IllegalArgumentException("unbalanced parenthesis at " + pos);
+			}
+			return group;
+		case '[':
+			return parseCharClass();
+		case '.':
+			return negate(new CharSet().add('\n', '\n').add('\r', '\r'));
+		case '^':
+		case '$':
+			return null;
+		case '\\':
+			return parseEscape();
+		case '*':
+		case '+':
+		case '?':
+		case '{':
+			throw new IllegalArgumentException("dangling quantifier at " + pos);
+		default:
+			return literal(c);
+		}
+	}
+
+	private Node parseEscape() {
+		char c = next();
+		switch (c) {
+		case 'd':
+			return digits();
+		case 'D':
+			return negate(digits());
+		case 's':
+			return whitespace();
+		case 'S':
+			return negate(whitespace());
+		case 'w':
+			return wordCharacters();
+		case 'W':
+			return negate(wordCharacters());
+		case 'b':
+		case 'B':
+		case 'A':
+		case 'z':
+		case 'Z':
+		case 'G':
+			// anchors; generated strings are checked against the real regex anyway
+			return null;
+		case 'Q':
+			Sequence quoted = new Sequence();
+			int end = regex.indexOf("\\E", pos);
+			String text = regex.substring(pos, end < 0 ? regex.length() : end);
+			for (char q : text.toCharArray()) {
+				quoted.nodes.add(literal(q));
+			}
+			pos = end < 0 ? regex.length() : end + 2;
+			return quoted;
+		default:
+			return literal(parseEscapedChar(c));
+		}
+	}
+
+	private char parseEscapedChar(char c) {
+		switch (c) {
+		case 't':
+			return '\t';
+		case 'n':
+			return '\n';
+		case 'r':
+			return '\r';
+		case 'f':
+			return '\f';
+		case 'e':
+			return '\u001b';
+		case 'x':
+			return (char) Integer.parseInt(regex.substring(pos, pos += 2), 16);
+		case 'u':
+			return (char) Integer.parseInt(regex.substring(pos, pos += 4), 16);
+		default:
+			if (Character.isLetterOrDigit(c)) {
+				// back references, unicode classes and other constructs we can't generate
+				throw new IllegalArgumentException("unsupported escape \\" + c);
+			}
+			return c;
+		}
+	}
+
+	private CharSet parseCharClass() {
+		CharSet set = new CharSet();
+		if (!atEnd() && peek() == '^') {
+			pos++;
+			set.negated = true;
+		}
+
+		boolean first = true;
+		while (first || peek() != ']') {
+			first = false;
+			char c = next();
+			if (c == '[' || (c == '&' && !atEnd() && peek() == '&')) {
+				throw new IllegalArgumentException("nested character classes are not supported");
+			}
+			if (c == '\\') {
+				char e = next();
+				if (e == 'd') {
+					set.addAll(digits());
+					continue;
+				}
+				if (e == 's') {
+					set.addAll(whitespace());
+					continue;
+				}
+				if (e == 'w') {
+					set.addAll(wordCharacters());
+					continue;
+				}
+				c = parseEscapedChar(e);
+			}
+
+			// a range, unless the dash is the last character of the class
+			if (pos + 1 < regex.length() && peek() == '-' && regex.charAt(pos + 1) != ']') {
+				pos++;
+				char to = next();
+				if (to == '\\') {
+					to = parseEscapedChar(next());
+				}
+				if (to < c) {
+					throw new IllegalArgumentException("illegal range at " + pos);
+				}
+				set.add(c, to);
+			}
+			else {
+				set.add(c, c);
+			}
+
+			if (atEnd()) {
+				throw new IllegalArgumentException("unclosed character class");
+			}
+		}
+		pos++;
+		if (set.ranges.isEmpty()) {
+			throw new IllegalArgumentException("empty character class");
+		}
+		return set;
+	}
+
+	private Node parseQuantifiers(Node atom) {
+		while (!atEnd()) {
+			int min;
+			int max;
+			char c = peek();
+			if (c == '*') {
+				min = 0;
+				max = -1;
+				pos++;
+			}
+			else if (c == '+') {
+				min = 1;
+				max = -1;
+				pos++;
+			}
+			else if (c == '?') {
+				min = 0;
+				max = 1;
+				pos++;
+			}
+			else if (c == '{') {
+				int close = regex.indexOf('}', pos);
+				if (close < 0) {
+					throw new IllegalArgumentException("unclosed quantifier at " + pos);
+				}
+				String[] bounds = regex.substring(pos + 1, close).split(",", -1);
+				min = parseCount(bounds[0]);
+				max = bounds.length == 1 ? min : bounds[1].trim().isEmpty() ? -1 : parseCount(bounds[1]);
+				pos = close + 1;
+				if (min > MAX_BOUNDARY_REPEAT) {
+					throw new IllegalArgumentException("too many repetitions at " + pos);
+				}
+				if (max > MAX_BOUNDARY_REPEAT) {
+					max = -1;
+				}
+			}
+			else {
+				break;
+			}
+
+			// lazy quantifiers accept the same strings, but possessive ones don't give back
+			// repetitions, so they may reject the strings generated for them
+			if (!atEnd() && peek() == '?') {
+				pos++;
+			}
+			else if (!atEnd() && peek() == '+') {
+				throw new IllegalArgumentException("possessive quantifiers are not supported");
+			}
+
+			Repeat repeat = new Repeat(atom, min, max);
+			repeats.add(repeat);
+			atom = repeat;
+		}
+		return atom;
+	}
+
+	/**
+	 * Parses the count of a {n,m} quantifier.
+	 * @param count - the digits of the count
+	 * @return the count, or Integer.MAX_VALUE if it doesn't fit an int
+	 */
+	private static int parseCount(String count) {
+		long value = 0;
+		for (char c : count.trim().toCharArray()) {
+			if (c < '0' || c > '9') {
+				throw new IllegalArgumentException("illegal count " + count);
+			}
+			value = Math.min(value * 10 + (c - '0'), Integer.MAX_VALUE);
+		}
+		return (int) value;
+	}
+}
@@ -0,0 +1,121 @@
+package securitytests;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import contest.winter2017.DependentParameterFactory;
+import contest.winter2017.ParameterFactory;
+import contest.winter2017.ParameterType;
+import contest.winter2017.Test;
+
+/**
+ * Selects values that just match or just fail to match the regexes in the TestBounds map.
+ *
+ * The keys of the dependent parameter map describe the previous parameters that unlock further
+ * parameters, so strings generated from them are used as prefixes of whole inputs. Together with
+ * the expected output regexes of the basic tests, they are also used as single values.
+ */
+public class RegexSelector implements RandomParameterTest.SingleValueSelector {
+	private final Random random;
+	private final List<RegexGenerator> keyGenerators;
+	private final List<RegexGenerator> valueGenerators;
+
+	public RegexSelector(List<String> keyRegexes, List<String> valueRegexes, Random random) {
+		this.random = random;
+		this.keyGenerators = compileAll(keyRegexes);
+		this.valueGenerators = compileAll(valueRegexes);
+		this.valueGenerators.addAll(keyGenerators);
+	}
+
+	/**
+	 * Creates a selector from the regexes of a TestBounds map.
+	 * @param parameterFactory - parameter factory, whose keys are used if it has dependent parameters
+	 * @param basicTests - basic tests, whose expected output regexes are used
+	 * @param random - random number generator to use
+	 * @return RegexSelector for the regexes
+	 */
+	public static RegexSelector fromTestBounds(ParameterFactory parameterFactory, List<Test> basicTests,
+			Random random) {
+		List<String> keyRegexes = new ArrayList<>();
+		if (parameterFactory instanceof DependentParameterFactory) {
+			keyRegexes.addAll(((DependentParameterFactory) parameterFactory).getParameterMap().keySet());
+		}
+		// many basic tests expect the same output, which is compiled once and picked as often as the others
+		Set<String> valueRegexes = new LinkedHashSet<>();
+		for (Test test : basicTests) {
+			valueRegexes.add(test.getStdOutExpectedResultRegex());
+		}
+		return new RegexSelector(keyRegexes, new ArrayList<>(valueRegexes), random);
+	}
+
+	private static List<RegexGenerator> compileAll(List<String> regexes) {
+		List<RegexGenerator> generators = new ArrayList<>();
+		for (String regex : regexes) {
+			// the empty key matches the first parameter and says nothing about the input
+			if (regex == null || regex.isEmpty()) {
+				continue;
+			}
+			RegexGenerator generator = RegexGenerator.compile(regex);
+			if (generator != null) {
+				generators.add(generator);
+			}
+		}
+		return generators;
+	}
+
+	/**
+	 * Whether there are dependent parameter keys to generate prefixes from
+	 * @return true if getPrefix can be used
+	 */
+	public boolean hasPrefixes() {
+		return !keyGenerators.isEmpty();
+	}
+
+	/**
+	 * Generates previous parameters that just match or just fail to match a dependent parameter key.
+	 * DependentParameterFactory joins previous parameters with single spaces before matching the
+	 * keys, so the generated string is split at whitespace, and keys such as \s*--Integer\s* don't
+	 * produce empty parameters.
+	 * @return List of parameters
+	 */
+	public List<String> getPrefix() {
+		String value = Util.pickRandomValue(keyGenerators, random).next(random);
+		List<String> prefix = new ArrayList<>();
+		for (String parameter : value.split("\\s+")) {
+			if (!parameter.isEmpty()) {
+				prefix.add(parameter);
+			}
+		}
+		return prefix;
+	}
+
+	@Override
+	public Object getParameterValue(ParameterType<?> type) {
+		if (valueGenerators.isEmpty()) {
+			return BoundaryValues.pickRandomString(random);
+		}
+		String value = Util.pickRandomValue(valueGenerators, random).next(random);
+
+		// numbers are kept as numbers when the generated string is one
+		if (type instanceof ParameterType.IntegerType) {
+			try {
+				return Integer.valueOf(value.trim());
+			}
+			catch (NumberFormatException e) {
+				return BoundaryValues.pickRandomInteger(random);
+			}
+		}
+		if (type instanceof ParameterType.DoubleType) {
+			try {
+				return Double.valueOf(value.trim());
+			}
+			catch (NumberFormatException e) {
+				return BoundaryValues.pickRandomDouble(random);
+			}
+		}
+		return value;
+	}
+}
@@ -0,0 +1,97 @@
+package contest.winter2017;
+
+import static org.junit.Assert.assertEquals;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Proxy;
+
+import org.jacoco.core.analysis.IClassCoverage;
+import org.jacoco.core.analysis.ICounter;
+import org.jacoco.core.analysis.ILine;
+import org.junit.Test;
+
+public class CoverageReportWriterTest {
+	@Test
+	public void linesAreRunLengthEncoded() {
+		IClassCoverage cc = classCoverage(10, new int[] {
+				ICounter.EMPTY, ICounter.EMPTY, ICounter.EMPTY,
+				ICounter.FULLY_COVERED, ICounter.FULLY_COVERED,
+				ICounter.NOT_COVERED, ICounter.PARTLY_COVERED, ICounter.EMPTY, ICounter.FULLY_COVERED },
+				new int[9][]);
+		assertEquals("3e2fnpef", CoverageReportWriter.encodeLines(cc));
+	}
+
+	@Test
+	public void singleRunOfLines() {
+		IClassCoverage cc = classCoverage(1, new int[] { ICounter.NOT_COVERED, ICounter.NOT_COVERED },
+				new int[2][]);
+		assertEquals("2n", CoverageReportWriter.encodeLines(cc));
+	}
+
+	@Test
+	public void onlyLinesWithBranchesAreListed() {
+		int[][] branches = new int[4][];
+		branches[1] = new int[] { 1, 2 };
+		branches[3] = new int[] { 4, 4 };
+		IClassCoverage cc = classCoverage(20, new int[] {
+				ICounter.FULLY_COVERED, ICounter.PARTLY_COVERED, ICounter.EMPTY, ICounter.FULLY_COVERED },
+				branches);
+		assertEquals("21:1/2 23:4/4", CoverageReportWriter.encodeBranches(cc));
+	}
+
+
+	/**
+	 * Creates the coverage of a class from the status and branches of each of its lines.
+	 * @param firstLine - number of the first line
+	 * @param statuses - ICounter status of each line
+	 * @param branches - covered and total branches of each line, null for lines without branches
+	 */
+	private static IClassCoverage classCoverage(int firstLine, int[] statuses, int[][] branches) {
+		return proxy(IClassCoverage.class, (proxy, method, args) -> {
+			switch (method.getName()) {
+			case "getFirstLine":
+				return firstLine;
+			case "getLastLine":
+				return firstLine + statuses.length - 1;
+			case "getLine":
+				int index = (Integer) args[0] - firstLine;
+				return line(statuses[index], branches[index]);
+			default:
+				throw new UnsupportedOperationException(method.getName());
+			}
+		});
+	}
+
+	private static ILine line(int status, int[] branches) {
+		ICounter branchCounter = counter(branches == null ? 0 : branches[0], branches == null ? 0 : branches[1]);
+		return proxy(ILine.class, (proxy, method, args) -> {
+			switch (method.getName()) {
+			case "getStatus":
+				return status;
+			case "getBranchCounter":
+				return branchCounter;
+			default:
+				throw new UnsupportedOperationException(method.getName());
+			}
+		});
+	}
+
+	private static ICounter counter(int covered, int total) {
+		return proxy(ICounter.class, (proxy, method, args) -> {
+			switch (method.getName()) {
+			case "getCoveredCount":
+				return covered;
+			case "getTotalCount":
+				return total;
+			case "getMissedCount":
+				return total - covered;
+			default:
+				throw new UnsupportedOperationException(method.getName());
+			}
+		});
+	}
+
+	private static <T> T proxy(Class<T> type, InvocationHandler handler) {
+		return type.cast(Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[] { type }, handler));
+	}
+}
@@ -0,0 +1,108 @@
+package contest.winter2017;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Test;
+
+public class ErrorBucketsTest {
+	private static final String TRACE = "Exception in thread \"main\" java.lang.NumberFormatException: For input string: \"abc\"\n"
+			+ "\tat java.lang.NumberFormatException.forInputString(NumberFormatException.java:65)\n"
+			+ "\tat java.lang.Integer.parseInt(Integer.java:580)\n"
+			+ "\tat example.Main.main(Main.java:10)\n";
+
+	@Test
+	public void signatureStripsQuotedValuesAndLineNumbers() {
+		ErrorBuckets buckets = new ErrorBuckets(false);
+		assertEquals("java.lang.NumberFormatException: For input string: <arg>\n"
+				+ "  at java.lang.NumberFormatException.forInputString\n"
+				+ "  at java.lang.Integer.parseInt\n"
+				+ "  at example.Main.main",
+				buckets.getSignature(Arrays.asList("--Integer", "abc"), TRACE));
+	}
+
+	@Test
+	public void signatureKeepsLineNumbersIfRequested() {
+		ErrorBuckets buckets = new ErrorBuckets(true);
+		String signature = buckets.getSignature(Collections.<String>emptyList(), TRACE);
+		assertEquals("  at example.Main.main:10", signature.substring(signature.lastIndexOf('\n') + 1));
+	}
+
+	@Test
+	public void signatureKeepsOnlyTopFramesAndCauses() {
+		StringBuilder trace = new StringBuilder("java.lang.IllegalStateException: failed\n");
+		for (int i = 0; i < 8; i++) {
+			trace.append("\tat example.Frame").append(i).append(".run(Frame.java:1)\n");
+		}
+		trace.append("Caused by: java.io.IOException: closed\n\tat example.Io.read(Io.java:2)\n");
+		String signature = new ErrorBuckets(false).getSignature(null, trace.toString());
+		assertEquals("java.lang.IllegalStateException: failed\n"
+				+ "  at example.Frame0.run\n  at example.Frame1.run\n  at example.Frame2.run\n"
+				+ "  at example.Frame3.run\n  at example.Frame4.run\n"
+				+ "caused by java.io.IOException", signature);
+	}
+
+	@Test
+	public void argumentsAreOnlyStrippedAsWholeWords() {
+		ErrorBuckets buckets = new ErrorBuckets(false);
+		assertEquals("java.lang.IllegalArgumentException: <arg> is not in 10 or 21",
+				buckets.getSignature(Arrays.asList("1"), "java.lang.IllegalArgumentException: 1 is not in 10 or 21"));
+		assertEquals("java.lang.IllegalArgumentException: bad <arg>, <arg>",
+				buckets.getSignature(Arrays.asList("a.b", "a.b.c"), "java.lang.IllegalArgumentException: bad a.b.c, a.b"));
+	}
+
+	@Test
+	public void argumentsWithRegexCharactersAreStrippedLiterally() {
+		ErrorBuckets buckets = new ErrorBuckets(false);
+		assertEquals("java.lang.RuntimeException: <arg> and a+b",
+				buckets.getSignature(Arrays.asList("(a+", " "), "java.lang.RuntimeException: (a+ and a+b"));
+	}
+
+	@Test
+	public void outputWithoutTraceUsesItsFirstLine() {
+		ErrorBuckets buckets = new ErrorBuckets(false);
+		String first = buckets.getSignature(Arrays.asList("42"), "\n  usage: main 42 <file>\nstep 1\n");
+		String second = buckets.getSignature(Arrays.asList("7"), "usage: main 7 <file>\nstep 1\nstep 2\n");
+		assertEquals("usage: main <arg> <file>", first);
+		assertEquals(first, second);
+	}
+
+	@Test
+	public void outputWithoutTraceIsBounded() {
+		StringBuilder line = new StringBuilder();
+		for (int i = 0; i < 1000; i++) {
+			line.append('x');
+		}
+		assertEquals(256, new ErrorBuckets(false).getSignature(null, line.toString()).length());
+	}
+
+	@Test
+	public void bucketsCountErrorsWithTheSameSignature() {
+		ErrorBuckets buckets = new ErrorBuckets(false);
+		List<String> first = Arrays.asList("--Integer", "abc");
+		buckets.add(first, TRACE);
+		buckets.add(Arrays.asList("--Integer", "xyz"), TRACE.replace("abc", "xyz"));
+		buckets.add(Arrays.asList("--Double"), "java.lang.NullPointerException\n\tat example.Main.main(Main.java:12)\n");
+
+		assertEquals(2, buckets.size());
+		ErrorBuckets.Bucket top = buckets.getBuckets().get(0);
+		assertEquals(2, top.getCount());
+		assertEquals(first, top.getFirstInput());
+		assertEquals(TRACE.trim(), top.getSampleTrace());
+		assertNotEquals(top.getSignature(), buckets.getBuckets().get(1).getSignature());
+	}
+
+	@Test
+	public void sampleTraceIsTruncated() {
+		StringBuilder trace = new StringBuilder("java.lang.StackOverflowError\n");
+		for (int i = 0; i < 1000; i++) {
+			trace.append("\tat example.Main.recurse(Main.java:20)\n");
+		}
+		ErrorBuckets.Bucket bucket = new ErrorBuckets(false).add(null, trace.toString());
+		assertEquals(4096 + "\n...".length(), bucket.getSampleTrace().length());
+	}
+}
@@ -0,0 +1,57 @@
+package contest.winter2017;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class LatencyHistogramTest {
+	@Test
+	public void smallDurationsHaveABucketEach() {
+		for (long duration = 0; duration < 16; duration++) {
+			assertEquals(duration, LatencyHistogram.getBucket(duration));
+			assertEquals(duration, LatencyHistogram.getUpperBound((int) duration));
+		}
+	}
+
+	@Test
+	public void bucketsAreContiguousAndWithinAnEighth() {
+		for (int bucket = 16; bucket < 400; bucket++) {
+			long upper = LatencyHistogram.getUpperBound(bucket);
+			long lower = LatencyHistogram.getUpperBound(bucket - 1) + 1;
+			assertEquals(bucket, LatencyHistogram.getBucket(lower));
+			assertEquals(bucket, LatencyHistogram.getBucket(upper));
+			assertEquals(bucket + 1, LatencyHistogram.getBucket(upper + 1));
+			assertTrue("bucket " + bucket + " is too wide", upper - lower < lower / 8 + 1);
+		}
+	}
+
+	@Test
+	public void largestDurationFitsTheLastBucket() {
+		LatencyHistogram histogram = new LatencyHistogram();
+		histogram.record(Long.MAX_VALUE);
+		assertEquals(Long.MAX_VALUE, histogram.getPercentile(100));
+	}
+
+	@Test
+	public void percentilesAreUpperBoundsOfTheirBuckets() {
+		LatencyHistogram histogram = new LatencyHistogram();
+		for (long duration = 1; duration <= 100; duration++) {
+			histogram.record(duration);
+		}
+		assertEquals(100, histogram.getCount());
+		assertEquals(1, histogram.getPercentile(0));
+		assertEquals(LatencyHistogram.getUpperBound(LatencyHistogram.getBucket(50)), histogram.getPercentile(50));
+		assertEquals(LatencyHistogram.getUpperBound(LatencyHistogram.getBucket(99)), histogram.getPercentile(99));
+		assertTrue(histogram.getPercentile(100) >= 100);
+	}
+
+	@Test
+	public void emptyHistogramAndNegativeDurations() {
+		LatencyHistogram histogram = new LatencyHistogram();
+		assertEquals(0, histogram.getPercentile(50));
+		histogram.record(-5);
+		assertEquals(1, histogram.getCount());
+		assertEquals(0, histogram.getPercentile(100));
+	}
+}
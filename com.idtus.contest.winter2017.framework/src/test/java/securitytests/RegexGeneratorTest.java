@@ -0,0 +1,96 @@
+package securitytests;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class RegexGeneratorTest {
+	private static final String[] REGEXES = {
+			"[0-9]+",
+			"-?\\d{1,3}(?:\\.\\d+)?",
+			"(foo|ba)r",
+			"[^a-z]{2}x*",
+			"\\s*--Integer\\s*",
+			".*read successfully.$",
+			"\\Q1+1\\E=2",
+			"[a-c-]{0,2}",
+	};
+
+	@Test
+	public void minimalStringMatches() {
+		for (String regex : REGEXES) {
+			RegexGenerator generator = RegexGenerator.compile(regex);
+			assertNotNull(regex, generator);
+			assertTrue(regex, generator.matches(generator.getMinimal()));
+		}
+		assertEquals("bar", RegexGenerator.compile("(foo|ba)r").getMinimal());
+		assertEquals("--Integer", RegexGenerator.compile("\\s*--Integer\\s*").getMinimal());
+	}
+
+	@Test
+	public void generatedMatchesMatchAndNearMissesDont() {
+		Random random = new Random(0);
+		for (String regex : REGEXES) {
+			RegexGenerator generator = RegexGenerator.compile(regex);
+			for (int i = 0; i < 50; i++) {
+				String match = generator.generateMatch(random);
+				assertTrue(regex + " should match " + match, generator.matches(match));
+				String nearMiss = generator.generateNearMiss(random);
+				if (nearMiss != null) {
+					assertFalse(regex + " should not match " + nearMiss, generator.matches(nearMiss));
+				}
+			}
+		}
+	}
+
+	@Test
+	public void boundariesAreJustInsideAndOutsideTheQuantifier() {
+		RegexGenerator generator = RegexGenerator.compile("a{2,3}");
+		assertEquals(Arrays.asList("aa", "a", "aaa", "aaaa"), generator.getBoundaries());
+	}
+
+	@Test
+	public void unsupportedSyntaxIsRejected() {
+		assertNull(RegexGenerator.compile("(a)\\1"));
+		assertNull(RegexGenerator.compile("(?=a)a"));
+		assertNull(RegexGenerator.compile("(?i)a"));
+		assertNull(RegexGenerator.compile("\\p{Alpha}"));
+		assertNull(RegexGenerator.compile("[a[b]]"));
+		assertNull(RegexGenerator.compile("(a"));
+		assertNull(RegexGenerator.compile("a*+a"));
+		assertNull(RegexGenerator.compile("a{1,2}+"));
+	}
+
+	@Test
+	public void lazyQuantifiersAreSupported() {
+		RegexGenerator generator = RegexGenerator.compile("a+?b??");
+		assertNotNull(generator);
+		assertEquals("a", generator.getMinimal());
+	}
+
+	@Test
+	public void largeCountsAreClamped() {
+		assertNull(RegexGenerator.compile("a{257}"));
+		assertNull(RegexGenerator.compile("a{99999999999}"));
+		assertNull(RegexGenerator.compile("(?:a{200}){200}"));
+
+		RegexGenerator generator = RegexGenerator.compile("a{1,100000}");
+		assertNotNull(generator);
+		assertEquals("a", generator.getMinimal());
+		assertEquals(Arrays.asList("a", ""), generator.getBoundaries());
+		assertTrue(generator.generateMatch(new Random(0)).length() <= 5);
+	}
+
+	@Test
+	public void regexesThatCantBeSatisfiedAreRejected() {
+		assertNull(RegexGenerator.compile("a\\bb"));
+		assertNull(RegexGenerator.compile("a$b"));
+	}
+}
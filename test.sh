@@ -19,6 +19,21 @@ function test_jar() {
     fi
 }
 
+# make sure a jar instrumented ahead of time reports the same coverage as the agent, running
+# a single deterministic round of security tests in both modes
+function compare_offline() {
+    ARGS="-jarToTestPath $1 -toolChain -noJson -bbTests 100 -timeGoal -1 -seed 1 -threads 1"
+    AGENT=$(java -jar target/com.idtus.contest.winter2017.framework.jar $ARGS | grep "Total code coverage percentage")
+    OFFLINE=$(java -jar target/com.idtus.contest.winter2017.framework.jar $ARGS -offlineCache target/offline-cache | grep "Total code coverage percentage")
+    echo "agent:   $AGENT"
+    echo "offline: $OFFLINE"
+    if [ -n "$AGENT" ] && [ "$AGENT" == "$OFFLINE" ]; then
+        return 0
+    else
+        return 1
+    fi
+}
+
 # validate output with provided jars
 echo '=== TesterTypeCheck.jar'
 test_jar ../supporting_files/jars/TesterTypeCheck.jar
@@ -28,3 +43,13 @@ echo '=== CommandLineEncryption.jar'
 test_jar ../supporting_files/jars/CommandLineEncryption.jar
 echo '=== LeetConverter.jar'
 test_jar ../supporting_files/jars/LeetConverter.jar
+
+# validate offline instrumentation with provided jars
+echo '=== TesterTypeCheck.jar offline instrumentation'
+compare_offline ../supporting_files/jars/TesterTypeCheck.jar
+echo '=== RegexPatternMatch.jar offline instrumentation'
+compare_offline ../supporting_files/jars/RegexPatternMatch.jar
+echo '=== CommandLineEncryption.jar offline instrumentation'
+compare_offline ../supporting_files/jars/CommandLineEncryption.jar
+echo '=== LeetConverter.jar offline instrumentation'
+compare_offline ../supporting_files/jars/LeetConverter.jar